@@ -0,0 +1,277 @@
+package dymond.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dymond.Console;
+import dymond.Dymond;
+import dymond.Interpreter;
+import dymond.Optimizer;
+import dymond.Parser;
+import dymond.Resolver;
+import dymond.Scanner;
+import dymond.Stmt;
+import dymond.vm.VM;
+
+// Runs the programs in benchmarks/programs on each engine: the interpreter with the JIT off, with
+// it on, and the bytecode VM. Every program is compiled once per engine and then run a number of
+// times to warm up before the runs that are measured. Reports wall time, runs per second and
+// bytes allocated per run, checks that each engine printed the same thing, and writes it all
+// as JSON so results can be compared from one version of the interpreter to the next.
+//
+//   java -cp benchmarks/target/benchmarks.jar dymond.bench.MacroBenchmark
+//        [--warmup n] [--runs n] [--engines interpreter,jit,vm]
+//        [--label name] [--json file] [--dir directory] [program ...]
+public class MacroBenchmark {
+	private static final String[] ENGINES = { "interpreter", "jit", "vm" };
+
+	private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	// One program on one engine
+	private static final class Result {
+		final String program;
+		final String engine;
+		String output;
+		String error;
+		long[] nanos = new long[0];
+		long[] bytes = new long[0];
+
+		Result(String program, String engine) {
+			this.program = program;
+			this.engine = engine;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		int warmup = 5;
+		int runs = 10;
+		String[] engines = ENGINES;
+		String label = "";
+		String json = "macro-benchmark.json";
+		String dir = "benchmarks/programs";
+		List<String> programs = new ArrayList<>();
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+				case "--runs": runs = Integer.parseInt(args[++i]); break;
+				case "--engines": engines = args[++i].split(","); break;
+				case "--label": label = args[++i]; break;
+				case "--json": json = args[++i]; break;
+				case "--dir": dir = args[++i]; break;
+				default: programs.add(args[i]); break;
+			}
+		}
+
+		if (programs.isEmpty()) {
+			String[] names = new File(dir).list((parent, name) -> name.endsWith(".dy"));
+			if (names == null) {
+				System.err.println("No programs in " + dir + ", pass --dir with the path to benchmarks/programs.");
+				System.exit(64);
+			}
+			Arrays.sort(names);
+			programs.addAll(Arrays.asList(names));
+		}
+
+		List<Result> results = new ArrayList<>();
+		System.out.printf("%-18s %-12s %10s %10s %10s %14s  %s%n", "program", "engine", "median ms", "mean ms", "runs/s", "bytes/run", "output");
+		for (String program : programs) {
+			Path path = program.contains(File.separator) ? Paths.get(program) : Paths.get(dir, program);
+			String source = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+			String name = path.getFileName().toString().replaceFirst("\\.dy$", "");
+
+			String expected = null;
+			for (String engine : engines) {
+				Result result = measure(name, engine, source, warmup, runs);
+				results.add(result);
+
+				if (result.error == null && expected == null) expected = result.output;
+				if (result.error == null && !result.output.equals(expected)) result.error = "printed something other than " + engines[0];
+				report(result);
+			}
+		}
+
+		write(Paths.get(json), label, warmup, runs, results);
+		System.out.println("Wrote " + json);
+	}
+
+	private static Result measure(String program, String engine, String source, int warmup, int runs) {
+		Result result = new Result(program, engine);
+		Dymond.hadError = false;
+		Dymond.hadRuntimeError = false;
+
+		Interpreter interpreter = new Interpreter();
+		VM vm = engine.equals("vm") ? new VM() : null;
+		if (engine.equals("interpreter")) interpreter.disableTiering();
+
+		// Compiled the way Dymond.run does it, optimized for both engines
+		List<Stmt> statements = new Parser(new Scanner(source).scanBuffer(), false).parse();
+		Resolver resolver = new Resolver(interpreter);
+		if (!Dymond.hadError) resolver.resolve(statements);
+		if (Dymond.hadError) {
+			result.error = "does not compile";
+			return result;
+		}
+		statements = new Optimizer(interpreter, resolver).optimize(statements);
+
+		result.nanos = new long[runs];
+		result.bytes = new long[runs];
+		long thread = Thread.currentThread().getId();
+		for (int run = -warmup; run < runs; run++) {
+			ByteArrayOutputStream printed = new ByteArrayOutputStream();
+			PrintStream previous = Console.redirect(new PrintStream(printed, false));
+			long bytesBefore = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+
+			if (vm != null) {
+				vm.interpret(statements, false);
+			} else {
+				interpreter.interpret(statements, false);
+			}
+
+			long elapsed = System.nanoTime() - start;
+			long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+			Console.redirect(previous);
+
+			if (Dymond.hadError || Dymond.hadRuntimeError) {
+				result.error = "failed at run " + (run + warmup + 1);
+				return result;
+			}
+			if (run < 0) continue;
+
+			result.nanos[run] = elapsed;
+			result.bytes[run] = bytes;
+			if (run == 0) result.output = printed.toString().trim();
+		}
+		return result;
+	}
+
+	private static void report(Result result) {
+		if (result.error != null) {
+			System.out.printf("%-18s %-12s %s%n", result.program, result.engine, result.error);
+			return;
+		}
+
+		double mean = mean(result.nanos);
+		System.out.printf("%-18s %-12s %10.2f %10.2f %10.2f %14.0f  %s%n", result.program, result.engine,
+				median(result.nanos) / 1e6, mean / 1e6, 1e9 / mean, mean(result.bytes),
+				result.output.replace('\n', ' '));
+	}
+
+	private static void write(Path path, String label, int warmup, int runs, List<Result> results) throws IOException {
+		Map<String, Object> report = new LinkedHashMap<>();
+		report.put("label", label);
+		report.put("timestamp", Instant.now().toString());
+		report.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+		report.put("warmup", warmup);
+		report.put("runs", runs);
+
+		List<Object> entries = new ArrayList<>();
+		for (Result result : results) {
+			Map<String, Object> entry = new LinkedHashMap<>();
+			entry.put("program", result.program);
+			entry.put("engine", result.engine);
+			entry.put("ok", result.error == null);
+			if (result.error != null) {
+				entry.put("error", result.error);
+			} else {
+				double mean = mean(result.nanos);
+				entry.put("output", result.output);
+				entry.put("medianNanos", median(result.nanos));
+				entry.put("meanNanos", Math.round(mean));
+				entry.put("opsPerSecond", 1e9 / mean);
+				entry.put("bytesPerOp", Math.round(mean(result.bytes)));
+				entry.put("nanos", result.nanos);
+				entry.put("bytes", result.bytes);
+			}
+			entries.add(entry);
+		}
+		report.put("results", entries);
+
+		StringBuilder out = new StringBuilder();
+		json(out, report, "");
+		Files.write(path, (out + "\n").getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static double mean(long[] values) {
+		long total = 0;
+		for (long value : values) total += value;
+		return values.length == 0 ? 0 : (double)total / values.length;
+	}
+
+	private static long median(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		return sorted.length == 0 ? 0 : sorted[sorted.length / 2];
+	}
+
+	// Just the shapes the report is made of: maps, lists, long arrays, strings, numbers, booleans
+	private static void json(StringBuilder out, Object value, String indent) {
+		if (value instanceof Map) {
+			String inner = indent + "  ";
+			out.append("{");
+			String separator = "\n";
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>)value).entrySet()) {
+				out.append(separator).append(inner);
+				string(out, entry.getKey().toString());
+				out.append(": ");
+				json(out, entry.getValue(), inner);
+				separator = ",\n";
+			}
+			out.append("\n").append(indent).append("}");
+		} else if (value instanceof List) {
+			String inner = indent + "  ";
+			out.append("[");
+			String separator = "\n";
+			for (Object element : (List<?>)value) {
+				out.append(separator).append(inner);
+				json(out, element, inner);
+				separator = ",\n";
+			}
+			out.append("\n").append(indent).append("]");
+		} else if (value instanceof long[]) {
+			out.append(Arrays.toString((long[])value));
+		} else if (value instanceof String) {
+			string(out, (String)value);
+		} else if (value instanceof Double) {
+			double number = (Double)value;
+			out.append(Double.isFinite(number) ? Double.toString(number) : "null");
+		} else {
+			out.append(value);
+		}
+	}
+
+	private static void string(StringBuilder out, String text) {
+		out.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+				case '"': out.append("\\\""); break;
+				case '\\': out.append("\\\\"); break;
+				case '\n': out.append("\\n"); break;
+				case '\r': out.append("\\r"); break;
+				case '\t': out.append("\\t"); break;
+				default:
+					if (c < 0x20) {
+						out.append(String.format("\\u%04x", (int)c));
+					} else {
+						out.append(c);
+					}
+			}
+		}
+		out.append('"');
+	}
+}
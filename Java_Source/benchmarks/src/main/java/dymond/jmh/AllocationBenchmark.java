@@ -0,0 +1,71 @@
+package dymond.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dymond.Interpreter;
+import dymond.Parser;
+import dymond.Resolver;
+import dymond.Scanner;
+import dymond.Stmt;
+
+// A numeric loop, as it runs by default, in the tree-walker alone, and with nodes kept generic
+// instead of specializing to unboxed numbers. One operation is one iteration of the loop, so
+// the bytes the gc profiler reports per operation are the bytes each iteration allocates.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AllocationBenchmark {
+	private static final int ITERATIONS = 100000;
+
+	private static final String SCRIPT =
+			"func loop(n) {\n" +
+			"  var sum = 0;\n" +
+			"  var x = 1.5;\n" +
+			"  for (var i = 0; i < n; i++) {\n" +
+			"    sum += i * x - (i % 7);\n" +
+			"    if (sum > 1000000) { sum -= 1000000; }\n" +
+			"  }\n" +
+			"  return sum;\n" +
+			"}\n" +
+			"loop(" + ITERATIONS + ");\n";
+
+	@Param({"default", "no-jit", "generic"})
+	public String config;
+
+	private Interpreter interpreter;
+	private List<Stmt> statements;
+
+	@Setup
+	public void setup() {
+		interpreter = new Interpreter();
+		if (!config.equals("default")) interpreter.disableTiering();
+		if (config.equals("generic")) interpreter.disableSpecialization();
+
+		statements = new Parser(new Scanner(SCRIPT).scanBuffer(), false).parse();
+		new Resolver(interpreter).resolve(statements);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ITERATIONS)
+	public Interpreter loop() {
+		interpreter.interpret(statements, false);
+		return interpreter;
+	}
+}
@@ -0,0 +1,86 @@
+package dymond.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dymond.Interpreter;
+import dymond.Parser;
+import dymond.Resolver;
+import dymond.Scanner;
+import dymond.Stmt;
+
+// Code that leaves statements early, in the tree-walker with tiering off: an inner loop cut
+// short by break and next, and deep recursion that returns from inside nested blocks. One
+// operation is one pass of the outer loop, or one level of the recursion.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ControlFlowBenchmark {
+	private static final int ITERATIONS = 100000;
+
+	private static final String LOOP_BREAK =
+			"func scan(n) {\n" +
+			"  var hits = 0;\n" +
+			"  for (var i = 0; i < n; i++) {\n" +
+			"    for (var j = 0; j < 10; j++) {\n" +
+			"      if (j == 2) next;\n" +
+			"      if (j == 4) break;\n" +
+			"      hits++;\n" +
+			"    }\n" +
+			"  }\n" +
+			"  return hits;\n" +
+			"}\n" +
+			"scan(" + ITERATIONS + ");\n";
+
+	private static final String RECURSIVE_RETURN =
+			"func depth(n) {\n" +
+			"  if (n <= 0) { return 0; }\n" +
+			"  { if (n % 2 == 0) { return depth(n - 1) + 1; } }\n" +
+			"  return depth(n - 1) + 2;\n" +
+			"}\n" +
+			"func run(n) {\n" +
+			"  var total = 0;\n" +
+			"  for (var i = 0; i < n; i++) { total += depth(20); }\n" +
+			"  return total;\n" +
+			"}\n" +
+			"run(" + ITERATIONS / 20 + ");\n";
+
+	@Param({"loop-break", "recursive-return"})
+	public String workload;
+
+	private Interpreter interpreter;
+	private List<Stmt> statements;
+
+	@Setup
+	public void setup() {
+		interpreter = new Interpreter();
+		interpreter.disableTiering();
+
+		String source = workload.equals("loop-break") ? LOOP_BREAK : RECURSIVE_RETURN;
+		statements = new Parser(new Scanner(source).scanBuffer(), false).parse();
+		new Resolver(interpreter).resolve(statements);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ITERATIONS)
+	public Interpreter run() {
+		interpreter.interpret(statements, false);
+		return interpreter;
+	}
+}
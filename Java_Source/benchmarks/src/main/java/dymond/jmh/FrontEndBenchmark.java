@@ -0,0 +1,72 @@
+package dymond.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dymond.Interpreter;
+import dymond.Parser;
+import dymond.Resolver;
+import dymond.Scanner;
+import dymond.Stmt;
+import dymond.Token;
+import dymond.TokenBuffer;
+
+// Each stage before a script runs, on its own: scanning to a token list and to the token
+// buffer the parser reads, parsing that buffer, and resolving the parsed program.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmark {
+	@Param({"generated:100", "generated:1000", "operators:20000", "test_2.dy", "constant_folding.dy", "loop_invariants.dy"})
+	public String input;
+
+	private String source;
+	private TokenBuffer tokens;
+	private List<Stmt> statements;
+	private Interpreter interpreter;
+
+	@Setup
+	public void setup() {
+		source = Workloads.source(input);
+		tokens = new Scanner(source).scanBuffer();
+		statements = new Parser(tokens, false).parse();
+		interpreter = new Interpreter();
+	}
+
+	@Benchmark
+	public List<Token> scanTokens() {
+		return new Scanner(source).scanTokens();
+	}
+
+	@Benchmark
+	public TokenBuffer scanBuffer() {
+		return new Scanner(source).scanBuffer();
+	}
+
+	@Benchmark
+	public List<Stmt> parse() {
+		return new Parser(tokens, false).parse();
+	}
+
+	// Resolving only sets fields on the nodes, so the same tree can be resolved over and over
+	@Benchmark
+	public List<Stmt> resolve() {
+		new Resolver(interpreter).resolve(statements);
+		return statements;
+	}
+}
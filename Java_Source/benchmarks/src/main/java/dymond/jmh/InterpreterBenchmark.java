@@ -0,0 +1,60 @@
+package dymond.jmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dymond.Interpreter;
+import dymond.Optimizer;
+import dymond.Parser;
+import dymond.Resolver;
+import dymond.Scanner;
+import dymond.Stmt;
+
+// Runs a program that was already scanned, parsed, resolved and optimized, the way Dymond.run
+// hands it to the interpreter. The interpreter and the tree live for the whole trial, so what
+// is measured is the steady state: nodes specialized and, with jit on, hot code compiled.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+	@Param({"generated:10", "generated:100"})
+	public String input;
+
+	@Param({"true", "false"})
+	public boolean jit;
+
+	private Interpreter interpreter;
+	private List<Stmt> statements;
+
+	@Setup
+	public void setup() {
+		interpreter = new Interpreter();
+		if (!jit) interpreter.disableTiering();
+
+		Resolver resolver = new Resolver(interpreter);
+		statements = new Parser(new Scanner(Workloads.source(input)).scanBuffer(), false).parse();
+		resolver.resolve(statements);
+		statements = new Optimizer(interpreter, resolver).optimize(statements);
+	}
+
+	@Benchmark
+	public Interpreter interpret() {
+		interpreter.interpret(statements, false);
+		return interpreter;
+	}
+}
@@ -0,0 +1,75 @@
+package dymond.jmh;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+// The scripts the benchmarks run. An input is either the name of a script in Programs/, looked
+// for in the directory the dymond.programs property names (../Programs from Java_Source by
+// default), "generated:N" for a script of N generated functions, or "operators:N" for N lines
+// heavy in long operator chains, calls and property accesses, which only the front end can run.
+final class Workloads {
+	private static final String GENERATED = "generated:";
+	private static final String OPERATORS = "operators:";
+
+	private Workloads() {}
+
+	static String source(String input) {
+		if (input.startsWith(GENERATED)) return generated(Integer.parseInt(input.substring(GENERATED.length())));
+		if (input.startsWith(OPERATORS)) return operators(Integer.parseInt(input.substring(OPERATORS.length())));
+
+		try {
+			return new String(Files.readAllBytes(Paths.get(System.getProperty("dymond.programs", "../Programs"), input)), StandardCharsets.UTF_8);
+		} catch (IOException error) {
+			throw new UncheckedIOException(error);
+		}
+	}
+
+	// A class, then size functions that each loop over arithmetic, method calls, field reads and
+	// strings, then a call to each. Nothing is printed, the result is left in a global.
+	static String generated(int size) {
+		StringBuilder source = new StringBuilder();
+		source.append("class Point {\n");
+		source.append("  func init(x, y) { this.x = x; this.y = y; }\n");
+		source.append("  func dot(other) { return this.x * other.x + this.y * other.y; }\n");
+		source.append("}\n");
+
+		for (int i = 0; i < size; i++) {
+			source.append("func work").append(i).append("(n) {\n");
+			source.append("  var total = 0;\n");
+			source.append("  var point = Point(").append(i).append(", 2);\n");
+			source.append("  for (var j = 0; j < n; j++) {\n");
+			source.append("    if (j % 3 == 0 and total < 1000000) {\n");
+			source.append("      total += point.dot(point) - j;\n");
+			source.append("    } else {\n");
+			source.append("      total -= ").append(i).append(" // 2;\n");
+			source.append("    }\n");
+			source.append("  }\n");
+			source.append("  var name = \"work\" + ").append(i).append(";\n");
+			source.append("  return total + len(name);\n");
+			source.append("}\n");
+		}
+
+		source.append("var result = 0;\n");
+		for (int i = 0; i < size; i++) {
+			source.append("result += work").append(i).append("(20);\n");
+		}
+		return source.toString();
+	}
+
+	// Lines that refer to names they never define, so the script scans and parses but does not run
+	static String operators(int lines) {
+		StringBuilder source = new StringBuilder();
+		for (int i = 0; i < lines; i++) {
+			switch (i % 4) {
+				case 0: source.append("var a").append(i).append(" = 1 + 2 * 3 - 4 / 5 % 6 + 7 - 8 + 9 - 10;\n"); break;
+				case 1: source.append("if (a < b and b <= c or !d) { x = y.z(1, \"s\", w[2]) - -q; }\n"); break;
+				case 2: source.append("total += counter.advance() * (step - 1) + offset == limit ? 1 : 0;\n"); break;
+				default: source.append("print(n++ + --m + this_is_a_long_name.field.other);\n"); break;
+			}
+		}
+		return source.toString();
+	}
+}
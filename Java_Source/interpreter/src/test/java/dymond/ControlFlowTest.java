@@ -0,0 +1,92 @@
+package dymond;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+// A break or next outside any loop of its function leaves the function and carries on in the
+// innermost loop around the call. The VM has to unwind its frames the same way the Interpreter does.
+class ControlFlowTest {
+	private static void assertSameOnBothEngines(String expected, String... lines) {
+		String source = String.join("\n", lines);
+		assertEquals(expected, Scripts.run(source, false, true), "interpreter");
+		assertEquals(expected, Scripts.run(source, true, true), "vm");
+	}
+
+	@Test
+	void breakInAFunctionEndsTheCallersLoop() {
+		assertSameOnBothEngines("0\n1\n2\nafter\n",
+				"func brk() { break; }",
+				"for (var i = 0; i < 5; i++) { print(i); if (i == 2) brk(); }",
+				"print(\"after\");");
+	}
+
+	@Test
+	void nextUnwindsSeveralCallsToTheForLoop() {
+		assertSameOnBothEngines("111\n133\n155\n90\n",
+				"func skip(n) { if (n % 2 == 0) next; return n; }",
+				"func deeper(n) { return skip(n) * 10; }",
+				"var total = 0;",
+				"for (var i = 0; i < 6; i++) {",
+				"  var local = i + 100;",
+				"  var r = deeper(i);",
+				"  print(local + r);",
+				"  total += r;",
+				"}",
+				"print(total);");
+	}
+
+	@Test
+	void nextPassesThroughAWhileLoop() {
+		assertSameOnBothEngines("0\n",
+				"func w(n) { var k = 0; while (k < 3) { k++; if (n == k) next; } return n; }",
+				"for (var j = 0; j < 4; j++) { print(w(j)); }");
+	}
+
+	@Test
+	void breakEndsTheInnermostLoopAroundTheCall() {
+		assertSameOnBothEngines("2\n2\n",
+				"func stop() { break; }",
+				"for (var x = 0; x < 2; x++) {",
+				"  var y = 0;",
+				"  while (y < 10) { y++; if (y == 2) stop(); }",
+				"  print(y);",
+				"}");
+	}
+
+	@Test
+	void breakOutOfAnInitializerDropsTheInstance() {
+		assertSameOnBothEngines("0\n1\ndone 2\n",
+				"class C { func init(n) { if (n > 1) break; this.n = n; } }",
+				"var m = 0;",
+				"while (True) { var c = C(m); print(c.n); m++; }",
+				"print(\"done \" + m);");
+	}
+
+	@Test
+	void capturedLoopLocalsSurviveTheUnwinding() {
+		assertSameOnBothEngines("2\n",
+				"func brk() { break; }",
+				"var keep = Null;",
+				"for (var q = 0; q < 3; q++) {",
+				"  var captured = q * 2;",
+				"  func get() { return captured; }",
+				"  keep = get;",
+				"  if (q == 1) brk();",
+				"}",
+				"print(keep());");
+	}
+
+	@Test
+	void breakWithNoLoopAroundAnyCallIsAnError() {
+		assertSameOnBothEngines(String.join("\n",
+				"1",
+				"[line 1] Error : Break statement must be inside a loop.",
+				"    \t1.| func brk() { break; }",
+				"    \t                     ^-- Here.",
+				""),
+				"func brk() { break; }",
+				"print(1);",
+				"brk();");
+	}
+}
@@ -0,0 +1,26 @@
+package dymond;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class DymondFunctionTest {
+	// Positional arguments used to be queued in an ArrayDeque, which threw a NullPointerException
+	// on a Null one instead of passing it
+	@Test
+	void passesNullPositionalArguments() {
+		String source = String.join("\n",
+				"func show(a, b = \"default\") {",
+				"  print(a);",
+				"  print(b);",
+				"}",
+				"show(Null);",
+				"show(Null, Null);",
+				"show(Null, b = 2);",
+				"show(b = Null, a = 1);");
+		String expected = String.join("\n", "Null", "default", "Null", "Null", "Null", "2", "1", "Null", "");
+
+		assertEquals(expected, Scripts.run(source, false, true), "interpreter");
+		assertEquals(expected, Scripts.run(source, true, true), "vm");
+	}
+}
@@ -0,0 +1,29 @@
+package dymond;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+// The programs in Programs/ that exercise the Optimizer, run on both engines with and without it.
+// Each has to print exactly what its .out file holds, errors included, every time.
+class OptimizerTest {
+	private static final Path PROGRAMS = Paths.get("..", "..", "Programs");
+
+	@ParameterizedTest
+	@ValueSource(strings = { "constant_folding", "loop_invariants" })
+	void printsTheSameOptimizedOrNot(String program) throws IOException {
+		String source = Files.readString(PROGRAMS.resolve(program + ".dy"));
+		String expected = Files.readString(PROGRAMS.resolve(program + ".out"));
+
+		assertEquals(expected, Scripts.run(source, false, true), "interpreter");
+		assertEquals(expected, Scripts.run(source, false, false), "interpreter, --no-optimize");
+		assertEquals(expected, Scripts.run(source, true, true), "vm");
+		assertEquals(expected, Scripts.run(source, true, false), "vm, --no-optimize");
+	}
+}
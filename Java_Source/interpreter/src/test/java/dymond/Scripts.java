@@ -0,0 +1,43 @@
+package dymond;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import dymond.vm.VM;
+
+// Runs a script the way Dymond.compile and Dymond.execute do, and gives back what it printed
+// and its errors in the order they would reach a terminal
+final class Scripts {
+	private Scripts() {}
+
+	static String run(String source, boolean vm, boolean optimize) {
+		Dymond.hadError = false;
+		Dymond.hadRuntimeError = false;
+
+		ByteArrayOutputStream printed = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(printed, true, StandardCharsets.UTF_8);
+		PrintStream previous = Console.redirect(out);
+		PrintStream err = System.err;
+		System.setErr(out);
+		try {
+			Interpreter interpreter = new Interpreter();
+			List<Stmt> statements = new Parser(new Scanner(source).scanBuffer(), false).parse();
+			Resolver resolver = new Resolver(interpreter);
+			if (!Dymond.hadError) resolver.resolve(statements);
+			if (!Dymond.hadError) {
+				if (optimize) statements = new Optimizer(interpreter, resolver).optimize(statements);
+				if (vm) {
+					new VM().interpret(statements, false);
+				} else {
+					interpreter.interpret(statements, false);
+				}
+			}
+		} finally {
+			Console.redirect(previous);
+			System.setErr(err);
+		}
+		return printed.toString(StandardCharsets.UTF_8);
+	}
+}
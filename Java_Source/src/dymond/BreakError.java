@@ -4,6 +4,7 @@ public class BreakError extends RuntimeException {
 	public final Token token;
 	public BreakError(Token token) {
 		super(null, null, false, false);
+		DymondRuntime.controlFlowException();
 		this.token = token;
 	}
 }
@@ -0,0 +1,56 @@
+package dymond;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+// Standard input and output for running programs, shared by the interpreter, the VM and the
+// prompt. Output collects in a buffer that is written out once it fills up, before anything is
+// read or an error is reported, and when the process exits.
+public final class Console {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+	private static PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE), false);
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(Console::flush));
+	}
+
+	private Console() {}
+
+	public static void print(String text) {
+		out.print(text);
+	}
+
+	public static void println(String text) {
+		out.println(text);
+	}
+
+	// Whatever was printed so far, a prompt included, shows up before the program waits on input
+	public static String readLine() {
+		out.flush();
+		try {
+			return in.readLine();
+		} catch (IOException error) {
+			return null;
+		}
+	}
+
+	public static void flush() {
+		out.flush();
+	}
+
+	// Sends what programs print to another stream, returning the one it went to before so it
+	// can be put back. The benchmarks use it to keep the output of each run.
+	public static PrintStream redirect(PrintStream to) {
+		out.flush();
+		PrintStream previous = out;
+		out = to;
+		return previous;
+	}
+}
@@ -1,50 +1,144 @@
 package dymond;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import dymond.Parser;
+import dymond.vm.VM;
 
 public class Dymond {
 	
-	private static final Interpreter interpreter = new Interpreter();
+	private static Interpreter interpreter = new Interpreter();
+	private static VM vm = null;
+	private static boolean optimize = true;
+	private static boolean cache = true;
+	private static boolean profile = false;
+	// Where --sample writes the stacks it collected, and the sampler while the script runs
+	private static Path samples = null;
+	private static Sampler sampler = null;
+	// The file name of the script being run, which roots every sampled stack and tags phase events
+	private static String script = "<prompt>";
 	public static boolean hadError = false;
 	public static boolean hadRuntimeError = false;
+	
+	// One stage of running a script, timed for the runtime MXBean and a flight recording
+	private static final class Phase {
+		private final String name;
+		private final long start = System.nanoTime();
+		private final Events.Phase event;
+		
+		Phase(String name) {
+			this.name = name;
+			this.event = Events.phase(name, script);
+		}
+		
+		void end() {
+			Events.commit(event);
+			DymondRuntime.phase(name, System.nanoTime() - start);
+		}
+	}
 
 	public static void main(String[] args) throws IOException, InterruptedException {		
+		// --vm runs scripts on the bytecode VM instead of the tree-walking interpreter,
+		// --no-jit keeps the interpreter from compiling hot functions and loops,
+		// --no-specialize keeps AST nodes generic instead of rewriting them from type feedback,
+		// --no-optimize runs the program exactly as it was written, constants and all,
+		// --no-cache neither reads nor writes the .dyc file next to the script,
+		// --profile reports the lines the interpreter spent the most time on when the script ends,
+		// --sample <file> writes the interpreter's call stacks, sampled once a millisecond, for a flame graph,
+		// --jmx registers the dymond:type=Runtime MXBean, counting calls, frames and phase times
+		if (Arrays.asList(args).contains("--profile")) {
+			profile = true;
+			interpreter = ProfilingInterpreter.create();
+		}
+		while (args.length > 0 && args[0].startsWith("--")) {
+			if (args[0].equals("--vm")) {
+				vm = new VM();
+			} else if (args[0].equals("--no-jit")) {
+				interpreter.disableTiering();
+			} else if (args[0].equals("--no-specialize")) {
+				interpreter.disableSpecialization();
+			} else if (args[0].equals("--no-optimize")) {
+				optimize = false;
+			} else if (args[0].equals("--no-cache")) {
+				cache = false;
+			} else if (args[0].equals("--profile")) {
+				// Set up before this loop, so every other flag configures the profiling interpreter
+			} else if (args[0].equals("--jmx")) {
+				DymondRuntime.register();
+			} else if (args[0].equals("--sample") && args.length > 1) {
+				samples = Paths.get(args[1]);
+				args = Arrays.copyOfRange(args, 1, args.length);
+			} else {
+				break;
+			}
+			args = Arrays.copyOfRange(args, 1, args.length);
+		}
+		
 		if (args.length > 1) {
-			System.out.println("Usage: dymond [script]");
+			System.out.println("Usage: dymond [--vm] [--no-jit] [--no-specialize] [--no-optimize] [--no-cache] [--profile] [--sample file] [--jmx] [script | -]");
 			System.exit(64);
 		} else if (args.length == 1) {
-			//String wd = System.getProperty("user.dir");
-			//String file = wd + File.separatorChar + args[0]; 
-			//runFile(args[0]);
-			runPrompt();
+			runFile(args[0]);
 		} else {
 			runPrompt();
 		}
 	}
 	
+	// The file is mapped rather than read in, and tokens are scanned as the parser asks for them.
+	// A script that ran before is loaded from its .dyc cache instead, see ScriptCache.
 	private static void runFile(String path) throws IOException {
-		byte[] bytes = Files.readAllBytes(Paths.get(path));
-		run(new String(bytes, Charset.defaultCharset()), false);
+		boolean mapped = !path.equals("-") && Files.isRegularFile(Paths.get(path));
+		script = path.equals("-") ? "<stdin>" : Paths.get(path).getFileName().toString();
+		if (!mapped) {
+			run(new Parser(new Scanner(open(path)).stream(), false), false);
+		} else if (!cache || !optimize) {
+			// The cache only ever holds the optimized program
+			run(new Parser(new Scanner(Source.map(Paths.get(path))).stream(), false), false);
+		} else {
+			ScriptCache scriptCache = new ScriptCache(Paths.get(path));
+			Phase phase = new Phase("load");
+			List<Stmt> statements = scriptCache.load();
+			phase.end();
+			if (statements == null) {
+				statements = compile(new Parser(new Scanner(scriptCache.source()).stream(), false));
+				if (statements != null) {
+					phase = new Phase("store");
+					scriptCache.store(statements);
+					phase.end();
+				}
+			}
+			if (statements != null) execute(statements, false);
+		}
+		Console.flush();
+		// A script that did not compile never ran, so there is nothing to report
+		if (profile && vm == null && !hadError) ProfilingInterpreter.report(interpreter, System.err);
+		if (sampler != null) sampler.write(samples);
 		if (hadError) System.exit(65);
 		if (hadRuntimeError) System.exit(70);;
 	}
 	
+	// A script on stdin, given as -, or from a pipe cannot be mapped. It is read as the scanner
+	// reaches it instead, and has no .dyc to cache it in.
+	private static Source open(String path) throws IOException {
+		if (path.equals("-")) return Source.of(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		return Source.of(Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8));
+	}
+	
 	private static void runPrompt() throws IOException, InterruptedException {
-		InputStreamReader input = new InputStreamReader(System.in);
-		BufferedReader reader = new BufferedReader(input);
-		
 		for(;;) {
-			System.out.print(">>> ");
-			run(reader.readLine(), true);
+			// Shares the buffered stdin that input() reads from, so neither steals the other's lines
+			Console.print(">>> ");
+			String line = Console.readLine();
+			if (line == null) break;
+			run(line, true);
 			if(hadError || hadRuntimeError) {
 				TimeUnit.SECONDS.sleep((long) .4);
 			}
@@ -55,29 +149,79 @@ public class Dymond {
 	}
 	
 	private static void run(String source, boolean repl) {
+		Phase phase = new Phase("scan");
 		Scanner scanner = new Scanner(source);
-		List<Token> tokens = scanner.scanTokens();
-		Parser parser = new Parser(tokens, repl);
+		TokenBuffer tokens = scanner.scanBuffer();
+		phase.end();
+		run(new Parser(tokens, repl), repl);
+	}
+	
+	private static void run(Parser parser, boolean repl) {
+		List<Stmt> statements = compile(parser);
+		if (statements != null) execute(statements, repl);
+	}
+	
+	// The program ready to run, or null when it has errors. Running a file the tokens are scanned
+	// as the parser goes, so its parse phase includes the scanning.
+	private static List<Stmt> compile(Parser parser) {
+		Phase phase = new Phase("parse");
 		List<Stmt> statements = parser.parse();
+		phase.end();
 		
-		if (hadError) return;
+		if (hadError) return null;
 		
+		phase = new Phase("resolve");
 		Resolver resolver = new Resolver(interpreter);
 		resolver.resolve(statements);
+		phase.end();
 		
-		if (hadError) return;
+		if (hadError) return null;
 		
-		interpreter.interpret(statements, repl);
+		if (optimize) {
+			phase = new Phase("optimize");
+			statements = new Optimizer(interpreter, resolver).optimize(statements);
+			phase.end();
+		}
+		return statements;
+	}
+	
+	private static void execute(List<Stmt> statements, boolean repl) {
+		Phase phase = new Phase("execute");
+		try {
+			interpret(statements, repl);
+		} finally {
+			phase.end();
+		}
+	}
+	
+	private static void interpret(List<Stmt> statements, boolean repl) {
+		if (vm != null) {
+			vm.interpret(statements, repl);
+		} else if (samples != null && !repl) {
+			// Only while the program runs, the time spent compiling it is not part of any stack
+			sampler = Sampler.start(script);
+			try {
+				interpreter.interpret(statements, repl);
+			} finally {
+				sampler.stop();
+			}
+		} else {
+			interpreter.interpret(statements, repl);
+		}
 	}
 	
 	public static void error(int line, String message, String lineText, int column) {
 		report(line, "", message, lineText, column);
 	}
 	
+	public static void error(Token token, String message) {
+		report(token.line, "", message, token.lineText(), token.column);
+	}
+	
 	public static void runtimeError(RuntimeError error) {
 		String message = error.getMessage();
 		String where = "";
-		String lineText = error.token.lineText;
+		String lineText = error.token.lineText();
 		int line = error.token.line;
 		int column = error.token.column;
 		
@@ -100,6 +244,10 @@ public class Dymond {
 		errorText += "^-- Here.";
 		
 		
+		Events.error(message, line, lineText);
+		
+		// Keeps whatever the program printed before the error ahead of it
+		Console.flush();
 		System.err.println(errorText);
 		hadRuntimeError = true;
 	}
@@ -124,6 +272,7 @@ public class Dymond {
 		}
 		error += "^-- Here.";
 		
+		Console.flush();
 		System.err.println(error);
 		hadError = true;
 	}
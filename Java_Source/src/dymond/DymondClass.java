@@ -1,5 +1,6 @@
 package dymond;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -8,6 +9,13 @@ public class DymondClass extends DymondInstance implements DymondCallable {
 	private final Map<String, DymondFunction> methods;
 	private final Map<String, DymondFunction> staticMethods;
 	public final DymondClass superclass;
+	// Every method an instance or the class itself can find, inherited ones included, so a
+	// lookup is one probe however deep the hierarchy is
+	private final Map<String, DymondFunction> vtable;
+	private final Map<String, DymondFunction> staticVtable;
+	// Where every instance's shape starts, and how many fields instances have grown to so far
+	final Shape instanceShape = new Shape();
+	int instanceFields = 0;
 	
 	public DymondClass(String name, Map<String, DymondFunction> methods) {
 		super();
@@ -15,6 +23,9 @@ public class DymondClass extends DymondInstance implements DymondCallable {
 		this.methods = methods;
 		this.staticMethods = null;
 		this.superclass = null;
+		this.vtable = flatten(methods, null);
+		this.staticVtable = null;
+		for (DymondFunction method : methods.values()) method.qualify(name);
 	}
 	
 	public DymondClass(String name, Map<String, DymondFunction> methods, Map<String, DymondFunction> staticMethods, DymondClass superclass) {
@@ -23,31 +34,42 @@ public class DymondClass extends DymondInstance implements DymondCallable {
 		this.methods = methods;
 		this.staticMethods = staticMethods;
 		this.superclass = superclass;
+		this.vtable = flatten(methods, superclass == null ? null : superclass.vtable);
+		// A class without static methods also hides any its superclasses have
+		this.staticVtable = staticMethods == null ? null : flatten(staticMethods, superclass == null ? null : superclass.staticVtable);
+		for (DymondFunction method : methods.values()) method.qualify(name);
+		if (staticMethods != null) {
+			for (DymondFunction method : staticMethods.values()) method.qualify(name);
+		}
+	}
+	
+	// The superclass's table with this class's own methods overriding it
+	private static Map<String, DymondFunction> flatten(Map<String, DymondFunction> own, Map<String, DymondFunction> inherited) {
+		Map<String, DymondFunction> table = inherited == null ? new HashMap<>() : new HashMap<>(inherited);
+		table.putAll(own);
+		return table;
+	}
+	
+	// Unbound lookups, inherited methods included
+	DymondFunction lookupMethod(String name) {
+		return vtable.get(name);
+	}
+	
+	DymondFunction lookupStaticMethod(String name) {
+		if (staticVtable == null) return null;
+		return staticVtable.get(name);
 	}
 	
 	public DymondFunction findMethod(DymondInstance instance, String name) {
-		if (methods.containsKey(name)) {
-			return methods.get(name).bind(instance);
-		}
-		
-		if (superclass != null) {
-			return superclass.findMethod(instance, name);
-		}
-
-		return null;
+		DymondFunction method = vtable.get(name);
+		if (method == null) return null;
+		return method.bind(instance);
 	}
 	
 	public DymondFunction findStaticMethod(DymondInstance instance, String name) {
-		if (staticMethods == null) return null;
-		if (staticMethods.containsKey(name)) {
-			return staticMethods.get(name).bind(instance);
-		}
-		
-		if (superclass != null) {
-			return superclass.findStaticMethod(instance, name);
-		}
-		
-		return null;
+		DymondFunction method = lookupStaticMethod(name);
+		if (method == null) return null;
+		return method.bind(instance);
 	}
 	
 	@Override
@@ -59,11 +81,40 @@ public class DymondClass extends DymondInstance implements DymondCallable {
 	public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
 		DymondInstance instance = new DymondInstance(this);
 		DymondFunction initializer = methods.get("init");
-		if (initializer != null) {
-			initializer.bind(instance).call(interpreter, arguments, expr);
+		initialize(interpreter, initializer, initializer == null ? null : initializer.frame(interpreter, instance, arguments, expr));
+		return instance;
+	}
+	
+	public Object call(Interpreter interpreter, Object[] arguments, Expr.Call expr) {
+		DymondInstance instance = new DymondInstance(this);
+		DymondFunction initializer = methods.get("init");
+		initialize(interpreter, initializer, initializer == null ? null : initializer.frame(interpreter, instance, arguments, expr));
+		return instance;
+	}
+	
+	// Runs init, if the class has one, once its arguments were evaluated. Meanwhile the class is
+	// on the sampled stack and a flight recording times it as an instantiation.
+	private void initialize(Interpreter interpreter, DymondFunction initializer, Environment frame) {
+		DymondRuntime.instance();
+		Sampler sampler = Sampler.active;
+		if (sampler == null && !Events.instances) {
+			if (initializer != null) initializer.execute(interpreter, frame);
+			return;
 		}
 		
-		return instance;
+		Events.Instantiation event = null;
+		if (Events.instances) {
+			event = new Events.Instantiation();
+			event.className = name;
+			event.begin();
+		}
+		if (sampler != null) sampler.push(name);
+		try {
+			if (initializer != null) initializer.execute(interpreter, frame);
+		} finally {
+			if (sampler != null) sampler.pop();
+			if (event != null) event.commit();
+		}
 	}
 	
 	@Override 
@@ -80,8 +131,4 @@ public class DymondClass extends DymondInstance implements DymondCallable {
 		return initializer.maxArity();
 	}
 	
-	@Override 
-	public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-		return null;
-	}
 }
@@ -1,19 +1,35 @@
 package dymond;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.ArrayDeque;
 
 public class DymondFunction implements DymondCallable {
 	private final Stmt.Function declaration;
 	private final Environment closure;
 	private final boolean isInitializer;
+	private final JitCompiler.Tier tier;
+	// A method keeps "this" in slot 0 of its own frame and its parameters after it. Methods
+	// are normally called with the receiver handed straight in, only a method used as a
+	// value gets bound to one.
+	private final boolean isMethod;
+	private final DymondInstance receiver;
 	private final int minParamArgs;
 	private final int maxParamArgs;
+	// What the sampler calls it, qualified with the class for a method
+	private String frame;
 	
-	public DymondFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+	public DymondFunction(Stmt.Function declaration, Environment closure, boolean isInitializer, JitCompiler.Tier tier) {
+		this(declaration, closure, false, isInitializer, tier, null);
+	}
+	
+	public DymondFunction(Stmt.Function declaration, Environment closure, boolean isMethod, boolean isInitializer, JitCompiler.Tier tier, DymondInstance receiver) {
 		this.declaration = declaration;
 		this.closure = closure;
+		this.isMethod = isMethod;
 		this.isInitializer = isInitializer;
+		this.tier = tier;
+		this.receiver = receiver;
+		this.frame = declaration.name.lexeme;
 		
 		int min = 0;
 		for (Expr.Assign expr : declaration.parameters) {
@@ -26,61 +42,162 @@ public class DymondFunction implements DymondCallable {
 	}
 	
 	public DymondFunction bind(DymondInstance instance) {
-		Environment environment = new Environment(closure);
-		environment.define("this", instance);
-		return new DymondFunction(declaration, environment, isInitializer);
+		DymondFunction bound = new DymondFunction(declaration, closure, true, isInitializer, tier, instance);
+		bound.frame = frame;
+		return bound;
+	}
+	
+	// Called by the class the method belongs to
+	void qualify(String owner) {
+		frame = owner + "." + declaration.name.lexeme;
+	}
+	
+	// True for a method looked up from its class that has not been bound to anything yet
+	boolean needsReceiver() {
+		return isMethod && receiver == null;
 	}
 	
 	@Override 
 	public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-		Environment environment = new Environment(closure);
-		ArrayDeque<Object> q = new ArrayDeque<>();
+		return call(interpreter, receiver, arguments, expr);
+	}
+	
+	public Object call(Interpreter interpreter, DymondInstance receiver, List<Expr> arguments, Expr.Call expr) {
+		return execute(interpreter, frame(interpreter, receiver, arguments, expr));
+	}
+	
+	// A new frame with the arguments evaluated into it, but the body not run yet
+	Environment frame(Interpreter interpreter, DymondInstance receiver, List<Expr> arguments, Expr.Call expr) {
+		List<Expr.Assign> parameters = declaration.parameters;
+		Environment environment = frame(receiver);
+		int first = isMethod ? 1 : 0;
+		// A list rather than a deque, which would refuse a Null argument
+		List<Object> q = new ArrayList<>();
+		int taken = 0;
 		
+		// Parameters own the slots after "this", one bit per parameter marks it as passed by name
+		int named = 0;
 		for (int i = 0; i < arguments.size(); i++) {
 			if (arguments.get(i) instanceof Expr.Assign) {
 				Expr.Assign arg = (Expr.Assign)arguments.get(i);
-				String name = arg.name.lexeme;
 				Object val = interpreter.evaluate(arg);
-				environment.define(name, val);
+				int index = parameterIndex(arg.name.lexeme);
+				if (index >= 0) {
+					environment.set(first + index, val);
+					named |= 1 << index;
+				}
 			} else {
 				q.add(interpreter.evaluate(arguments.get(i)));
 			}
 		}
 		
 		
-		for (int i = 0; i < declaration.parameters.size(); i++) {
-			String name = declaration.parameters.get(i).name.lexeme;
-			
-			if (!environment.check(name)) {
-				if(q.size() > 0) {
-					Object value = q.removeFirst();
-					environment.define(name, value);
+		for (int i = 0; i < parameters.size(); i++) {
+			if ((named & (1 << i)) == 0) {
+				if(taken < q.size()) {
+					Object value = q.get(taken++);
+					environment.set(first + i, value);
 					continue;
 				} else {
-					if (declaration.parameters.get(i).operator != null) {
-						environment.define(name, interpreter.evaluate(declaration.parameters.get(i).value));
+					if (parameters.get(i).operator != null) {
+						environment.set(first + i, interpreter.evaluate(parameters.get(i).value));
 					} else {
+						environment.set(first + i, null);
 						Dymond.runtimeError(new RuntimeError(expr.paren, "Missing required arguments."));
 					}
 				}
 			}
 		}
 		
+		return environment;
+	}
+	
+	// Positional arguments that were already evaluated, which is how compiled code calls
+	public Object call(Interpreter interpreter, Object[] arguments, Expr.Call expr) {
+		return call(interpreter, receiver, arguments, expr);
+	}
+	
+	public Object call(Interpreter interpreter, DymondInstance receiver, Object[] arguments, Expr.Call expr) {
+		return execute(interpreter, frame(interpreter, receiver, arguments, expr));
+	}
+	
+	Environment frame(Interpreter interpreter, DymondInstance receiver, Object[] arguments, Expr.Call expr) {
+		List<Expr.Assign> parameters = declaration.parameters;
+		Environment environment = frame(receiver);
+		int first = isMethod ? 1 : 0;
+		
+		for (int i = 0; i < parameters.size(); i++) {
+			if (i < arguments.length) {
+				environment.set(first + i, arguments[i]);
+			} else if (parameters.get(i).operator != null) {
+				environment.set(first + i, interpreter.evaluate(parameters.get(i).value));
+			} else {
+				environment.set(first + i, null);
+				Dymond.runtimeError(new RuntimeError(expr.paren, "Missing required arguments."));
+			}
+		}
+		
+		return environment;
+	}
+	
+	private Environment frame(DymondInstance receiver) {
+		Environment environment = new Environment(closure, declaration.parameters.size() + 5);
+		if (isMethod) environment.set(0, receiver);
+		return environment;
+	}
+	
+	// Runs the body in a frame from one of the methods above
+	Object execute(Interpreter interpreter, Environment environment) {
+		Sampler sampler = Sampler.active;
+		DymondRuntime runtime = DymondRuntime.active;
+		if (sampler == null && runtime == null && !Events.calls) return run(interpreter, environment);
+		
+		// Seen by the sampler, a flight recording, the runtime MXBean or any of them together
+		if (runtime != null) runtime.enter(interpreter);
+		Events.FunctionCall event = null;
+		if (Events.calls) {
+			event = new Events.FunctionCall();
+			event.function = frame;
+			event.begin();
+		}
+		if (sampler != null) sampler.push(frame);
 		try {
-			interpreter.executeBlock(declaration.body, environment);
-		} catch (Return returnValue) {
-			return returnValue.value;
+			return run(interpreter, environment);
+		} finally {
+			if (sampler != null) sampler.pop();
+			if (event != null) event.commit();
+			if (runtime != null) runtime.exit(interpreter);
+		}
+	}
+	
+	private Object run(Interpreter interpreter, Environment environment) {
+		if (tier != null && tier.code == null && !tier.rejected && ++tier.invocations >= JitCompiler.CALL_THRESHOLD) {
+			interpreter.jit.compile(declaration, tier);
 		}
 		
-		if (isInitializer) return closure.getAt(0, "this");
+		if (tier != null && tier.code != null) {
+			Object result = tier.code.run(interpreter, environment);
+			if (result != JitCompiler.FALLTHROUGH) return result;
+		} else {
+			Object completion = interpreter.executeBlock(declaration.body, environment);
+			if (completion == Interpreter.RETURN) return interpreter.returnValue;
+			// A break or next with no loop of its own around it unwinds into the caller's loop
+			if (completion instanceof Stmt.Break) throw new BreakError(((Stmt.Break)completion).keyword);
+			if (completion instanceof Stmt.Next) throw new Next(((Stmt.Next)completion).keyword);
+		}
+		
+		if (isInitializer) return environment.get(0);
 		return null;
 	}
 	
-	@Override 
-	public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-		return null;
+	private int parameterIndex(String name) {
+		for (int i = 0; i < declaration.parameters.size(); i++) {
+			if (declaration.parameters.get(i).name.lexeme.equals(name)) return i;
+		}
+		return -1;
 	}
 	
+	
 	@Override
 	public int minArity() {
 		return minParamArgs;
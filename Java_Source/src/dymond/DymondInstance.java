@@ -1,21 +1,36 @@
 package dymond;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class DymondInstance {
+	// Past this many fields an instance keeps them in a HashMap instead of a shape
+	private static final int DICTIONARY_THRESHOLD = 64;
+	private static final Object[] EMPTY = new Object[0];
+	private static final Object ABSENT = new Object();
+	
 	private DymondClass klass;
 	private final boolean isStatic;
-	private final Map<String, Object> fields = new HashMap<>();
+	// Fields live in values at the index their shape gives them, dictionary replaces both
+	// once there are too many of them
+	private Shape shape;
+	private Object[] values;
+	private Map<String, Object> dictionary;
 	
 	public DymondInstance(DymondClass klass) {
 		this.klass = klass;
 		isStatic = false;
+		shape = klass.instanceShape;
+		values = klass.instanceFields == 0 ? EMPTY : new Object[klass.instanceFields];
 	}
 	
 	public DymondInstance() {
 		this.klass = (DymondClass) this;
 		isStatic = true;
+		// A class's own fields get a root of their own, so its shapes never say anything about its instances
+		shape = new Shape();
+		values = EMPTY;
 	}
 	
 	@Override
@@ -23,22 +38,32 @@ public class DymondInstance {
 		return klass.name + " instance";
 	}
 	
-	public Object get(Token name) {
-		if (fields.containsKey(name.lexeme)) {
-			return fields.get(name.lexeme);
+	private Object field(String name) {
+		if (dictionary != null) {
+			Object value = dictionary.get(name);
+			if (value != null || dictionary.containsKey(name)) return value;
+			return ABSENT;
 		}
 		
-		DymondFunction staticMethod = klass.findStaticMethod(this, name.lexeme);
-		DymondFunction regMethod = klass.findMethod(this, name.lexeme);
+		int index = shape.indexOf(name);
+		return index >= 0 ? values[index] : ABSENT;
+	}
+	
+	public Object get(Token name) {
+		Object value = field(name.lexeme);
+		if (value != ABSENT) return value;
+		
+		DymondFunction staticMethod = klass.lookupStaticMethod(name.lexeme);
+		DymondFunction regMethod = klass.lookupMethod(name.lexeme);
 		
 		if(!isStatic) {
-			if (regMethod != null) return regMethod;
+			if (regMethod != null) return regMethod.bind(this);
 			
 			if(staticMethod != null) throw new RuntimeError(name, "Cannot call static method '" + name.lexeme + "' non-statically. You must call it from the class itself.");
 			
 			throw new RuntimeError(name, "Undefined method '" + name.lexeme + "'.");
 		} else {
-			if (staticMethod != null) return staticMethod;
+			if (staticMethod != null) return staticMethod.bind(this);
 			
 			if (regMethod != null) throw new RuntimeError(name, "Cannot call non-static method '" + name.lexeme + "' statically. You must create an instance and call it from the instance.");
 			
@@ -46,11 +71,48 @@ public class DymondInstance {
 		}
 	}
 	
-	public Object get(Token name, boolean check) {
-		if (fields.containsKey(name.lexeme)) {
-			return fields.get(name.lexeme);
+	// Same as get(name), but a shape the call site has seen before is a single indexed load
+	public Object get(Token name, InlineCache cache) {
+		Object value = lookup(name, cache);
+		if (value instanceof DymondFunction && ((DymondFunction)value).needsReceiver()) {
+			return ((DymondFunction)value).bind(this);
+		}
+		return value;
+	}
+	
+	// A field's value, or the method the name finds left unbound so a call can pass this
+	// instance straight in as its receiver
+	Object lookup(Token name, InlineCache cache) {
+		if (dictionary != null) return get(name);
+		
+		int entry = cache.find(shape);
+		if (entry >= 0) {
+			int index = cache.index(entry);
+			if (index >= 0) return values[index];
+			return cache.method(entry);
 		}
 		
+		int index = shape.indexOf(name.lexeme);
+		if (index >= 0) {
+			cache.add(shape, index, null, null);
+			return values[index];
+		}
+		
+		// A shape belongs to one class, so it also decides which method the name finds
+		DymondFunction method = isStatic ? klass.lookupStaticMethod(name.lexeme) : klass.lookupMethod(name.lexeme);
+		if (method != null) {
+			cache.add(shape, -1, method, null);
+			return method;
+		}
+		
+		// Reports which kind of method was missing
+		return get(name);
+	}
+	
+	public Object get(Token name, boolean check) {
+		Object value = field(name.lexeme);
+		if (value != ABSENT) return value;
+		
 		DymondFunction method = klass.findMethod(this, name.lexeme);
 		if (method != null) return method;
 		
@@ -58,6 +120,69 @@ public class DymondInstance {
 	}
 	
 	public void set(Token name, Object value) {
-		fields.put(name.lexeme, value);
+		if (dictionary != null) {
+			dictionary.put(name.lexeme, value);
+			return;
+		}
+		
+		int index = shape.indexOf(name.lexeme);
+		if (index < 0) {
+			if (shape.size >= DICTIONARY_THRESHOLD) {
+				toDictionary();
+				dictionary.put(name.lexeme, value);
+				return;
+			}
+			
+			moveTo(shape.with(name.lexeme));
+			index = shape.size - 1;
+		}
+		values[index] = value;
+	}
+	
+	public void set(Token name, Object value, InlineCache cache) {
+		if (dictionary == null) {
+			int entry = cache.find(shape);
+			if (entry >= 0) {
+				Shape next = cache.transition(entry);
+				if (next != null) moveTo(next);
+				values[cache.index(entry)] = value;
+				return;
+			}
+			
+			int index = shape.indexOf(name.lexeme);
+			if (index >= 0) {
+				cache.add(shape, index, null, null);
+				values[index] = value;
+				return;
+			}
+			
+			if (shape.size < DICTIONARY_THRESHOLD) {
+				Shape next = shape.with(name.lexeme);
+				cache.add(shape, shape.size, null, next);
+				moveTo(next);
+				values[shape.size - 1] = value;
+				return;
+			}
+		}
+		
+		set(name, value);
+	}
+	
+	private void moveTo(Shape next) {
+		if (values.length < next.size) {
+			values = Arrays.copyOf(values, Math.max(next.size, values.length * 2));
+			// New instances of the class start out with room for as many fields as this one has
+			if (!isStatic && klass.instanceFields < next.size) klass.instanceFields = next.size;
+		}
+		shape = next;
+	}
+	
+	private void toDictionary() {
+		dictionary = new HashMap<>();
+		for (Map.Entry<String, Integer> entry : shape.indices().entrySet()) {
+			dictionary.put(entry.getKey(), values[entry.getValue()]);
+		}
+		shape = null;
+		values = null;
 	}
 }
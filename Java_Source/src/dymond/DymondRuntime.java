@@ -0,0 +1,146 @@
+package dymond;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+// Live counters for interpreters that run for a long time, registered as an MXBean by --jmx or
+// by a program that embeds Dymond calling register. Until then nothing is counted and every
+// place that would count only finds active null. The counters are LongAdders, so interpreters
+// on different threads add to them without contending.
+public final class DymondRuntime implements DymondRuntimeMXBean {
+	static final String NAME = "dymond:type=Runtime";
+
+	// The registered bean, null until there is one
+	static volatile DymondRuntime active;
+
+	private final LongAdder frames = new LongAdder();
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder instances = new LongAdder();
+	private final LongAdder depth = new LongAdder();
+	private final LongAccumulator maxDepth = new LongAccumulator(Long::max, 0);
+	private final LongAdder controlFlowExceptions = new LongAdder();
+	private final Map<String, LongAdder> phases = new ConcurrentHashMap<>();
+
+	private DymondRuntime() {}
+
+	// Registers the bean with the platform MBean server, once however often it is called
+	public static synchronized DymondRuntimeMXBean register() {
+		if (active != null) return active;
+
+		DymondRuntime runtime = new DymondRuntime();
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(runtime, new ObjectName(NAME));
+		} catch (JMException error) {
+			throw new IllegalStateException("Could not register " + NAME, error);
+		}
+		// Natives count into themselves, from zero as of now
+		for (NativeFunction function : Natives.TABLE) function.calls.reset();
+		active = runtime;
+		return runtime;
+	}
+
+	static void frame() {
+		DymondRuntime runtime = active;
+		if (runtime != null) runtime.frames.increment();
+	}
+
+	// The registered bean, or null, for the VM, which lives in a package of its own
+	public static DymondRuntime active() {
+		return active;
+	}
+
+	public static void instance() {
+		DymondRuntime runtime = active;
+		if (runtime != null) runtime.instances.increment();
+	}
+
+	static void controlFlowException() {
+		DymondRuntime runtime = active;
+		if (runtime != null) runtime.controlFlowExceptions.increment();
+	}
+
+	static void phase(String phase, long nanos) {
+		DymondRuntime runtime = active;
+		if (runtime != null) runtime.phases.computeIfAbsent(phase, name -> new LongAdder()).add(nanos);
+	}
+
+	// A call starting on the interpreter's thread, which keeps its own depth
+	void enter(Interpreter interpreter) {
+		calls.increment();
+		depth.increment();
+		if (++interpreter.callDepth > interpreter.maxCallDepth) {
+			interpreter.maxCallDepth = interpreter.callDepth;
+			maxDepth.accumulate(interpreter.callDepth);
+		}
+	}
+
+	void exit(Interpreter interpreter) {
+		interpreter.callDepth--;
+		depth.decrement();
+	}
+
+	// A call on the VM, which keeps its depth as the frames on its stack above the script's.
+	// Its frames are windows on that stack, so each call counts as the frame it pushed.
+	public void call(int depth) {
+		frames.increment();
+		calls.increment();
+		this.depth.increment();
+		maxDepth.accumulate(depth);
+	}
+
+	// Frames the VM left, by returning, unwinding a break or next, or on an error
+	public void returned(int count) {
+		depth.add(-count);
+	}
+
+	@Override
+	public long getFramesAllocated() {
+		return frames.sum();
+	}
+
+	@Override
+	public long getFunctionCalls() {
+		return calls.sum();
+	}
+
+	@Override
+	public long getInstancesCreated() {
+		return instances.sum();
+	}
+
+	@Override
+	public Map<String, Long> getNativeCalls() {
+		Map<String, Long> counts = new TreeMap<>();
+		for (NativeFunction function : Natives.TABLE) counts.put(function.name, function.calls.sum());
+		return counts;
+	}
+
+	@Override
+	public long getCallDepth() {
+		return depth.sum();
+	}
+
+	@Override
+	public long getMaxCallDepth() {
+		return maxDepth.get();
+	}
+
+	@Override
+	public long getControlFlowExceptions() {
+		return controlFlowExceptions.sum();
+	}
+
+	@Override
+	public Map<String, Long> getPhaseNanos() {
+		Map<String, Long> nanos = new TreeMap<>();
+		phases.forEach((phase, total) -> nanos.put(phase, total.sum()));
+		return nanos;
+	}
+}
@@ -0,0 +1,32 @@
+package dymond;
+
+import java.util.Map;
+
+// What DymondRuntime shows over JMX, as dymond:type=Runtime. Every count is since the bean
+// was registered and covers every interpreter and VM in the JVM.
+public interface DymondRuntimeMXBean {
+	// Environments made, one for each call and for each block that needs its own scope. The VM
+	// makes none, it counts the call frames it pushes on its stack.
+	long getFramesAllocated();
+
+	long getFunctionCalls();
+
+	long getInstancesCreated();
+
+	// Calls to each native function, by name
+	Map<String, Long> getNativeCalls();
+
+	// Calls running right now, added up over every thread
+	long getCallDepth();
+
+	// The deepest any one thread's calls have gone
+	long getMaxCallDepth();
+
+	// Break and next unwinding out of a function, and unboxed paths falling back to boxed values.
+	// The VM unwinds without exceptions and counts none.
+	long getControlFlowExceptions();
+
+	// Nanoseconds spent in each phase of running scripts: scan, parse, resolve, optimize, load,
+	// store and execute
+	Map<String, Long> getPhaseNanos();
+}
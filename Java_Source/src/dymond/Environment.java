@@ -1,30 +1,91 @@
 package dymond;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
-import java.util.Random;
 
 public class Environment {
-	private final Map<String, Object> values = new HashMap<>();
+	// Only the global environment is keyed by name, every other scope is a frame of slots
+	// whose indices were handed out by the Resolver.
+	private final Map<String, Object> values;
+	private Object[] slots;
+	// Numbers assigned through assignNumberAt stay unboxed here, their Object slot holds NUMBER
+	private double[] numbers;
+	private int count = 0;
 	public final Environment enclosing;
-	Scanner reader = new Scanner(System.in);
 	
 	public Environment() {
+		values = new HashMap<>();
 		enclosing = null;
+		DymondRuntime.frame();
 	}
 	
+	private static final Object NUMBER = new Object();
+	
 	public Environment(Environment enclosing) {
+		this(enclosing, 4);
+	}
+	
+	public Environment(Environment enclosing, int size) {
+		this.values = null;
+		this.slots = new Object[size];
 		this.enclosing = enclosing;
+		DymondRuntime.frame();
 	}
 	
 	public void define(String name, Object value) {
 		values.put(name, value);
 	}
 	
-	public Object getAt(int distance, String name) {
-		return ancestor(distance).values.get(name);
+	public int define(Object value) {
+		if (count == slots.length) {
+			slots = Arrays.copyOf(slots, count * 2);
+			if (numbers != null) numbers = Arrays.copyOf(numbers, slots.length);
+		}
+		slots[count] = value;
+		return count++;
+	}
+	
+	public int defineNumber(double value) {
+		int slot = define(NUMBER);
+		if (numbers == null) numbers = new double[slots.length];
+		numbers[slot] = value;
+		return slot;
+	}
+	
+	public void set(int slot, Object value) {
+		slots[slot] = value;
+		if (slot >= count) count = slot + 1;
+	}
+	
+	public Object get(int slot) {
+		Object value = slots[slot];
+		if (value == NUMBER) return numbers[slot];
+		return value;
+	}
+	
+	public Object getAt(int distance, int slot) {
+		return ancestor(distance).get(slot);
+	}
+	
+	// Reads a slot as a double without boxing, anything that is not a number is handed back
+	// to the caller through UnexpectedResult
+	public double getNumber(int slot) {
+		Object value = slots[slot];
+		if (value == NUMBER) return numbers[slot];
+		if (value instanceof Double) return (double)value;
+		throw new UnexpectedResult(value);
+	}
+	
+	public double getNumberAt(int distance, int slot) {
+		return ancestor(distance).getNumber(slot);
+	}
+	
+	public void assignNumberAt(int distance, int slot, double value) {
+		Environment environment = ancestor(distance);
+		if (environment.numbers == null) environment.numbers = new double[environment.slots.length];
+		environment.slots[slot] = NUMBER;
+		environment.numbers[slot] = value;
 	}
 	
 	public Environment ancestor(int distance) {
@@ -35,8 +96,8 @@ public class Environment {
 		return environment;
 	}
 	
-	public void assignAt(int distance, Token name, Object value) {
-		ancestor(distance).values.put(name.lexeme,  value);
+	public void assignAt(int distance, int slot, Object value) {
+		ancestor(distance).slots[slot] = value;
 	}
 	
 	public Object get(Token name) {
@@ -44,16 +105,12 @@ public class Environment {
 			return values.get(name.lexeme);
 		}
 		
-		if (enclosing != null) return enclosing.get(name);
-		
 		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
 	}
 	
-	public boolean check(String name) {
-		if (values.containsKey(name)) {
-			return true;
-		}
-		return false;
+	// The value of a global, or null when there is none
+	Object lookup(String name) {
+		return values.get(name);
 	}
 	
 	public void assign(Token name, Object value) {
@@ -62,311 +119,13 @@ public class Environment {
 			return;
 		}
 		
-		if(enclosing != null) {
-			enclosing.assign(name,  value);
-			return;
-		}
-		
 		throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
 	}
 	
 	
 	public void defineNativeFunctions() {
-		this.define("clock", new DymondCallable() {
-			@Override
-			public int minArity() { return 0; }
-			@Override
-			public int maxArity() { return 0; }
-			
-			@Override
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				return (double)System.currentTimeMillis() / 1000.0;
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("print", new DymondCallable() {
-			@Override 
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override 
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object text = arguments.get(0);
-
-				System.out.println(stringify(text));
-				
-				return null;
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("toString", new DymondCallable() {
-			@Override
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override 
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object obj = arguments.get(0);
-				
-				if(!(obj instanceof Double)) {
-					Dymond.error(expr.paren.line, "toString(double) only applicable for type number.", expr.paren.lineText, expr.paren.column);
-					return null;
-				}
-				
-				return obj.toString();
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("input", new DymondCallable() {
-			@Override
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object text = arguments.get(0);
-				
-				if(!(text instanceof String)) {
-					Dymond.error(expr.paren.line, "input(String) is only applicable for type string.", expr.paren.lineText, expr.paren.column);
-					return null;
-				}
-				
-				System.out.print((String)text);
-				Object userIn = reader.nextLine();
-				
-				return userIn;
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("toNumber", new DymondCallable() {
-			@Override
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object text = arguments.get(0);
-				
-				if (!(text instanceof String)) {
-					Dymond.error(expr.paren.line, "toNumber(String) is only applicable for type string.", expr.paren.lineText, expr.paren.column);
-					return null;
-				}
-				
-				if (!(isNumeric((String)text))) {
-					Dymond.error(expr.paren.line, "toNumber(String) requires that the parameter is a number.", expr.paren.lineText, expr.paren.column);
-					return null;
-				}
-				
-				return Double.parseDouble((String)text);
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("isNumber", new DymondCallable() {
-			@Override
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override 
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object text = arguments.get(0);
-				
-				if (!(text instanceof String)) {
-					return false;
-				}
-				
-				return isNumeric((String)text);
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("sqrt", new DymondCallable() {
-			@Override
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override 
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object text = arguments.get(0);
-				
-				if (!(text instanceof Double)) {
-					Dymond.error(expr.paren.line, "sqrt(Double) is only applicable for type double", expr.paren.lineText, expr.paren.column);
-					return null;
-				}
-				
-				return Math.sqrt((Double)text);
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("randomInt", new DymondCallable() {
-			@Override
-			public int minArity() { return 2; }
-			@Override
-			public int maxArity() { return 2; }
-			
-			@Override 
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object numOne = arguments.get(0);
-				Object numTwo = arguments.get(1);
-				
-				if (!(numOne instanceof Double && numTwo instanceof Double)) {
-					Dymond.error(expr.paren.line, "randomInt(Double, Double) is only applicable for types of double", expr.paren.lineText, expr.paren.column);
-					return null;
-				}
-				
-				int beginning = ((Double)numOne).intValue();
-				int end = ((Double)numTwo).intValue();
-				
-				if(end <= beginning) {
-					Dymond.error(expr.paren.line, "randomInt(Double, Double) does not support negative ranges or ranges equal to 0", expr.paren.lineText, expr.paren.column);
-					return null;
-				}
-				
-				int range = end - beginning;
-				Random rand = new Random();
-				double n = rand.nextInt(range + 1) + beginning;
-				
-				return n;
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("typeof", new DymondCallable() {
-			@Override
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override 
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object obj = arguments.get(0);
-				return obj.getClass();
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-		
-		this.define("len", new DymondCallable() {
-			@Override
-			public int minArity() { return 1; }
-			@Override
-			public int maxArity() { return 1; }
-			
-			@Override 
-			public Object call1(Interpreter interpreter, List<Object> arguments, Expr.Call expr) {
-				Object obj = arguments.get(0);
-				
-				if (obj instanceof String) {
-					double len = ((String)obj).length();
-					return len;
-				}
-				
-				return 0;
-			}
-			
-			@Override
-			public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
-				return null;
-			}
-			
-			@Override
-			public String toString() { return "<native fn>"; }
-		});
-	}
-	
-	private String stringify(Object object) {
-		if (object == null) return "Null";
-		
-		if (object instanceof Double) {
-			String text = object.toString();
-			if (text.endsWith(".0")) {
-				text = text.substring(0, text.length() - 2);
-			}
-			return text;
-		}
-		
-		return object.toString();
-	}
-	
-	private boolean isNumeric(String str) {
-		try {
-			double d = Double.parseDouble(str);
-		} catch (NumberFormatException | NullPointerException nfe) {
-			return false;
+		for (NativeFunction function : Natives.TABLE) {
+			define(function.name, function);
 		}
-		return true;
 	}
 }
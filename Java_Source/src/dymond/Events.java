@@ -0,0 +1,152 @@
+package dymond;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+
+// Flight Recorder events for what the interpreter is doing, so a recording shows Dymond calls,
+// instances, errors and phases next to the GC and CPU data it already has. They are all off
+// by default, a recording turns them on with settings such as
+//
+//   java -XX:StartFlightRecording:filename=run.jfr,+dymond.FunctionCall#enabled=true ...
+//
+// or all of them at once with a .jfc file that enables the Dymond category.
+final class Events {
+	// Whether a running recording has each event enabled. Production runs usually have a
+	// recording going with all of these off, and then nothing here makes an event or takes a
+	// slower path. Only a running recording looks the event types up: the first lookup registers
+	// them all with the Flight Recorder, which takes longer than most scripts run.
+	static volatile boolean calls;
+	static volatile boolean instances;
+	static volatile boolean errors;
+	static volatile boolean phases;
+
+	static {
+		// With a recording started along with the JVM this is quick. Otherwise listening costs
+		// tens of milliseconds, which a thread of its own spends while the script starts.
+		if (FlightRecorder.isInitialized()) {
+			listen();
+		} else {
+			Thread thread = new Thread(Events::listen, "dymond-jfr");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private Events() {}
+
+	private static void listen() {
+		FlightRecorder.addListener(new FlightRecorderListener() {
+			@Override
+			public void recorderInitialized(FlightRecorder recorder) {
+				update(recorder);
+			}
+
+			@Override
+			public void recordingStateChanged(Recording changed) {
+				update(FlightRecorder.getFlightRecorder());
+			}
+		});
+	}
+
+	private static void update(FlightRecorder recorder) {
+		boolean running = false;
+		for (Recording recording : recorder.getRecordings()) {
+			if (recording.getState() == RecordingState.RUNNING) running = true;
+		}
+		calls = running && enabled(FunctionCall.class);
+		instances = running && enabled(Instantiation.class);
+		errors = running && enabled(ScriptError.class);
+		phases = running && enabled(Phase.class);
+	}
+
+	private static boolean enabled(Class<? extends Event> event) {
+		return EventType.getEventType(event).isEnabled();
+	}
+
+	@Name("dymond.FunctionCall")
+	@Label("Function Call")
+	@Description("A Dymond function or method running, from its first statement to its return")
+	@Category("Dymond")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class FunctionCall extends Event {
+		@Label("Function")
+		String function;
+	}
+
+	@Name("dymond.Instantiation")
+	@Label("Instantiation")
+	@Description("A Dymond class making an instance, for as long as its init runs")
+	@Category("Dymond")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class Instantiation extends Event {
+		@Label("Class")
+		String className;
+	}
+
+	@Name("dymond.RuntimeError")
+	@Label("Runtime Error")
+	@Description("A runtime error reported by a Dymond program")
+	@Category("Dymond")
+	@Enabled(false)
+	static final class ScriptError extends Event {
+		@Label("Message")
+		String message;
+
+		@Label("Line")
+		int line;
+
+		@Label("Source")
+		String source;
+	}
+
+	@Name("dymond.Phase")
+	@Label("Phase")
+	@Description("One stage of running a script: scanning, parsing, resolving, optimizing, loading or storing its cache, or executing it")
+	@Category("Dymond")
+	@Enabled(false)
+	@StackTrace(false)
+	static final class Phase extends Event {
+		@Label("Phase")
+		String phase;
+
+		@Label("Script")
+		String script;
+	}
+
+	// Started already, or null when no recording wants it. Either way it goes to commit at the end.
+	static Phase phase(String phase, String script) {
+		if (!phases) return null;
+
+		Phase event = new Phase();
+		event.phase = phase;
+		event.script = script;
+		event.begin();
+		return event;
+	}
+
+	static void commit(Phase event) {
+		if (event != null) event.commit();
+	}
+
+	static void error(String message, int line, String source) {
+		if (!errors) return;
+
+		ScriptError event = new ScriptError();
+		event.message = message;
+		event.line = line;
+		event.source = source;
+		event.commit();
+	}
+}
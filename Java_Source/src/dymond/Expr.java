@@ -20,7 +20,15 @@ public abstract class Expr{
 		R visitVariableExpr(Variable expr);
 	}
 
-	abstract <R> R accept(Visitor<R> visitor);
+	public abstract <R> R accept(Visitor<R> visitor);
+
+	// Set by the Resolver for local variables: frames to walk up and the slot within that frame
+	int depth = -1;
+	int slot = -1;
+	// Which Specialization the Interpreter has rewritten this node to, UNINITIALIZED until it first runs
+	int state = Specialization.UNINITIALIZED;
+	// Field and method lookups cached by the Interpreter on Get, Set and Super, created on first use
+	InlineCache cache;
 
 	public static class Assign extends Expr{
 		public Assign(Token name, Expr value, Token operator) {
@@ -0,0 +1,43 @@
+package dymond;
+
+// A per-call-site cache keyed on the receiver's Shape, or on the superclass for Super. An
+// entry remembers the field index a shape gives the name, or the method when it is not a
+// field, or for Set the shape an added field moves to. It holds up to LIMIT receivers, past
+// that the site is megamorphic and misses just do the full lookup.
+final class InlineCache {
+	private static final int LIMIT = 4;
+	
+	private final Object[] keys = new Object[LIMIT];
+	private final int[] indices = new int[LIMIT];
+	private final DymondFunction[] methods = new DymondFunction[LIMIT];
+	private final Shape[] transitions = new Shape[LIMIT];
+	private int size = 0;
+	
+	int find(Object key) {
+		for (int i = 0; i < size; i++) {
+			if (keys[i] == key) return i;
+		}
+		return -1;
+	}
+	
+	int index(int entry) {
+		return indices[entry];
+	}
+	
+	DymondFunction method(int entry) {
+		return methods[entry];
+	}
+	
+	Shape transition(int entry) {
+		return transitions[entry];
+	}
+	
+	void add(Object key, int index, DymondFunction method, Shape transition) {
+		if (size == LIMIT) return;
+		keys[size] = key;
+		indices[size] = index;
+		methods[size] = method;
+		transitions[size] = transition;
+		size++;
+	}
+}
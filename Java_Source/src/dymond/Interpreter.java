@@ -5,27 +5,50 @@ import java.util.List;
 import java.util.Map;
 
 import dymond.Expr.Ternary;
-import java.util.ArrayList;
 import java.util.HashMap;
 
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 	final Environment globals = new Environment();
-	private Environment environment = globals;
-	private final Map<Expr, Integer> locals = new HashMap<>();
-	private boolean repl;
+	Environment environment = globals;
+	boolean repl;
+	// The tier above the tree-walker, null when tiered compilation is switched off
+	JitCompiler jit = new JitCompiler(this);
+	// Whether Expr nodes may rewrite themselves from the operand types they observe
+	private boolean specialize = true;
+	// Executing a statement returns how it completed: null to carry on with the next statement,
+	// the Break or Next statement being unwound, or RETURN with the value left in returnValue
+	static final Object RETURN = new Object();
+	Object returnValue;
+	// This thread's calls in progress and the most there have been, kept by DymondRuntime
+	int callDepth;
+	int maxCallDepth;
 	
 	public Interpreter() {
 		globals.defineNativeFunctions();
 	}
 	
+	public void disableTiering() {
+		jit = null;
+	}
+	
+	public void disableSpecialization() {
+		specialize = false;
+	}
+	
 	public void interpret(List<Stmt> statements, boolean repl) {
 		try {
 			this.repl = repl;
 			
 			for(Stmt statement : statements) {
 				try {
-					execute(statement);
+					Object completion = execute(statement);
+					if (completion instanceof Stmt.Break) {
+						throw new RuntimeError(((Stmt.Break)completion).keyword, "Break statement must be inside a loop.");
+					}
+					if (completion instanceof Stmt.Next) {
+						throw new RuntimeError(((Stmt.Next)completion).keyword, "Next statement must be inside a for-loop.");
+					}
 				} catch(BreakError err) {
 					throw new RuntimeError(err.token, "Break statement must be inside a loop.");
 				} catch(Next err) {
@@ -42,35 +65,57 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		Object left = evaluate(expr.left);
 		Object right = evaluate(expr.subNum);
 		
+		return subscript(expr.operator, left, right);
+	}
+	
+	Object subscript(Token operator, Object left, Object right) {
 		if(left instanceof String && right instanceof Double) {
 			int num = ((Double)right).intValue();
 			String str = (String)left;
 			if (num > str.length()) {
-				throw new RuntimeError(expr.operator, "Subscript out of bounds.");
+				throw new RuntimeError(operator, "Subscript out of bounds.");
 			}
 			
 			return String.valueOf(str.charAt(num));
 		} else {
-			throw new RuntimeError(expr.operator, "Subscripting is only allowed for Strings.");
+			throw new RuntimeError(operator, "Subscripting is only allowed for Strings.");
 		}
 	}
 	
 	@Override
 	public Object visitSuperExpr(Expr.Super expr) {
-		int distance = locals.get(expr);
-		DymondClass superclass = (DymondClass)environment.getAt(distance, "super");
-		
-		// "this" is always one level nearer than "super"'s environment
-		DymondInstance object = (DymondInstance)environment.getAt(distance - 1,  "this");
+		return getSuper(environment, expr);
+	}
+	
+	Object getSuper(Environment environment, Expr.Super expr) {
+		return superMethod(environment, expr).bind(superReceiver(environment, expr));
+	}
+	
+	// "this" is always one level nearer than "super"'s environment, and always its first slot
+	private DymondInstance superReceiver(Environment environment, Expr.Super expr) {
+		return (DymondInstance)environment.getAt(expr.depth - 1, 0);
+	}
+	
+	private DymondFunction superMethod(Environment environment, Expr.Super expr) {
+		DymondClass superclass = (DymondClass)environment.getAt(expr.depth, expr.slot);
 		
-		DymondFunction method = superclass.findMethod(object,  expr.method.lexeme);
-		DymondFunction staticMethod = superclass.findStaticMethod(object, expr.method.lexeme);
-		if(method == null && staticMethod == null) {
-			throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+		// A static method wins over an instance method of the same name. Methods never change
+		// once a class is declared, so the cached lookup needs no invalidation.
+		if (expr.cache == null) expr.cache = new InlineCache();
+		int entry = expr.cache.find(superclass);
+		DymondFunction method;
+		if (entry >= 0) {
+			method = expr.cache.method(entry);
+		} else {
+			method = superclass.lookupStaticMethod(expr.method.lexeme);
+			if (method == null) method = superclass.lookupMethod(expr.method.lexeme);
+			if (method == null) {
+				throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+			}
+			expr.cache.add(superclass, -1, method, null);
 		}
 		
-		if(staticMethod == null) return method;
-		return staticMethod;
+		return method;
 	}
 	
 	@Override
@@ -80,16 +125,30 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override
 	public Object visitGetExpr(Expr.Get expr) {
-		Object object = evaluate(expr.object);
+		return get(evaluate(expr.object), expr);
+	}
+	
+	Object get(Object object, Expr.Get expr) {
 		if (object instanceof DymondInstance) {
-			return ((DymondInstance) object).get(expr.name);
+			if (expr.cache == null) expr.cache = new InlineCache();
+			return ((DymondInstance) object).get(expr.name, expr.cache);
+		}
+		
+		throw new RuntimeError(expr.name, "Only instances have properties.");
+	}
+	
+	// Like get, but a method comes back unbound for invoke to call with the object as its receiver
+	Object method(Object object, Expr.Get expr) {
+		if (object instanceof DymondInstance) {
+			if (expr.cache == null) expr.cache = new InlineCache();
+			return ((DymondInstance) object).lookup(expr.name, expr.cache);
 		}
 		
 		throw new RuntimeError(expr.name, "Only instances have properties.");
 	}
 	
 	@Override
-	public Void visitClassStmt(Stmt.Class stmt) {
+	public Object visitClassStmt(Stmt.Class stmt) {
 		Object superclass = null;
 		if (stmt.superclass != null) {
 			superclass = evaluate(stmt.superclass);
@@ -97,22 +156,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				throw new RuntimeError(stmt.superclass.name, "Superclass must be a class.");
 			}
 		}
-		environment.define(stmt.name.lexeme, null);
+		int slot = define(stmt.name, null);
 		
 		if (stmt.superclass != null) {
-			environment = new Environment(environment);
-			environment.define("super", superclass);
+			environment = new Environment(environment, 1);
+			environment.define(superclass);
 		}
 		
 		Map<String, DymondFunction> methods = new HashMap<>();
 		Map<String, DymondFunction> staticMethods = new HashMap<>();
 		for (Stmt.Function method : stmt.methods) {
-			DymondFunction function = new DymondFunction(method, environment, method.name.lexeme.equals("init"));
+			DymondFunction function = new DymondFunction(method, environment, true, method.name.lexeme.equals("init"), tier(method), null);
 			methods.put(method.name.lexeme, function);
 		}
 		
 		for (Stmt.Function staticMethod : stmt.staticMethods) {
-			DymondFunction function = new DymondFunction(staticMethod, environment, false);
+			DymondFunction function = new DymondFunction(staticMethod, environment, true, false, tier(staticMethod), null);
 			staticMethods.put(staticMethod.name.lexeme, function);
 		}
 		
@@ -120,32 +179,40 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		
 		if (superclass != null) environment = environment.enclosing;
 		
-		environment.assign(stmt.name,  klass);
+		if (environment == globals) {
+			globals.assign(stmt.name,  klass);
+		} else {
+			environment.set(slot, klass);
+		}
 		return null;
 	}
 	
 	@Override 
-	public Void visitReturnStmt(Stmt.Return stmt) {
+	public Object visitReturnStmt(Stmt.Return stmt) {
 		Object value = null;
 		if (stmt.value != null) value = evaluate(stmt.value);
 		
-		throw new Return(value);
+		returnValue = value;
+		return RETURN;
 	}
 	
 	@Override
-	public Void visitBreakStmt(Stmt.Break stmt) {
-		throw new BreakError(stmt.keyword);
+	public Object visitBreakStmt(Stmt.Break stmt) {
+		return stmt;
 	}
 	
 	@Override 
-	public Void visitNextStmt(Stmt.Next stmt) {
-		throw new Next(stmt.keyword);
+	public Object visitNextStmt(Stmt.Next stmt) {
+		return stmt;
 	}
 	
 	@Override
-	public Void visitFunctionStmt(Stmt.Function stmt) {
-		DymondFunction function = new DymondFunction(stmt, environment, false);
-		environment.define(stmt.name.lexeme,  function);
+	public Object visitFunctionStmt(Stmt.Function stmt) {
+		DymondFunction function = new DymondFunction(stmt, environment, false, tier(stmt));
+		define(stmt.name,  function);
+		
+		// Parameters are only given global bindings, local frames have no slots for them
+		if (environment != globals) return null;
 		
 		for (Expr.Assign expr : stmt.parameters) {
 			if (expr.operator != null) {
@@ -161,58 +228,120 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override 
 	public Object visitCallExpr(Expr.Call expr) {
+		// A method called on the spot gets its receiver directly, no bound function is made for it
+		if (expr.callee instanceof Expr.Get) {
+			Expr.Get get = (Expr.Get)expr.callee;
+			Object object = evaluate(get.object);
+			Object callee = method(object, get);
+			return invoke(object, callee, callable(callee, expr.arguments.size(), expr.paren), expr);
+		}
+		
+		if (expr.callee instanceof Expr.Super) {
+			Expr.Super sup = (Expr.Super)expr.callee;
+			DymondFunction method = superMethod(environment, sup);
+			callable(method, expr.arguments.size(), expr.paren);
+			return method.call(this, superReceiver(environment, sup), expr.arguments, expr);
+		}
+		
 		Object callee = evaluate(expr.callee);
+		DymondCallable function = callable(callee, expr.arguments.size(), expr.paren);
 		
+		return call(callee, function, expr);
+	}
+	
+	Object invoke(Object object, Object callee, DymondCallable function, Expr.Call expr) {
+		if (callee instanceof DymondFunction && ((DymondFunction)callee).needsReceiver()) {
+			return ((DymondFunction)callee).call(this, (DymondInstance)object, expr.arguments, expr);
+		}
+		return call(callee, function, expr);
+	}
+	
+	Object call(Object callee, DymondCallable function, Expr.Call expr) {
+		return function.call(this, expr.arguments, expr);
+	}
+	
+	DymondCallable callable(Object callee, int argCount, Token paren) {
 		if (!(callee instanceof DymondCallable)) {
-			throw new RuntimeError(expr.paren, "Can only call functions and classes.");			
+			throw new RuntimeError(paren, "Can only call functions and classes.");			
 		}
 		
 		DymondCallable function = (DymondCallable)callee;
-		if (expr.arguments.size() < function.minArity() || expr.arguments.size() > function.maxArity()) {
+		if (argCount < function.minArity() || argCount > function.maxArity()) {
 			if(function.minArity() != function.maxArity())
-				throw new RuntimeError(expr.paren, "Expected between " + function.minArity() + " and " + function.maxArity() + " arguments, but got " + expr.arguments.size() + " argument(s).");
-			throw new RuntimeError(expr.paren, "Expected " + function.minArity() + " argument(s), but got " + expr.arguments.size() + " argument(s).");
-		}
-		
-		if(callee.toString().equals("<native fn>")) {
-			List<Object> newArgs = new ArrayList<>();
-			for (Expr argument : expr.arguments) {
-				newArgs.add(evaluate(argument));
-			}
-			return function.call1(this, newArgs, expr);
+				throw new RuntimeError(paren, "Expected between " + function.minArity() + " and " + function.maxArity() + " arguments, but got " + argCount + " argument(s).");
+			throw new RuntimeError(paren, "Expected " + function.minArity() + " argument(s), but got " + argCount + " argument(s).");
 		}
-		else
-			return function.call(this, expr.arguments, expr);
+		return function;
 	}
 	
 	@Override 
-	public Void visitWhileStmt(Stmt.While stmt) {
+	public Object visitWhileStmt(Stmt.While stmt) {
+		int backEdges = 0;
 		while (isTruthy(evaluate(stmt.condition))) {
+			Object completion;
 			try {
-				execute(stmt.body);
+				completion = execute(stmt.body);
 			} catch(BreakError err) {
+				// Thrown by a function the body called, a break only unwinds that way across calls
 				break;
 			}
+			
+			if (completion != null) {
+				if (completion instanceof Stmt.Break) break;
+				// A return, or a next that belongs to an enclosing for loop
+				return completion;
+			}
+			
+			if (++backEdges == JitCompiler.LOOP_THRESHOLD && jit != null) {
+				// Hand the rest of the loop to compiled code, starting at the next condition check
+				JitCompiler.CompiledCode compiled = jit.compileLoop(stmt);
+				if (compiled != null) {
+					return compiled(compiled.run(this, environment));
+				}
+			}
 		}
 		
 		return null;
 	}
 	
 	@Override 
-	public Void visitForStmt(Stmt.For stmt) {
+	public Object visitForStmt(Stmt.For stmt) {
+		int backEdges = 0;
 		while (isTruthy(evaluate(stmt.condition))) {
+			Object completion = null;
 			try {
-				execute(stmt.body);
+				completion = execute(stmt.body);
 			} catch(BreakError err) {
 				break;
 			} catch(Next err) {
-				execute(stmt.increment);
+				// Fall through to the increment
+			}
+			
+			if (completion != null) {
+				if (completion instanceof Stmt.Break) break;
+				if (completion == RETURN) return completion;
+			}
+			
+			if (stmt.increment != null) execute(stmt.increment);
+			
+			if (++backEdges == JitCompiler.LOOP_THRESHOLD && jit != null) {
+				JitCompiler.CompiledCode compiled = jit.compileLoop(stmt);
+				if (compiled != null) {
+					return compiled(compiled.run(this, environment));
+				}
 			}
 		}
 		
 		return null;
 	}
 	
+	// A compiled loop gives back FALLTHROUGH when it finishes and the value when it returns
+	private Object compiled(Object result) {
+		if (result == JitCompiler.FALLTHROUGH) return null;
+		returnValue = result;
+		return RETURN;
+	}
+	
 	@Override
 	public Object visitLogicalExpr(Expr.Logical expr) {
 		Object left = evaluate(expr.left);
@@ -227,30 +356,38 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 	
 	@Override
-	public Void visitIfStmt(Stmt.If stmt) {
+	public Object visitIfStmt(Stmt.If stmt) {
 		if (isTruthy(evaluate(stmt.condition))) {
-			execute(stmt.thenBranch);
+			return execute(stmt.thenBranch);
 		} else if (stmt.elseBranch != null) {
-			execute(stmt.elseBranch);
+			return execute(stmt.elseBranch);
 		}
 		return null;
 	}
 	
 	@Override 
-	public Void visitBlockStmt(Stmt.Block stmt) {
-		executeBlock(stmt.statements, new Environment(environment));
+	public Object visitBlockStmt(Stmt.Block stmt) {
+		if (stmt.frameless) {
+			for (Stmt statement : stmt.statements) {
+				Object completion = execute(statement);
+				if (completion != null) return completion;
+			}
+			return null;
+		}
 		
-		return null;
+		return executeBlock(stmt.statements, new Environment(environment));
 	}
 	
-	public void executeBlock(List<Stmt> statements, Environment environment) {
+	public Object executeBlock(List<Stmt> statements, Environment environment) {
 		Environment previous = this.environment;
 		try {
 			this.environment = environment;
 			
 			for (Stmt statement : statements) {
-				execute(statement);
+				Object completion = execute(statement);
+				if (completion != null) return completion;
 			}
+			return null;
 		} finally {
 			this.environment = previous;
 		}
@@ -258,47 +395,25 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override 
 	public Object visitAssignExpr(Expr.Assign expr) {
-		Integer distance = locals.get(expr);
+		if (Specialization.producesDouble(expr.state)) return boxed(expr);
+		
 		Object left = null;
-		if (distance != null) left = environment.getAt(distance, expr.name.lexeme);
+		if (expr.depth >= 0) left = environment.getAt(expr.depth, expr.slot);
 		else left = globals.get(expr.name);
 		Object right = evaluate(expr.value);
-		Object finalValue = null;
 		
 		if(left == null && expr.operator.type != EQUAL) {
 			throw new RuntimeError(expr.name, "Undefined variable '" + expr.name.lexeme + "'."); 
 		}
 		
-		switch(expr.operator.type) {
-			case PLUS_EQUAL:
-				if (left instanceof String && right instanceof String) finalValue = (String)left + (String)right;
-				else if (left instanceof Double && right instanceof Double) finalValue = (Double)left + (Double)right;
-				else if(left instanceof Double && right instanceof String || left instanceof String && right instanceof Double) {
-					if (left instanceof Double) left = stringify(left);
-					if (right instanceof Double) right = stringify(right);
-					finalValue = (String)left + (String)right;
-				} else throw new RuntimeError(expr.operator, "Operands may be comprised of numbers and strings only.");
-				break;
-			case MINUS_EQUAL:
-				if (left instanceof Double && right instanceof Double) finalValue = (Double)left - (Double)right;
-				else throw new RuntimeError(expr.operator, "Operands must be two numbers.");
-				break;
-			case MODULO_EQUAL:
-				if (left instanceof Double && right instanceof Double) finalValue = (Double)left % (Double)right;
-				else throw new RuntimeError(expr.operator, "Operands must be two numbers.");
-				break;
-			case TIMES_EQUAL:
-				if (left instanceof Double && right instanceof Double) finalValue = (Double)left * (Double)right;
-				else throw new RuntimeError(expr.operator, "Operands must be two numbers.");
-				break;
+		if (expr.state == Specialization.UNINITIALIZED && specialize) {
+			expr.state = Specialization.assign(expr, left, right);
 		}
 		
-		if(finalValue == null && right != null) {
-			finalValue = right;
-		}
+		Object finalValue = compound(expr.operator, left, right);
 		
-		if (distance != null) {
-			environment.assignAt(distance, expr.name, finalValue);
+		if (expr.depth >= 0) {
+			environment.assignAt(expr.depth, expr.slot, finalValue);
 		} else {
 			globals.assign(expr.name, finalValue);
 		}
@@ -314,14 +429,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		}
 		
 		Object right = evaluate(expr.value);
-		Object left = ((DymondInstance)object).get(expr.name, true);
-		Object finalValue = null;
-		
-		if (left == null && expr.equals.type != EQUAL) {
-			throw new RuntimeError(expr.name, "Undefined property '" + expr.name.lexeme + "'.");
+		return set((DymondInstance)object, right, expr);
+	}
+	
+	Object set(DymondInstance object, Object right, Expr.Set expr) {
+		// A plain '=' never looks at the old value, so only compound operators fetch it
+		Object left = null;
+		if (expr.equals.type != EQUAL) {
+			left = object.get(expr.name, true);
+			
+			if (left == null) {
+				throw new RuntimeError(expr.name, "Undefined property '" + expr.name.lexeme + "'.");
+			}
 		}
 		
-		switch(expr.equals.type) {
+		Object finalValue = compound(expr.equals, left, right);
+		
+		if (expr.cache == null) expr.cache = new InlineCache();
+		object.set(expr.name, finalValue, expr.cache);
+		return finalValue;
+	}
+	
+	// Applies an assignment operator such as '+=' the same way for variables and fields
+	Object compound(Token operator, Object left, Object right) {
+		Object finalValue = null;
+		
+		switch(operator.type) {
 			case PLUS_EQUAL:
 				if (left instanceof String && right instanceof String) finalValue = (String)left + (String)right;
 				else if (left instanceof Double && right instanceof Double) finalValue = (Double)left + (Double)right;
@@ -329,19 +462,19 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					if (left instanceof Double) left = stringify(left);
 					if (right instanceof Double) right = stringify(right);
 					finalValue = (String)left + (String)right;
-				} else throw new RuntimeError(expr.equals, "Operands may be comprised of numbers and strings only.");
+				} else throw new RuntimeError(operator, "Operands may be comprised of numbers and strings only.");
 				break;
 			case MINUS_EQUAL:
 				if (left instanceof Double && right instanceof Double) finalValue = (Double)left - (Double)right;
-				else throw new RuntimeError(expr.equals, "Operands must be two numbers.");
+				else throw new RuntimeError(operator, "Operands must be two numbers.");
 				break;
 			case MODULO_EQUAL:
 				if (left instanceof Double && right instanceof Double) finalValue = (Double)left % (Double)right;
-				else throw new RuntimeError(expr.equals, "Operands must be two numbers.");
+				else throw new RuntimeError(operator, "Operands must be two numbers.");
 				break;
 			case TIMES_EQUAL:
 				if (left instanceof Double && right instanceof Double) finalValue = (Double)left * (Double)right;
-				else throw new RuntimeError(expr.equals, "Operands must be two numbers.");
+				else throw new RuntimeError(operator, "Operands must be two numbers.");
 				break;
 		}
 		
@@ -349,17 +482,21 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			finalValue = right;
 		}
 		
-		((DymondInstance)object).set(expr.name, finalValue);
 		return finalValue;
 	}
 	
 	@Override
 	public Object visitUnaryAssignExpr(Expr.UnaryAssign expr) {
-		Integer distance = locals.get(expr);
+		if (Specialization.producesDouble(expr.state)) return boxed(expr);
+		
 		Object left = null;
-		if (distance != null) left = environment.getAt(distance, expr.name.lexeme);
+		if (expr.depth >= 0) left = environment.getAt(expr.depth, expr.slot);
 		else left = globals.get(expr.name);
 		
+		if (expr.state == Specialization.UNINITIALIZED && specialize) {
+			expr.state = Specialization.unaryAssign(expr, left);
+		}
+		
 		switch(expr.operator.type) {
 			case PLUS_PLUS:
 				checkNumberOperand(expr.operator, left);
@@ -371,8 +508,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				break;
 		}
 		
-		if (distance != null) {
-			environment.assignAt(distance, expr.name, left);
+		if (expr.depth >= 0) {
+			environment.assignAt(expr.depth, expr.slot, left);
 		} else {
 			globals.assign(expr.name, left);
 		}
@@ -380,13 +517,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 	
 	@Override
-	public Void visitVarStmt(Stmt.Var stmt) {
+	public Object visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer != null && environment != globals && Specialization.producesDouble(stmt.initializer.state)) {
+			// Starts out unboxed, like the assignments that follow
+			try {
+				environment.defineNumber(evaluateNumber(stmt.initializer));
+			} catch (UnexpectedResult result) {
+				environment.define(result.value);
+			}
+			return null;
+		}
+		
 		Object value = null;
 		if(stmt.initializer != null) {
 			value = evaluate(stmt.initializer);
 		}
 		
-		environment.define(stmt.name.lexeme, value);
+		define(stmt.name, value);
 		return null;
 	}
 	
@@ -396,10 +543,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 	
 	@Override
-	public Void visitExpressionStmt(Stmt.Expression stmt) {
+	public Object visitExpressionStmt(Stmt.Expression stmt) {
+		if (!repl && Specialization.producesDouble(stmt.expression.state)) {
+			// The value is thrown away, so a number never has to be boxed
+			try {
+				evaluateNumber(stmt.expression);
+			} catch (UnexpectedResult result) {
+				// Nothing to do with a value that is discarded anyway
+			}
+			return null;
+		}
+		
 		Object result = evaluate(stmt.expression);
 		if(repl)
-			System.out.println(stringify(result));
+			Console.println(stringify(result));
 		return null;
 	}
 	
@@ -415,11 +572,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override
 	public Object visitUnaryExpr(Expr.Unary expr) {
+		if (expr.state == Specialization.NEGATE_DOUBLE) return boxed(expr);
+		
 		Object right = evaluate(expr.right);
+		if (expr.state == Specialization.UNINITIALIZED && specialize) {
+			expr.state = Specialization.unary(expr.operator, right);
+		}
 		
-		switch (expr.operator.type) {
+		return unary(expr.operator, right);
+	}
+	
+	Object unary(Token operator, Object right) {
+		switch (operator.type) {
 			case MINUS:
-				checkNumberOperand(expr.operator, right);
+				checkNumberOperand(operator, right);
 				return -(double)right;
 			case BANG:
 				return !isTruthy(right);
@@ -430,25 +596,201 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
+		if (Specialization.producesDouble(expr.state)) return boxed(expr);
+		if (Specialization.comparesDoubles(expr.state)) return compare(expr);
+		
 		Object left = evaluate(expr.left);
 		Object right = evaluate(expr.right);
 		
-		switch (expr.operator.type) {
+		switch (expr.state) {
+			case Specialization.UNINITIALIZED:
+				if (specialize) expr.state = Specialization.binary(expr.operator, left, right);
+				break;
+			case Specialization.CONCAT_STRINGS:
+				if (left instanceof String && right instanceof String) return (String)left + (String)right;
+				expr.state = Specialization.GENERIC;
+				break;
+		}
+		
+		return binary(expr.operator, left, right);
+	}
+	
+	// The unboxed counterpart of evaluate for nodes that have specialized to numbers. Each
+	// specialized state guards on its operands being numbers, and when one is not, the node
+	// drops back to GENERIC for good and the boxed result leaves through UnexpectedResult.
+	double evaluateNumber(Expr expr) {
+		switch (expr.state) {
+			case Specialization.ADD_DOUBLES:
+			case Specialization.SUBTRACT_DOUBLES:
+			case Specialization.MULTIPLY_DOUBLES:
+			case Specialization.DIVIDE_DOUBLES:
+			case Specialization.MODULO_DOUBLES:
+				return arithmetic((Expr.Binary)expr);
+			case Specialization.NEGATE_DOUBLE: {
+				Expr.Unary unary = (Expr.Unary)expr;
+				try {
+					return -evaluateNumber(unary.right);
+				} catch (UnexpectedResult result) {
+					expr.state = Specialization.GENERIC;
+					return number(unary(unary.operator, result.value));
+				}
+			}
+			case Specialization.INCREMENT_DOUBLE:
+			case Specialization.DECREMENT_DOUBLE:
+				return step((Expr.UnaryAssign)expr);
+			case Specialization.ASSIGN_DOUBLE:
+			case Specialization.ADD_ASSIGN_DOUBLES:
+			case Specialization.SUBTRACT_ASSIGN_DOUBLES:
+			case Specialization.MULTIPLY_ASSIGN_DOUBLES:
+			case Specialization.MODULO_ASSIGN_DOUBLES:
+				return assignNumber((Expr.Assign)expr);
+			case Specialization.LOCAL_FRAME:
+				return environment.getNumber(expr.slot);
+			case Specialization.LOCAL_ENCLOSING:
+				return environment.enclosing.getNumber(expr.slot);
+			case Specialization.LOCAL_AT:
+				return environment.getNumberAt(expr.depth, expr.slot);
+		}
+		
+		if (expr instanceof Expr.Grouping) return evaluateNumber(((Expr.Grouping)expr).expression);
+		return number(evaluate(expr));
+	}
+	
+	private Object boxed(Expr expr) {
+		try {
+			return evaluateNumber(expr);
+		} catch (UnexpectedResult result) {
+			return result.value;
+		}
+	}
+	
+	private static double number(Object value) {
+		if (value instanceof Double) return (double)value;
+		throw new UnexpectedResult(value);
+	}
+	
+	private double arithmetic(Expr.Binary expr) {
+		double left;
+		try {
+			left = evaluateNumber(expr.left);
+		} catch (UnexpectedResult result) {
+			expr.state = Specialization.GENERIC;
+			return number(binary(expr.operator, result.value, evaluate(expr.right)));
+		}
+		
+		double right;
+		try {
+			right = evaluateNumber(expr.right);
+		} catch (UnexpectedResult result) {
+			expr.state = Specialization.GENERIC;
+			return number(binary(expr.operator, left, result.value));
+		}
+		
+		switch (expr.state) {
+			case Specialization.ADD_DOUBLES: return left + right;
+			case Specialization.SUBTRACT_DOUBLES: return left - right;
+			case Specialization.MULTIPLY_DOUBLES: return left * right;
+			case Specialization.DIVIDE_DOUBLES:
+				if (right == 0) throw new RuntimeError(expr.operator, "Division by zero error.");
+				return left / right;
+			default: return left % right;
+		}
+	}
+	
+	private Object compare(Expr.Binary expr) {
+		double left;
+		try {
+			left = evaluateNumber(expr.left);
+		} catch (UnexpectedResult result) {
+			expr.state = Specialization.GENERIC;
+			return binary(expr.operator, result.value, evaluate(expr.right));
+		}
+		
+		double right;
+		try {
+			right = evaluateNumber(expr.right);
+		} catch (UnexpectedResult result) {
+			expr.state = Specialization.GENERIC;
+			return binary(expr.operator, left, result.value);
+		}
+		
+		switch (expr.state) {
+			case Specialization.LESS_DOUBLES: return left < right;
+			case Specialization.LESS_EQUAL_DOUBLES: return left <= right;
+			case Specialization.GREATER_DOUBLES: return left > right;
+			case Specialization.GREATER_EQUAL_DOUBLES: return left >= right;
+			// Same answer as Double.equals, which is what isEqual ends up calling
+			case Specialization.EQUAL_DOUBLES: return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+			default: return Double.doubleToLongBits(left) != Double.doubleToLongBits(right);
+		}
+	}
+	
+	private double step(Expr.UnaryAssign expr) {
+		double value;
+		try {
+			value = environment.getNumberAt(expr.depth, expr.slot);
+		} catch (UnexpectedResult result) {
+			expr.state = Specialization.GENERIC;
+			return number(visitUnaryAssignExpr(expr));
+		}
+		
+		value = expr.state == Specialization.INCREMENT_DOUBLE ? value + 1 : value - 1;
+		environment.assignNumberAt(expr.depth, expr.slot, value);
+		return value;
+	}
+	
+	private double assignNumber(Expr.Assign expr) {
+		int state = expr.state;
+		double left = 0;
+		if (state != Specialization.ASSIGN_DOUBLE) {
+			try {
+				left = environment.getNumberAt(expr.depth, expr.slot);
+			} catch (UnexpectedResult result) {
+				expr.state = Specialization.GENERIC;
+				return number(visitAssignExpr(expr));
+			}
+		}
+		
+		double right;
+		try {
+			right = evaluateNumber(expr.value);
+		} catch (UnexpectedResult result) {
+			expr.state = Specialization.GENERIC;
+			Object value = state == Specialization.ASSIGN_DOUBLE ? result.value : compound(expr.operator, left, result.value);
+			environment.assignAt(expr.depth, expr.slot, value);
+			return number(value);
+		}
+		
+		double value;
+		switch (state) {
+			case Specialization.ADD_ASSIGN_DOUBLES: value = left + right; break;
+			case Specialization.SUBTRACT_ASSIGN_DOUBLES: value = left - right; break;
+			case Specialization.MULTIPLY_ASSIGN_DOUBLES: value = left * right; break;
+			case Specialization.MODULO_ASSIGN_DOUBLES: value = left % right; break;
+			default: value = right; break;
+		}
+		
+		environment.assignNumberAt(expr.depth, expr.slot, value);
+		return value;
+	}
+	
+	Object binary(Token operator, Object left, Object right) {
+		switch (operator.type) {
 			case MINUS:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double)left - (double)right;
 			case DIV:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				if ((double)right == 0) {
-					throw new RuntimeError(expr.operator, "Division by zero error.");
+					throw new RuntimeError(operator, "Division by zero error.");
 				}
 				
 				return (double)left / (double)right;
 			case STAR:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double)left * (double)right;
 			case INTEGER_DIV:
-				checkNumberOperands(expr.operator, left, right);
+				checkNumberOperands(operator, left, right);
 				return (double)( (int)( (double)left ) / (int)( (double)right )  );
 			case GREATER:
 				if (left instanceof Double && right instanceof Double) return (double)left > (double)right;
@@ -457,7 +799,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					return val > 0;
 				}
 				
-				throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+				throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
 			case GREATER_EQUAL:
 				if (left instanceof Double && right instanceof Double) return (double)left >= (double)right;
 				if(left instanceof String && right instanceof String) {
@@ -465,7 +807,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					return val >= 0;
 				}
 				
-				throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+				throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
 			case LESS:
 				if (left instanceof Double && right instanceof Double) return (double)left < (double)right;
 				if(left instanceof String && right instanceof String) {
@@ -473,7 +815,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					return val < 0;
 				}
 				
-				throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+				throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
 			case LESS_EQUAL:
 				if (left instanceof Double && right instanceof Double) return (double)left <= (double)right;
 				if(left instanceof String && right instanceof String) {
@@ -481,7 +823,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					return val <= 0;
 				}
 				
-				throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
+				throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
 			case BANG_EQUAL:
 				return !isEqual(left, right);
 			case EQUAL_EQUAL:
@@ -497,7 +839,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 					return (String)left + (String)right;
 				}
 				
-				throw new RuntimeError(expr.operator, "Operands may be comprised of numbers and strings only.");
+				throw new RuntimeError(operator, "Operands may be comprised of numbers and strings only.");
 		}
 		
 		return null;
@@ -517,20 +859,49 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 	
 	private Object lookUpVariable(Token name, Expr expr) {
-		Integer distance = locals.get(expr);
-		if (distance != null) {
-			return environment.getAt(distance, name.lexeme);
+		switch (expr.state) {
+			case Specialization.UNINITIALIZED:
+				if (specialize) expr.state = Specialization.variable(expr);
+				break;
+			case Specialization.LOCAL_FRAME:
+				return environment.get(expr.slot);
+			case Specialization.LOCAL_ENCLOSING:
+				return environment.enclosing.get(expr.slot);
+			case Specialization.LOCAL_AT:
+				return environment.getAt(expr.depth, expr.slot);
+			case Specialization.GLOBAL:
+				return globals.get(name);
+		}
+		
+		if (expr.depth >= 0) {
+			return environment.getAt(expr.depth, expr.slot);
 		} else {
 			return globals.get(name);
 		}
 	}
 	
-	public void resolve(Expr expr, int depth) {
-		locals.put(expr, depth);
+	private JitCompiler.Tier tier(Stmt.Function declaration) {
+		if (jit == null) return null;
+		return jit.tier(declaration);
+	}
+	
+	public void resolve(Expr expr, int depth, int slot) {
+		expr.depth = depth;
+		expr.slot = slot;
+	}
+	
+	// Top-level declarations are looked up by name, everything else takes the next slot of its frame
+	private int define(Token name, Object value) {
+		if (environment == globals) {
+			globals.define(name.lexeme, value);
+			return -1;
+		}
+		return environment.define(value);
 	}
 	
-	private void execute(Stmt stmt) {
-		stmt.accept(this);
+	// Overridden by ProfilingInterpreter, like evaluate, to time every node
+	Object execute(Stmt stmt) {
+		return stmt.accept(this);
 	}
 	
 	private void checkNumberOperands(Token operator, Object...operands) {
@@ -553,7 +924,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return a.equals(b);
 	}
 	
-	private boolean isTruthy(Object object) {
+	boolean isTruthy(Object object) {
 		if (object == null) return false;
 		if (object instanceof Boolean) return (boolean)object;
 		return true;
@@ -563,7 +934,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		return expr.accept(this);
 	}
 	
-	private String stringify(Object object) {
+	static String stringify(Object object) {
 		if (object == null) return "Null";
 		
 		if (object instanceof Double) {
@@ -0,0 +1,985 @@
+package dymond;
+
+import static dymond.TokenType.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dymond.jit.ClassFile;
+import dymond.jit.Code;
+
+// Second tier above the tree-walker. Functions that are called often and loops that
+// spin long enough are translated straight to JVM bytecode and loaded as hidden classes,
+// so HotSpot can compile them like any other Java method. Anything the translator does
+// not handle stays in the Interpreter.
+class JitCompiler {
+	static final int CALL_THRESHOLD = Integer.getInteger("dymond.jit.callThreshold", 1000);
+	static final int LOOP_THRESHOLD = Integer.getInteger("dymond.jit.loopThreshold", 10000);
+
+	// Returned by compiled code that ran off its end without a return statement
+	static final Object FALLTHROUGH = new Object();
+
+	interface CompiledCode {
+		Object run(Interpreter interpreter, Environment environment);
+	}
+
+	// Per-declaration state, shared by every closure and bound method made from the declaration
+	static final class Tier {
+		int invocations;
+		CompiledCode code;
+		boolean rejected;
+	}
+
+	private static final String OBJECT = "java/lang/Object";
+	private static final String ENVIRONMENT = "dymond/Environment";
+	private static final String INTERPRETER = "dymond/Interpreter";
+	private static final String RUNTIME = "dymond/JitRuntime";
+	private static final String RUN = "(Ldymond/Interpreter;Ldymond/Environment;)Ljava/lang/Object;";
+	private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;Ldymond/Interpreter;Ldymond/Token;)Ljava/lang/Object;";
+	private static final String UNEXPECTED = "dymond/UnexpectedResult";
+
+	private final Interpreter interpreter;
+	private final Map<Stmt.Function, Tier> tiers = new IdentityHashMap<>();
+	// Loops that were compiled, or mapped to null when they could not be
+	private final Map<Stmt, CompiledCode> loops = new IdentityHashMap<>();
+
+	JitCompiler(Interpreter interpreter) {
+		this.interpreter = interpreter;
+	}
+
+	Tier tier(Stmt.Function declaration) {
+		Tier tier = tiers.get(declaration);
+		if (tier == null) {
+			tier = new Tier();
+			tiers.put(declaration, tier);
+		}
+		return tier;
+	}
+
+	void compile(Stmt.Function declaration, Tier tier) {
+		tier.code = define(declaration.body);
+		tier.rejected = tier.code == null;
+	}
+
+	CompiledCode compileLoop(Stmt loop) {
+		if (loops.containsKey(loop)) return loops.get(loop);
+
+		List<Stmt> body = new ArrayList<>();
+		body.add(loop);
+		CompiledCode code = define(body);
+		loops.put(loop, code);
+		return code;
+	}
+
+	private CompiledCode define(List<Stmt> statements) {
+		try {
+			Generator generator = new Generator();
+			byte[] bytes = generator.generate(statements);
+
+			MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClassWithClassData(bytes, generator.constants.toArray(), true);
+			return (CompiledCode)lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+		} catch (Throwable error) {
+			// Unsupported statements, oversized methods and failed class definitions all
+			// leave the code with the Interpreter
+			return null;
+		}
+	}
+
+	private static class Unsupported extends RuntimeException {
+		Unsupported() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static class Loop {
+		final Code.Label next;
+		final Code.Label end;
+		final int savedEnvironment;
+		final boolean isFor;
+
+		Loop(Code.Label next, Code.Label end, int savedEnvironment, boolean isFor) {
+			this.next = next;
+			this.end = end;
+			this.savedEnvironment = savedEnvironment;
+			this.isFor = isFor;
+		}
+	}
+
+	// Emits run(Interpreter, Environment). Local 1 is the interpreter and local 2 always holds
+	// the innermost environment, blocks swap it the way executeBlock swaps Interpreter.environment.
+	//
+	// Nodes the Interpreter has specialized to numbers are compiled to double arithmetic, see
+	// number(). Their guards throw UnexpectedResult, and since the JVM empties the operand stack
+	// on the way into a handler, unboxed code only ever starts with nothing on the stack: operands
+	// wait in double locals, and whatever an enclosing generic expression left is spilled first.
+	private class Generator implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+		private static final int INTERPRETER_LOCAL = 1;
+		private static final int ENVIRONMENT_LOCAL = 2;
+
+		private final String name = "dymond/Compiled";
+		// Every object the code refers to gets a static final field of its own, which HotSpot
+		// treats as a constant, filled in from the class data when the class is initialized
+		private final List<Object> constants = new ArrayList<>();
+		private final List<String> constantTypes = new ArrayList<>();
+		private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+		private final List<Loop> loops = new ArrayList<>();
+		private ClassFile classFile;
+		private Code code;
+
+		byte[] generate(List<Stmt> statements) {
+			classFile = new ClassFile(name, OBJECT, "dymond/JitCompiler$CompiledCode");
+
+			Code init = classFile.method(ClassFile.ACC_PUBLIC, "<init>", "()V");
+			init.aload(0);
+			init.invokespecial(OBJECT, "<init>", "()V");
+			init.returnVoid();
+
+			code = classFile.method(ClassFile.ACC_PUBLIC, "run", RUN);
+			for (Stmt statement : statements) {
+				statement.accept(this);
+			}
+			code.getstatic("dymond/JitCompiler", "FALLTHROUGH", "Ljava/lang/Object;");
+			code.areturn();
+
+			Code clinit = classFile.method(ClassFile.ACC_STATIC, "<clinit>", "()V");
+			clinit.invokestatic("java/lang/invoke/MethodHandles", "lookup", "()Ljava/lang/invoke/MethodHandles$Lookup;");
+			clinit.ldcString("_");
+			clinit.ldcClass("[Ljava/lang/Object;");
+			clinit.invokestatic("java/lang/invoke/MethodHandles", "classData", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;");
+			clinit.checkcast("[Ljava/lang/Object;");
+			for (int i = 0; i < constants.size(); i++) {
+				String descriptor = "L" + constantTypes.get(i) + ";";
+				classFile.field(ClassFile.ACC_STATIC | ClassFile.ACC_FINAL, "c" + i, descriptor);
+				clinit.dup();
+				clinit.iconst(i);
+				clinit.aaload();
+				clinit.checkcast(constantTypes.get(i));
+				clinit.putstatic(name, "c" + i, descriptor);
+			}
+			clinit.pop();
+			clinit.returnVoid();
+
+			return classFile.toByteArray();
+		}
+
+		private void constant(Object value, String type) {
+			Integer index = constantIndices.get(value);
+			if (index == null) {
+				index = constants.size();
+				constants.add(value);
+				constantTypes.add(type);
+				constantIndices.put(value, index);
+			}
+
+			String declared = constantTypes.get(index);
+			code.getstatic(name, "c" + index, "L" + declared + ";");
+			if (!declared.equals(type)) code.checkcast(type);
+		}
+
+		private void token(Token token) {
+			constant(token, "dymond/Token");
+		}
+
+		private void runtime(String method, String descriptor) {
+			code.invokestatic(RUNTIME, method, descriptor);
+		}
+
+		// Conditions are only tested at statement level, with nothing on the stack
+		private void truthy(Expr condition) {
+			if (Specialization.comparesDoubles(condition.state)) {
+				compare((Expr.Binary)condition);
+				return;
+			}
+			condition.accept(this);
+			runtime("isTruthy", "(Ljava/lang/Object;)Z");
+		}
+
+		private void loadInterpreter() {
+			code.aload(INTERPRETER_LOCAL);
+		}
+
+		private void loadEnvironment() {
+			code.aload(ENVIRONMENT_LOCAL);
+		}
+
+		private void pushEnvironment() {
+			code.newObject(ENVIRONMENT);
+			code.dup();
+			loadEnvironment();
+			code.iconst(4);
+			code.invokespecial(ENVIRONMENT, "<init>", "(Ldymond/Environment;I)V");
+			code.astore(ENVIRONMENT_LOCAL);
+		}
+
+		private void popEnvironment() {
+			loadEnvironment();
+			code.getfield(ENVIRONMENT, "enclosing", "Ldymond/Environment;");
+			code.astore(ENVIRONMENT_LOCAL);
+		}
+
+		private void lookUp(Token name, Expr expr) {
+			if (expr.depth >= 0) {
+				loadEnvironment();
+				code.iconst(expr.depth);
+				code.iconst(expr.slot);
+				code.invokevirtual(ENVIRONMENT, "getAt", "(II)Ljava/lang/Object;");
+			} else {
+				loadInterpreter();
+				code.getfield(INTERPRETER, "globals", "Ldymond/Environment;");
+				token(name);
+				code.invokevirtual(ENVIRONMENT, "get", "(Ldymond/Token;)Ljava/lang/Object;");
+			}
+		}
+
+		// Leaves the loop's environment in place and jumps, which is what unwinding executeBlock does
+		private void jumpOut(Loop loop, Code.Label target) {
+			code.aload(loop.savedEnvironment);
+			code.astore(ENVIRONMENT_LOCAL);
+			code.jump(Code.GOTO, target);
+		}
+
+		private void loop(Expr condition, Stmt body, Stmt increment, boolean isFor) {
+			int saved = code.newLocal();
+			loadEnvironment();
+			code.astore(saved);
+
+			Code.Label top = code.newLabel();
+			Code.Label next = code.newLabel();
+			Code.Label end = code.newLabel();
+			Code.Label bodyStart = code.newLabel();
+			Code.Label bodyEnd = code.newLabel();
+			Loop loop = new Loop(next, end, saved, isFor);
+
+			code.mark(top);
+			truthy(condition);
+			code.jump(Code.IFEQ, end);
+
+			loops.add(loop);
+			code.mark(bodyStart);
+			body.accept(this);
+			code.mark(bodyEnd);
+			loops.remove(loops.size() - 1);
+
+			Code.Label after = code.newLabel();
+			code.jump(Code.GOTO, after);
+
+			// A break or next thrown by something the body called still belongs to this loop
+			code.handler(bodyStart, bodyEnd, "dymond/BreakError");
+			code.pop();
+			jumpOut(loop, end);
+			if (isFor) {
+				code.handler(bodyStart, bodyEnd, "dymond/Next");
+				code.pop();
+				jumpOut(loop, next);
+			}
+
+			code.mark(after);
+			code.mark(next);
+			if (increment != null) increment.accept(this);
+			code.jump(Code.GOTO, top);
+			code.mark(end);
+		}
+
+		// Parks what is on the operand stack in locals, every entry of it a reference
+		private int[] spill() {
+			int[] locals = new int[code.depth()];
+			for (int i = locals.length - 1; i >= 0; i--) {
+				locals[i] = code.newLocal();
+				code.astore(locals[i]);
+			}
+			return locals;
+		}
+
+		// Puts the spilled entries back underneath the reference on top
+		private void restore(int[] locals) {
+			if (locals.length == 0) return;
+			int top = code.newLocal();
+			code.astore(top);
+			for (int local : locals) code.aload(local);
+			code.aload(top);
+		}
+
+		// A specialized node where a boxed value is wanted, like Interpreter.boxed
+		private void boxed(Expr expr) {
+			int[] spilled = spill();
+			Code.Label start = code.newLabel();
+			Code.Label end = code.newLabel();
+			Code.Label done = code.newLabel();
+
+			code.mark(start);
+			number(expr);
+			code.mark(end);
+			code.invokestatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;");
+			code.jump(Code.GOTO, done);
+
+			code.handler(start, end, UNEXPECTED);
+			code.getfield(UNEXPECTED, "value", "Ljava/lang/Object;");
+			code.mark(done);
+			restore(spilled);
+		}
+
+		// Leaves the node's value on the stack as a double, the counterpart of evaluateNumber
+		private void number(Expr expr) {
+			switch (expr.state) {
+				case Specialization.ADD_DOUBLES:
+				case Specialization.SUBTRACT_DOUBLES:
+				case Specialization.MULTIPLY_DOUBLES:
+				case Specialization.DIVIDE_DOUBLES:
+				case Specialization.MODULO_DOUBLES:
+					arithmetic((Expr.Binary)expr);
+					return;
+				case Specialization.NEGATE_DOUBLE:
+					negate((Expr.Unary)expr);
+					return;
+				case Specialization.INCREMENT_DOUBLE:
+				case Specialization.DECREMENT_DOUBLE:
+					step((Expr.UnaryAssign)expr);
+					return;
+				case Specialization.ASSIGN_DOUBLE:
+				case Specialization.ADD_ASSIGN_DOUBLES:
+				case Specialization.SUBTRACT_ASSIGN_DOUBLES:
+				case Specialization.MULTIPLY_ASSIGN_DOUBLES:
+				case Specialization.MODULO_ASSIGN_DOUBLES:
+					assignNumber((Expr.Assign)expr);
+					return;
+				case Specialization.LOCAL_FRAME:
+				case Specialization.LOCAL_ENCLOSING:
+				case Specialization.LOCAL_AT:
+					getNumber(expr);
+					return;
+			}
+
+			if (expr instanceof Expr.Grouping) {
+				number(((Expr.Grouping)expr).expression);
+			} else if (expr instanceof Expr.Literal && ((Expr.Literal)expr).value instanceof Double) {
+				code.dconst((Double)((Expr.Literal)expr).value);
+			} else {
+				expr.accept(this);
+				runtime("number", "(Ljava/lang/Object;)D");
+			}
+		}
+
+		private void getNumber(Expr expr) {
+			loadEnvironment();
+			code.iconst(expr.depth);
+			code.iconst(expr.slot);
+			code.invokevirtual(ENVIRONMENT, "getNumberAt", "(II)D");
+		}
+
+		private void assignNumber(int depth, int slot, int value) {
+			loadEnvironment();
+			code.iconst(depth);
+			code.iconst(slot);
+			code.dload(value);
+			code.invokevirtual(ENVIRONMENT, "assignNumberAt", "(IID)V");
+		}
+
+		private void arithmetic(Expr.Binary expr) {
+			Code.Label leftStart = code.newLabel();
+			Code.Label leftEnd = code.newLabel();
+			Code.Label rightStart = code.newLabel();
+			Code.Label rightEnd = code.newLabel();
+			Code.Label done = code.newLabel();
+			int left = code.newDoubleLocal();
+			int right = code.newDoubleLocal();
+
+			code.mark(leftStart);
+			number(expr.left);
+			code.mark(leftEnd);
+			code.dstore(left);
+			code.mark(rightStart);
+			number(expr.right);
+			code.mark(rightEnd);
+			code.dstore(right);
+
+			code.dload(left);
+			code.dload(right);
+			switch (expr.state) {
+				case Specialization.ADD_DOUBLES: code.dadd(); break;
+				case Specialization.SUBTRACT_DOUBLES: code.dsub(); break;
+				case Specialization.MULTIPLY_DOUBLES: code.dmul(); break;
+				case Specialization.DIVIDE_DOUBLES:
+					token(expr.operator);
+					runtime("divide", "(DDLdymond/Token;)D");
+					break;
+				default: code.drem(); break;
+			}
+			code.jump(Code.GOTO, done);
+
+			code.handler(leftStart, leftEnd, UNEXPECTED);
+			loadEnvironment();
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Binary");
+			runtime("arithmeticLeft", "(Ldymond/UnexpectedResult;Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$Binary;)D");
+			code.jump(Code.GOTO, done);
+
+			code.handler(rightStart, rightEnd, UNEXPECTED);
+			code.dload(left);
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Binary");
+			runtime("arithmeticRight", "(Ldymond/UnexpectedResult;DLdymond/Interpreter;Ldymond/Expr$Binary;)D");
+			code.mark(done);
+		}
+
+		// Leaves the outcome as an int, 1 for true
+		private void compare(Expr.Binary expr) {
+			Code.Label leftStart = code.newLabel();
+			Code.Label leftEnd = code.newLabel();
+			Code.Label rightStart = code.newLabel();
+			Code.Label rightEnd = code.newLabel();
+			Code.Label isFalse = code.newLabel();
+			Code.Label done = code.newLabel();
+			int left = code.newDoubleLocal();
+			int right = code.newDoubleLocal();
+
+			code.mark(leftStart);
+			number(expr.left);
+			code.mark(leftEnd);
+			code.dstore(left);
+			code.mark(rightStart);
+			number(expr.right);
+			code.mark(rightEnd);
+			code.dstore(right);
+
+			code.dload(left);
+			switch (expr.state) {
+				// NaN compares false, so it has to land on the side that jumps
+				case Specialization.LESS_DOUBLES:
+					code.dload(right);
+					code.dcmpg();
+					code.jump(Code.IFGE, isFalse);
+					break;
+				case Specialization.LESS_EQUAL_DOUBLES:
+					code.dload(right);
+					code.dcmpg();
+					code.jump(Code.IFGT, isFalse);
+					break;
+				case Specialization.GREATER_DOUBLES:
+					code.dload(right);
+					code.dcmpl();
+					code.jump(Code.IFLE, isFalse);
+					break;
+				case Specialization.GREATER_EQUAL_DOUBLES:
+					code.dload(right);
+					code.dcmpl();
+					code.jump(Code.IFLT, isFalse);
+					break;
+				default:
+					// Equality by bits, like the Interpreter
+					code.invokestatic("java/lang/Double", "doubleToLongBits", "(D)J");
+					code.dload(right);
+					code.invokestatic("java/lang/Double", "doubleToLongBits", "(D)J");
+					code.lcmp();
+					code.jump(expr.state == Specialization.EQUAL_DOUBLES ? Code.IFNE : Code.IFEQ, isFalse);
+					break;
+			}
+			code.iconst(1);
+			code.jump(Code.GOTO, done);
+			code.mark(isFalse);
+			code.iconst(0);
+			code.jump(Code.GOTO, done);
+
+			code.handler(leftStart, leftEnd, UNEXPECTED);
+			loadEnvironment();
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Binary");
+			runtime("compareLeft", "(Ldymond/UnexpectedResult;Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$Binary;)Z");
+			code.jump(Code.GOTO, done);
+
+			code.handler(rightStart, rightEnd, UNEXPECTED);
+			code.dload(left);
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Binary");
+			runtime("compareRight", "(Ldymond/UnexpectedResult;DLdymond/Interpreter;Ldymond/Expr$Binary;)Z");
+			code.mark(done);
+		}
+
+		private void negate(Expr.Unary expr) {
+			Code.Label start = code.newLabel();
+			Code.Label end = code.newLabel();
+			Code.Label done = code.newLabel();
+
+			code.mark(start);
+			number(expr.right);
+			code.mark(end);
+			code.dneg();
+			code.jump(Code.GOTO, done);
+
+			code.handler(start, end, UNEXPECTED);
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Unary");
+			runtime("negate", "(Ldymond/UnexpectedResult;Ldymond/Interpreter;Ldymond/Expr$Unary;)D");
+			code.mark(done);
+		}
+
+		private void step(Expr.UnaryAssign expr) {
+			Code.Label start = code.newLabel();
+			Code.Label end = code.newLabel();
+			Code.Label done = code.newLabel();
+			int value = code.newDoubleLocal();
+
+			code.mark(start);
+			getNumber(expr);
+			code.mark(end);
+			code.dconst(1);
+			if (expr.state == Specialization.INCREMENT_DOUBLE) code.dadd();
+			else code.dsub();
+			code.dstore(value);
+			assignNumber(expr.depth, expr.slot, value);
+			code.dload(value);
+			code.jump(Code.GOTO, done);
+
+			code.handler(start, end, UNEXPECTED);
+			code.pop();
+			loadEnvironment();
+			loadInterpreter();
+			constant(expr, "dymond/Expr$UnaryAssign");
+			runtime("step", "(Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$UnaryAssign;)D");
+			code.mark(done);
+		}
+
+		private void assignNumber(Expr.Assign expr) {
+			int state = expr.state;
+			Code.Label leftStart = code.newLabel();
+			Code.Label leftEnd = code.newLabel();
+			Code.Label valueStart = code.newLabel();
+			Code.Label valueEnd = code.newLabel();
+			Code.Label done = code.newLabel();
+			int left = code.newDoubleLocal();
+			int right = code.newDoubleLocal();
+
+			if (state == Specialization.ASSIGN_DOUBLE) {
+				code.dconst(0);
+			} else {
+				code.mark(leftStart);
+				getNumber(expr);
+				code.mark(leftEnd);
+			}
+			code.dstore(left);
+			code.mark(valueStart);
+			number(expr.value);
+			code.mark(valueEnd);
+			code.dstore(right);
+
+			if (state != Specialization.ASSIGN_DOUBLE) code.dload(left);
+			code.dload(right);
+			switch (state) {
+				case Specialization.ADD_ASSIGN_DOUBLES: code.dadd(); break;
+				case Specialization.SUBTRACT_ASSIGN_DOUBLES: code.dsub(); break;
+				case Specialization.MULTIPLY_ASSIGN_DOUBLES: code.dmul(); break;
+				case Specialization.MODULO_ASSIGN_DOUBLES: code.drem(); break;
+			}
+			code.dstore(right);
+			assignNumber(expr.depth, expr.slot, right);
+			code.dload(right);
+			code.jump(Code.GOTO, done);
+
+			if (state != Specialization.ASSIGN_DOUBLE) {
+				code.handler(leftStart, leftEnd, UNEXPECTED);
+				code.pop();
+				loadEnvironment();
+				loadInterpreter();
+				constant(expr, "dymond/Expr$Assign");
+				runtime("assignVariable", "(Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$Assign;)D");
+				code.jump(Code.GOTO, done);
+			}
+
+			code.handler(valueStart, valueEnd, UNEXPECTED);
+			code.dload(left);
+			code.iconst(state);
+			loadEnvironment();
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Assign");
+			runtime("assignValue", "(Ldymond/UnexpectedResult;DILdymond/Environment;Ldymond/Interpreter;Ldymond/Expr$Assign;)D");
+			code.mark(done);
+		}
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			if (!stmt.frameless) pushEnvironment();
+			for (Stmt statement : stmt.statements) {
+				statement.accept(this);
+			}
+			if (!stmt.frameless) popEnvironment();
+			return null;
+		}
+
+		@Override
+		public Void visitBreakStmt(Stmt.Break stmt) {
+			if (loops.isEmpty()) {
+				code.newObject("dymond/BreakError");
+				code.dup();
+				token(stmt.keyword);
+				code.invokespecial("dymond/BreakError", "<init>", "(Ldymond/Token;)V");
+				code.athrow();
+				return null;
+			}
+
+			Loop loop = loops.get(loops.size() - 1);
+			jumpOut(loop, loop.end);
+			return null;
+		}
+
+		@Override
+		public Void visitNextStmt(Stmt.Next stmt) {
+			// Only a for loop catches next, a while in between lets it through
+			for (int i = loops.size() - 1; i >= 0; i--) {
+				Loop loop = loops.get(i);
+				if (loop.isFor) {
+					jumpOut(loop, loop.next);
+					return null;
+				}
+			}
+
+			code.newObject("dymond/Next");
+			code.dup();
+			token(stmt.keyword);
+			code.invokespecial("dymond/Next", "<init>", "(Ldymond/Token;)V");
+			code.athrow();
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			throw new Unsupported();
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			if (Specialization.producesDouble(stmt.expression.state)) {
+				// The value is thrown away unless this is the prompt, so it stays unboxed
+				Code.Label start = code.newLabel();
+				Code.Label end = code.newLabel();
+				Code.Label done = code.newLabel();
+
+				code.mark(start);
+				number(stmt.expression);
+				code.mark(end);
+				loadInterpreter();
+				runtime("discard", "(DLdymond/Interpreter;)V");
+				code.jump(Code.GOTO, done);
+
+				code.handler(start, end, UNEXPECTED);
+				code.getfield(UNEXPECTED, "value", "Ljava/lang/Object;");
+				loadInterpreter();
+				runtime("statement", "(Ljava/lang/Object;Ldymond/Interpreter;)V");
+				code.mark(done);
+				return null;
+			}
+
+			stmt.expression.accept(this);
+			loadInterpreter();
+			runtime("statement", "(Ljava/lang/Object;Ldymond/Interpreter;)V");
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			throw new Unsupported();
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			Code.Label otherwise = code.newLabel();
+			Code.Label end = code.newLabel();
+
+			truthy(stmt.condition);
+			code.jump(Code.IFEQ, otherwise);
+			stmt.thenBranch.accept(this);
+			code.jump(Code.GOTO, end);
+			code.mark(otherwise);
+			if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+			code.mark(end);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			// A compiled loop returns the value too, the Interpreter hands it on as a return completion
+			if (stmt.value != null) {
+				stmt.value.accept(this);
+			} else {
+				code.aconstNull();
+			}
+			code.areturn();
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			if (stmt.initializer != null && Specialization.producesDouble(stmt.initializer.state)) {
+				Code.Label start = code.newLabel();
+				Code.Label end = code.newLabel();
+				Code.Label done = code.newLabel();
+
+				code.mark(start);
+				number(stmt.initializer);
+				code.mark(end);
+				loadEnvironment();
+				loadInterpreter();
+				token(stmt.name);
+				runtime("defineNumber", "(DLdymond/Environment;Ldymond/Interpreter;Ldymond/Token;)V");
+				code.jump(Code.GOTO, done);
+
+				code.handler(start, end, UNEXPECTED);
+				code.getfield(UNEXPECTED, "value", "Ljava/lang/Object;");
+				loadEnvironment();
+				loadInterpreter();
+				token(stmt.name);
+				runtime("define", "(Ljava/lang/Object;Ldymond/Environment;Ldymond/Interpreter;Ldymond/Token;)V");
+				code.mark(done);
+				return null;
+			}
+
+			if (stmt.initializer != null) {
+				stmt.initializer.accept(this);
+			} else {
+				code.aconstNull();
+			}
+			loadEnvironment();
+			loadInterpreter();
+			token(stmt.name);
+			runtime("define", "(Ljava/lang/Object;Ldymond/Environment;Ldymond/Interpreter;Ldymond/Token;)V");
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			loop(stmt.condition, stmt.body, null, false);
+			return null;
+		}
+
+		@Override
+		public Void visitForStmt(Stmt.For stmt) {
+			loop(stmt.condition, stmt.body, stmt.increment, true);
+			return null;
+		}
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			if (Specialization.producesDouble(expr.state)) {
+				boxed(expr);
+				return null;
+			}
+
+			lookUp(expr.name, expr);
+			expr.value.accept(this);
+			loadEnvironment();
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Assign");
+			runtime("assign", "(Ljava/lang/Object;Ljava/lang/Object;Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$Assign;)Ljava/lang/Object;");
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			if (Specialization.producesDouble(expr.state)) {
+				boxed(expr);
+				return null;
+			}
+			if (Specialization.comparesDoubles(expr.state)) {
+				int[] spilled = spill();
+				compare(expr);
+				code.invokestatic("java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+				restore(spilled);
+				return null;
+			}
+
+			expr.left.accept(this);
+			expr.right.accept(this);
+			loadInterpreter();
+			token(expr.operator);
+
+			switch (expr.operator.type) {
+				case PLUS: runtime("add", BINARY); break;
+				case MINUS: runtime("subtract", BINARY); break;
+				case STAR: runtime("multiply", BINARY); break;
+				case LESS: runtime("less", BINARY); break;
+				case LESS_EQUAL: runtime("lessEqual", BINARY); break;
+				case GREATER: runtime("greater", BINARY); break;
+				case GREATER_EQUAL: runtime("greaterEqual", BINARY); break;
+				default: runtime("binary", BINARY); break;
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			boolean named = false;
+			for (Expr argument : expr.arguments) {
+				if (argument instanceof Expr.Assign) named = true;
+			}
+
+			// obj.method(...) keeps obj on the stack and passes it in as the receiver
+			boolean invoke = !named && expr.callee instanceof Expr.Get;
+			if (invoke) {
+				Expr.Get get = (Expr.Get)expr.callee;
+				get.object.accept(this);
+				code.dup();
+				loadInterpreter();
+				constant(get, "dymond/Expr$Get");
+				runtime("method", "(Ljava/lang/Object;Ldymond/Interpreter;Ldymond/Expr$Get;)Ljava/lang/Object;");
+			} else {
+				expr.callee.accept(this);
+			}
+
+			if (named) {
+				loadEnvironment();
+				loadInterpreter();
+				constant(expr, "dymond/Expr$Call");
+				runtime("callNamed", "(Ljava/lang/Object;Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$Call;)Ljava/lang/Object;");
+				return null;
+			}
+
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Call");
+			runtime("callee", "(Ljava/lang/Object;Ldymond/Interpreter;Ldymond/Expr$Call;)Ljava/lang/Object;");
+
+			code.iconst(expr.arguments.size());
+			code.anewarray(OBJECT);
+			// The index goes on after the argument, so only references are ever under it
+			for (int i = 0; i < expr.arguments.size(); i++) {
+				code.dup();
+				expr.arguments.get(i).accept(this);
+				code.iconst(i);
+				code.swap();
+				code.aastore();
+			}
+
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Call");
+			if (invoke) {
+				runtime("invoke", "(Ljava/lang/Object;Ljava/lang/Object;[Ljava/lang/Object;Ldymond/Interpreter;Ldymond/Expr$Call;)Ljava/lang/Object;");
+			} else {
+				runtime("call", "(Ljava/lang/Object;[Ljava/lang/Object;Ldymond/Interpreter;Ldymond/Expr$Call;)Ljava/lang/Object;");
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			expr.object.accept(this);
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Get");
+			runtime("get", "(Ljava/lang/Object;Ldymond/Interpreter;Ldymond/Expr$Get;)Ljava/lang/Object;");
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			expr.expression.accept(this);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			if (expr.value == null) {
+				code.aconstNull();
+			} else if (expr.value instanceof Boolean) {
+				code.getstatic("java/lang/Boolean", (Boolean)expr.value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+			} else if (expr.value instanceof String) {
+				constant(expr.value, "java/lang/String");
+			} else {
+				constant(expr.value, OBJECT);
+			}
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			Code.Label end = code.newLabel();
+
+			expr.left.accept(this);
+			code.dup();
+			runtime("isTruthy", "(Ljava/lang/Object;)Z");
+			code.jump(expr.operator.type == OR ? Code.IFNE : Code.IFEQ, end);
+			code.pop();
+			expr.right.accept(this);
+			code.mark(end);
+			return null;
+		}
+
+		@Override
+		public Void visitSubscriptExpr(Expr.Subscript expr) {
+			expr.left.accept(this);
+			expr.subNum.accept(this);
+			loadInterpreter();
+			token(expr.operator);
+			runtime("subscript", BINARY);
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			expr.object.accept(this);
+			token(expr.name);
+			runtime("instance", "(Ljava/lang/Object;Ldymond/Token;)Ljava/lang/Object;");
+			expr.value.accept(this);
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Set");
+			runtime("set", "(Ljava/lang/Object;Ljava/lang/Object;Ldymond/Interpreter;Ldymond/Expr$Set;)Ljava/lang/Object;");
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			loadEnvironment();
+			loadInterpreter();
+			constant(expr, "dymond/Expr$Super");
+			runtime("getSuper", "(Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$Super;)Ljava/lang/Object;");
+			return null;
+		}
+
+		@Override
+		public Void visitTernaryExpr(Expr.Ternary expr) {
+			expr.right.accept(this);
+			expr.left.accept(this);
+			expr.condition.accept(this);
+			runtime("select", "(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;");
+			return null;
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			lookUp(expr.keyword, expr);
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			if (expr.state == Specialization.NEGATE_DOUBLE) {
+				boxed(expr);
+				return null;
+			}
+
+			expr.right.accept(this);
+			token(expr.operator);
+			runtime("unary", "(Ljava/lang/Object;Ldymond/Token;)Ljava/lang/Object;");
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryAssignExpr(Expr.UnaryAssign expr) {
+			if (Specialization.producesDouble(expr.state)) {
+				boxed(expr);
+				return null;
+			}
+
+			loadEnvironment();
+			loadInterpreter();
+			constant(expr, "dymond/Expr$UnaryAssign");
+			runtime("unaryAssign", "(Ldymond/Environment;Ldymond/Interpreter;Ldymond/Expr$UnaryAssign;)Ljava/lang/Object;");
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			lookUp(expr.name, expr);
+			return null;
+		}
+	}
+}
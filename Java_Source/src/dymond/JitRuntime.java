@@ -0,0 +1,262 @@
+package dymond;
+
+import static dymond.TokenType.*;
+
+// Helpers called from compiled code. Each one does what the matching visit method in
+// the Interpreter does once its operands have been evaluated, numbers take the short path.
+final class JitRuntime {
+	private JitRuntime() {}
+
+	static boolean isTruthy(Object object) {
+		if (object == null) return false;
+		if (object instanceof Boolean) return (boolean)object;
+		return true;
+	}
+
+	static Object add(Object left, Object right, Interpreter interpreter, Token operator) {
+		if (left instanceof Double && right instanceof Double) return (double)left + (double)right;
+		return interpreter.binary(operator, left, right);
+	}
+
+	static Object subtract(Object left, Object right, Interpreter interpreter, Token operator) {
+		if (left instanceof Double && right instanceof Double) return (double)left - (double)right;
+		return interpreter.binary(operator, left, right);
+	}
+
+	static Object multiply(Object left, Object right, Interpreter interpreter, Token operator) {
+		if (left instanceof Double && right instanceof Double) return (double)left * (double)right;
+		return interpreter.binary(operator, left, right);
+	}
+
+	static Object less(Object left, Object right, Interpreter interpreter, Token operator) {
+		if (left instanceof Double && right instanceof Double) return (double)left < (double)right;
+		return interpreter.binary(operator, left, right);
+	}
+
+	static Object lessEqual(Object left, Object right, Interpreter interpreter, Token operator) {
+		if (left instanceof Double && right instanceof Double) return (double)left <= (double)right;
+		return interpreter.binary(operator, left, right);
+	}
+
+	static Object greater(Object left, Object right, Interpreter interpreter, Token operator) {
+		if (left instanceof Double && right instanceof Double) return (double)left > (double)right;
+		return interpreter.binary(operator, left, right);
+	}
+
+	static Object greaterEqual(Object left, Object right, Interpreter interpreter, Token operator) {
+		if (left instanceof Double && right instanceof Double) return (double)left >= (double)right;
+		return interpreter.binary(operator, left, right);
+	}
+
+	static Object binary(Object left, Object right, Interpreter interpreter, Token operator) {
+		return interpreter.binary(operator, left, right);
+	}
+
+	// Nodes that specialized to numbers are compiled to double arithmetic. A guard that fails
+	// throws UnexpectedResult like evaluateNumber does, and the handler around the operand ends
+	// up in one of the methods below, which carry on the way the Interpreter does in its place.
+
+	static double number(Object value) {
+		if (value instanceof Double) return (double)value;
+		throw new UnexpectedResult(value);
+	}
+
+	static double divide(double left, double right, Token operator) {
+		if (right == 0) throw new RuntimeError(operator, "Division by zero error.");
+		return left / right;
+	}
+
+	static double arithmeticLeft(UnexpectedResult result, Environment environment, Interpreter interpreter, Expr.Binary expr) {
+		expr.state = Specialization.GENERIC;
+		return number(interpreter.binary(expr.operator, result.value, evaluate(expr.right, environment, interpreter)));
+	}
+
+	static double arithmeticRight(UnexpectedResult result, double left, Interpreter interpreter, Expr.Binary expr) {
+		expr.state = Specialization.GENERIC;
+		return number(interpreter.binary(expr.operator, left, result.value));
+	}
+
+	static boolean compareLeft(UnexpectedResult result, Environment environment, Interpreter interpreter, Expr.Binary expr) {
+		expr.state = Specialization.GENERIC;
+		return isTruthy(interpreter.binary(expr.operator, result.value, evaluate(expr.right, environment, interpreter)));
+	}
+
+	static boolean compareRight(UnexpectedResult result, double left, Interpreter interpreter, Expr.Binary expr) {
+		expr.state = Specialization.GENERIC;
+		return isTruthy(interpreter.binary(expr.operator, left, result.value));
+	}
+
+	static double negate(UnexpectedResult result, Interpreter interpreter, Expr.Unary expr) {
+		expr.state = Specialization.GENERIC;
+		return number(interpreter.unary(expr.operator, result.value));
+	}
+
+	static double step(Environment environment, Interpreter interpreter, Expr.UnaryAssign expr) {
+		expr.state = Specialization.GENERIC;
+		return number(unaryAssign(environment, interpreter, expr));
+	}
+
+	// The variable a compound assignment reads was not a number
+	static double assignVariable(Environment environment, Interpreter interpreter, Expr.Assign expr) {
+		expr.state = Specialization.GENERIC;
+		return number(evaluate(expr, environment, interpreter));
+	}
+
+	// The value being assigned was not a number, state is what the node was compiled as
+	static double assignValue(UnexpectedResult result, double left, int state, Environment environment, Interpreter interpreter, Expr.Assign expr) {
+		expr.state = Specialization.GENERIC;
+		Object value = state == Specialization.ASSIGN_DOUBLE ? result.value : interpreter.compound(expr.operator, left, result.value);
+		environment.assignAt(expr.depth, expr.slot, value);
+		return number(value);
+	}
+
+	static void discard(double value, Interpreter interpreter) {
+		if (interpreter.repl) Console.println(Interpreter.stringify(value));
+	}
+
+	static void defineNumber(double value, Environment environment, Interpreter interpreter, Token name) {
+		if (environment == interpreter.globals) {
+			environment.define(name.lexeme, value);
+		} else {
+			environment.defineNumber(value);
+		}
+	}
+
+	// Finishes a node in the Interpreter, in the frame the compiled code is running in
+	private static Object evaluate(Expr expr, Environment environment, Interpreter interpreter) {
+		Environment previous = interpreter.environment;
+		try {
+			interpreter.environment = environment;
+			return interpreter.evaluate(expr);
+		} finally {
+			interpreter.environment = previous;
+		}
+	}
+
+	static Object unary(Object right, Token operator) {
+		switch (operator.type) {
+			case MINUS:
+				if (!(right instanceof Double)) throw new RuntimeError(operator, "Operand must be a number.");
+				return -(double)right;
+			case BANG:
+				return !isTruthy(right);
+		}
+
+		return null;
+	}
+
+	static Object select(Object right, Object left, Object condition) {
+		return isTruthy(condition) ? left : right;
+	}
+
+	static void define(Object value, Environment environment, Interpreter interpreter, Token name) {
+		if (environment == interpreter.globals) {
+			environment.define(name.lexeme, value);
+		} else {
+			environment.define(value);
+		}
+	}
+
+	static void statement(Object value, Interpreter interpreter) {
+		if (interpreter.repl) Console.println(Interpreter.stringify(value));
+	}
+
+	static Object assign(Object left, Object right, Environment environment, Interpreter interpreter, Expr.Assign expr) {
+		if (left == null && expr.operator.type != EQUAL) {
+			throw new RuntimeError(expr.name, "Undefined variable '" + expr.name.lexeme + "'.");
+		}
+
+		Object value = interpreter.compound(expr.operator, left, right);
+		if (expr.depth >= 0) {
+			environment.assignAt(expr.depth, expr.slot, value);
+		} else {
+			interpreter.globals.assign(expr.name, value);
+		}
+		return value;
+	}
+
+	static Object unaryAssign(Environment environment, Interpreter interpreter, Expr.UnaryAssign expr) {
+		Object value = expr.depth >= 0 ? environment.getAt(expr.depth, expr.slot) : interpreter.globals.get(expr.name);
+
+		switch (expr.operator.type) {
+			case PLUS_PLUS:
+				if (!(value instanceof Double)) throw new RuntimeError(expr.operator, "Operand must be a number.");
+				value = (double)value + 1;
+				break;
+			case MINUS_MINUS:
+				if (!(value instanceof Double)) throw new RuntimeError(expr.operator, "Operand must be a number.");
+				value = (double)value - 1;
+				break;
+		}
+
+		if (expr.depth >= 0) {
+			environment.assignAt(expr.depth, expr.slot, value);
+		} else {
+			interpreter.globals.assign(expr.name, value);
+		}
+		return value;
+	}
+
+	static Object subscript(Object left, Object right, Interpreter interpreter, Token operator) {
+		return interpreter.subscript(operator, left, right);
+	}
+
+	static Object get(Object object, Interpreter interpreter, Expr.Get expr) {
+		return interpreter.get(object, expr);
+	}
+
+	static Object instance(Object object, Token name) {
+		if (!(object instanceof DymondInstance)) {
+			throw new RuntimeError(name, "Only instances have fields.");
+		}
+		return object;
+	}
+
+	static Object set(Object object, Object right, Interpreter interpreter, Expr.Set expr) {
+		return interpreter.set((DymondInstance)object, right, expr);
+	}
+
+	static Object getSuper(Environment environment, Interpreter interpreter, Expr.Super expr) {
+		return interpreter.getSuper(environment, expr);
+	}
+
+	// Checked before the arguments are evaluated, like the Interpreter does
+	static Object callee(Object callee, Interpreter interpreter, Expr.Call expr) {
+		interpreter.callable(callee, expr.arguments.size(), expr.paren);
+		return callee;
+	}
+
+	static Object call(Object callee, Object[] arguments, Interpreter interpreter, Expr.Call expr) {
+		if (callee instanceof DymondFunction) {
+			return ((DymondFunction)callee).call(interpreter, arguments, expr);
+		}
+		if (callee instanceof DymondClass) {
+			return ((DymondClass)callee).call(interpreter, arguments, expr);
+		}
+		return ((NativeFunction)callee).callN(arguments, expr.paren);
+	}
+
+	static Object method(Object object, Interpreter interpreter, Expr.Get expr) {
+		return interpreter.method(object, expr);
+	}
+	
+	// A method found by method() takes the object it was looked up on as its receiver
+	static Object invoke(Object object, Object callee, Object[] arguments, Interpreter interpreter, Expr.Call expr) {
+		if (callee instanceof DymondFunction && ((DymondFunction)callee).needsReceiver()) {
+			return ((DymondFunction)callee).call(interpreter, (DymondInstance)object, arguments, expr);
+		}
+		return call(callee, arguments, interpreter, expr);
+	}
+
+	// Named arguments are assignments the callee evaluates itself, so they need the caller's frame
+	static Object callNamed(Object callee, Environment environment, Interpreter interpreter, Expr.Call expr) {
+		DymondCallable function = interpreter.callable(callee, expr.arguments.size(), expr.paren);
+		Environment previous = interpreter.environment;
+		try {
+			interpreter.environment = environment;
+			return interpreter.call(callee, function, expr);
+		} finally {
+			interpreter.environment = previous;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package dymond;
+
+import java.util.Arrays;
+
+// Where each line of a source starts. Tokens keep a reference to it instead of a copy of
+// their line, which is only cut out of the source when an error has to show it.
+public final class LineTable {
+	private final Source source;
+	private int[] starts = new int[64];
+	private int count = 1;
+	// Set for a source that was never scanned, its lines are found the first time one is asked for
+	private boolean unscanned = false;
+	
+	LineTable(Source source) {
+		this.source = source;
+	}
+	
+	static LineTable unscanned(Source source) {
+		LineTable lines = new LineTable(source);
+		lines.unscanned = true;
+		return lines;
+	}
+	
+	// Called by the Scanner with the offset just past each newline, in order
+	void add(int offset) {
+		if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+		starts[count++] = offset;
+	}
+	
+	int start(int line) {
+		return starts[line - 1];
+	}
+	
+	public String lineText(int line) {
+		if (unscanned) {
+			unscanned = false;
+			for (int i = 0; source.has(i); i++) {
+				if (source.charAt(i) == '\n') add(i + 1);
+			}
+		}
+		if (line < 1 || line > count) return "";
+		int start = starts[line - 1];
+		return source.text(start, source.lineEnd(start));
+	}
+}
@@ -0,0 +1,106 @@
+package dymond;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+// A function built into the language. Its body takes its arguments as plain parameters,
+// so calling one evaluates them straight into the call and allocates nothing.
+public final class NativeFunction implements DymondCallable {
+	interface Body0 {
+		Object call(Token paren);
+	}
+
+	interface Body1 {
+		Object call(Object argument, Token paren);
+	}
+
+	interface Body2 {
+		Object call(Object first, Object second, Token paren);
+	}
+
+	public final String name;
+	// Read by DymondRuntime, only counted once it is registered
+	final LongAdder calls = new LongAdder();
+	private final int arity;
+	private final Body0 body0;
+	private final Body1 body1;
+	private final Body2 body2;
+
+	NativeFunction(String name, Body0 body) {
+		this(name, 0, body, null, null);
+	}
+
+	NativeFunction(String name, Body1 body) {
+		this(name, 1, null, body, null);
+	}
+
+	NativeFunction(String name, Body2 body) {
+		this(name, 2, null, null, body);
+	}
+
+	private NativeFunction(String name, int arity, Body0 body0, Body1 body1, Body2 body2) {
+		this.name = name;
+		this.arity = arity;
+		this.body0 = body0;
+		this.body1 = body1;
+		this.body2 = body2;
+	}
+
+	Object call0(Token paren) {
+		count();
+		return body0.call(paren);
+	}
+
+	Object call1(Object argument, Token paren) {
+		count();
+		return body1.call(argument, paren);
+	}
+
+	Object call2(Object first, Object second, Token paren) {
+		count();
+		return body2.call(first, second, paren);
+	}
+
+	private void count() {
+		if (DymondRuntime.active != null) calls.increment();
+	}
+
+	// Arguments that were already evaluated, which is how compiled code and the VM call
+	public Object callN(Object[] arguments, Token paren) {
+		switch (arity) {
+			case 0: return call0(paren);
+			case 1: return call1(arguments[0], paren);
+			default: return call2(arguments[0], arguments[1], paren);
+		}
+	}
+
+	// The arity was checked before the call, so the argument count always matches the body
+	@Override
+	public Object call(Interpreter interpreter, List<Expr> arguments, Expr.Call expr) {
+		switch (arity) {
+			case 0:
+				return call0(expr.paren);
+			case 1:
+				return call1(interpreter.evaluate(arguments.get(0)), expr.paren);
+			default:
+				Object first = interpreter.evaluate(arguments.get(0));
+				Object second = interpreter.evaluate(arguments.get(1));
+				return call2(first, second, expr.paren);
+		}
+	}
+
+	@Override
+	public int minArity() {
+		return arity;
+	}
+
+	@Override
+	public int maxArity() {
+		return arity;
+	}
+
+	@Override
+	public String toString() {
+		return "<native fn>";
+	}
+}
@@ -0,0 +1,130 @@
+package dymond;
+
+import java.util.Random;
+import java.util.Set;
+
+// Every native function, defined into the globals by Environment.defineNativeFunctions
+// and by the VM, so both engines share one copy of each
+public final class Natives {
+	public static final NativeFunction[] TABLE = {
+		new NativeFunction("clock", Natives::clock),
+		new NativeFunction("print", Natives::print),
+		new NativeFunction("toString", Natives::numberToString),
+		new NativeFunction("input", Natives::input),
+		new NativeFunction("toNumber", Natives::toNumber),
+		new NativeFunction("isNumber", Natives::isNumber),
+		new NativeFunction("sqrt", Natives::sqrt),
+		new NativeFunction("randomInt", Natives::randomInt),
+		new NativeFunction("typeof", Natives::typeof),
+		new NativeFunction("len", Natives::len),
+	};
+
+	// Natives that give the same answer for the same arguments and can neither fail nor report an
+	// error, so the Optimizer may call them less often than the program does. sqrt is not one,
+	// it reports an error on every call with something that is not a number.
+	static final Set<String> PURE = Set.of("len", "isNumber");
+
+	private Natives() {}
+
+	private static Object clock(Token paren) {
+		return (double)System.currentTimeMillis() / 1000.0;
+	}
+
+	private static Object print(Object text, Token paren) {
+		Console.println(Interpreter.stringify(text));
+		return null;
+	}
+
+	private static Object numberToString(Object obj, Token paren) {
+		if(!(obj instanceof Double)) {
+			Dymond.error(paren, "toString(double) only applicable for type number.");
+			return null;
+		}
+
+		return obj.toString();
+	}
+
+	private static Object input(Object text, Token paren) {
+		if(!(text instanceof String)) {
+			Dymond.error(paren, "input(String) is only applicable for type string.");
+			return null;
+		}
+
+		Console.print((String)text);
+		return Console.readLine();
+	}
+
+	private static Object toNumber(Object text, Token paren) {
+		if (!(text instanceof String)) {
+			Dymond.error(paren, "toNumber(String) is only applicable for type string.");
+			return null;
+		}
+
+		if (!(isNumeric((String)text))) {
+			Dymond.error(paren, "toNumber(String) requires that the parameter is a number.");
+			return null;
+		}
+
+		return Double.parseDouble((String)text);
+	}
+
+	private static Object isNumber(Object text, Token paren) {
+		if (!(text instanceof String)) {
+			return false;
+		}
+
+		return isNumeric((String)text);
+	}
+
+	private static Object sqrt(Object number, Token paren) {
+		if (!(number instanceof Double)) {
+			Dymond.error(paren, "sqrt(Double) is only applicable for type double");
+			return null;
+		}
+
+		return Math.sqrt((Double)number);
+	}
+
+	private static Object randomInt(Object numOne, Object numTwo, Token paren) {
+		if (!(numOne instanceof Double && numTwo instanceof Double)) {
+			Dymond.error(paren, "randomInt(Double, Double) is only applicable for types of double");
+			return null;
+		}
+
+		int beginning = ((Double)numOne).intValue();
+		int end = ((Double)numTwo).intValue();
+
+		if(end <= beginning) {
+			Dymond.error(paren, "randomInt(Double, Double) does not support negative ranges or ranges equal to 0");
+			return null;
+		}
+
+		int range = end - beginning;
+		Random rand = new Random();
+		double n = rand.nextInt(range + 1) + beginning;
+
+		return n;
+	}
+
+	private static Object typeof(Object obj, Token paren) {
+		return obj.getClass();
+	}
+
+	private static Object len(Object obj, Token paren) {
+		if (obj instanceof String) {
+			double len = ((String)obj).length();
+			return len;
+		}
+
+		return 0;
+	}
+
+	private static boolean isNumeric(String str) {
+		try {
+			Double.parseDouble(str);
+		} catch (NumberFormatException | NullPointerException nfe) {
+			return false;
+		}
+		return true;
+	}
+}
@@ -4,6 +4,7 @@ public class Next extends RuntimeException {
 	public final Token token;
 	public Next(Token token) {
 		super(null, null, false, false);
+		DymondRuntime.controlFlowException();
 		this.token = token;
 	}
 }
@@ -0,0 +1,504 @@
+package dymond;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Rewrites a resolved program before it runs: operators whose operands are all literals are
+// computed once here, groupings disappear, and branches a constant condition can never take
+// are dropped. Anything that would raise an error is left for the program to raise when it
+// gets there. Nodes that change are rebuilt with the slots the Resolver gave the originals.
+//
+// What the Resolver found out about loops and locals is used to take invariant work out of
+// loop conditions and to drop stores to locals that are never read.
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+	private final Interpreter interpreter;
+	private final Resolver resolver;
+	private int temporaries = 0;
+	// The statement being optimized when it sits in a list that has a frame of its own, the
+	// only place a loop can have temporaries declared in front of it
+	private Stmt listed = null;
+	// Declarations for the list to put in front of the loop just optimized
+	private List<Stmt> hoisted = null;
+
+	public Optimizer(Interpreter interpreter, Resolver resolver) {
+		this.interpreter = interpreter;
+		this.resolver = resolver;
+	}
+
+	public List<Stmt> optimize(List<Stmt> program) {
+		List<Stmt> optimized = optimize(program, true);
+		// Temporaries need slots, and the slots after them move up
+		if (temporaries > 0) resolver.resolve(optimized);
+		return optimized;
+	}
+
+	private List<Stmt> optimize(List<Stmt> statements, boolean framed) {
+		List<Stmt> optimized = null;
+		for (int i = 0; i < statements.size(); i++) {
+			Stmt statement = statements.get(i);
+			listed = framed ? statement : null;
+			Stmt result = optimize(statement);
+			if ((result != statement || hoisted != null) && optimized == null) {
+				optimized = new ArrayList<>(statements.subList(0, i));
+			}
+			if (hoisted != null) {
+				optimized.addAll(hoisted);
+				hoisted = null;
+			}
+			if (optimized != null && result != null) optimized.add(result);
+		}
+		return optimized == null ? statements : optimized;
+	}
+
+	// Null when the statement can never do anything
+	private Stmt optimize(Stmt stmt) {
+		return stmt.accept(this);
+	}
+
+	// For the places that need a statement, a loop body or an if branch
+	private Stmt statement(Stmt stmt) {
+		Stmt result = optimize(stmt);
+		if (result != null) return result;
+
+		Stmt empty = new Stmt.Block(Collections.emptyList());
+		empty.frameless = true;
+		return empty;
+	}
+
+	private Expr optimize(Expr expr) {
+		return expr.accept(this);
+	}
+
+	private List<Expr> optimizeAll(List<Expr> exprs) {
+		List<Expr> optimized = null;
+		for (int i = 0; i < exprs.size(); i++) {
+			Expr result = optimize(exprs.get(i));
+			if (result != exprs.get(i) && optimized == null) optimized = new ArrayList<>(exprs);
+			if (optimized != null) optimized.set(i, result);
+		}
+		return optimized == null ? exprs : optimized;
+	}
+
+	private static <T extends Expr> T resolved(T expr, Expr original) {
+		expr.depth = original.depth;
+		expr.slot = original.slot;
+		return expr;
+	}
+
+	private static boolean isLiteral(Expr expr) {
+		return expr instanceof Expr.Literal;
+	}
+
+	private static Object value(Expr expr) {
+		return ((Expr.Literal)expr).value;
+	}
+
+	// A branch that is a bare declaration defines into the enclosing scope, the Resolver has
+	// already given it a slot there, so it stays whether it can run or not
+	private static boolean declares(Stmt stmt) {
+		return stmt instanceof Stmt.Var || stmt instanceof Stmt.Function || stmt instanceof Stmt.Class;
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		if (expr.value == null) return expr;
+		Expr value = optimize(expr.value);
+		// The value of an assignment is the value assigned, which is all that is left of one
+		// to a local nothing reads
+		if (resolver.isDeadStore(expr)) return value;
+		if (value == expr.value) return expr;
+		return resolved(new Expr.Assign(expr.name, value, expr.operator), expr);
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+
+		if (isLiteral(left) && isLiteral(right)) {
+			try {
+				return new Expr.Literal(interpreter.binary(expr.operator, value(left), value(right)));
+			} catch (RuntimeException error) {
+				// Division by zero and the like still happen at runtime, on this operator
+			}
+		}
+
+		if (left == expr.left && right == expr.right) return expr;
+		return new Expr.Binary(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitCallExpr(Expr.Call expr) {
+		Expr callee = optimize(expr.callee);
+		List<Expr> arguments = optimizeAll(expr.arguments);
+		if (callee == expr.callee && arguments == expr.arguments) return expr;
+		return new Expr.Call(callee, expr.paren, arguments);
+	}
+
+	@Override
+	public Expr visitGetExpr(Expr.Get expr) {
+		Expr object = optimize(expr.object);
+		if (object == expr.object) return expr;
+		return new Expr.Get(object, expr.name);
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		return optimize(expr.expression);
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+
+		// Like the interpreter, the result is whichever operand decided it
+		if (isLiteral(left)) {
+			boolean truthy = interpreter.isTruthy(value(left));
+			if (expr.operator.type == TokenType.OR) return truthy ? left : right;
+			return truthy ? right : left;
+		}
+
+		if (left == expr.left && right == expr.right) return expr;
+		return new Expr.Logical(left, expr.operator, right);
+	}
+
+	@Override
+	public Expr visitSubscriptExpr(Expr.Subscript expr) {
+		Expr left = optimize(expr.left);
+		Expr subNum = optimize(expr.subNum);
+		if (left == expr.left && subNum == expr.subNum) return expr;
+		return new Expr.Subscript(left, subNum, expr.operator);
+	}
+
+	@Override
+	public Expr visitSetExpr(Expr.Set expr) {
+		Expr object = optimize(expr.object);
+		Expr value = optimize(expr.value);
+		if (object == expr.object && value == expr.value) return expr;
+		return new Expr.Set(object, expr.name, value, expr.equals);
+	}
+
+	@Override
+	public Expr visitSuperExpr(Expr.Super expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitTernaryExpr(Expr.Ternary expr) {
+		Expr left = optimize(expr.left);
+		Expr right = optimize(expr.right);
+		Expr condition = optimize(expr.condition);
+
+		// Both branches are evaluated before the condition, so the one not taken can only go
+		// when evaluating it does nothing
+		if (isLiteral(condition)) {
+			boolean truthy = interpreter.isTruthy(value(condition));
+			if (truthy && isLiteral(right)) return left;
+			if (!truthy && isLiteral(left)) return right;
+		}
+
+		if (left == expr.left && right == expr.right && condition == expr.condition) return expr;
+		return new Expr.Ternary(left, right, condition);
+	}
+
+	@Override
+	public Expr visitThisExpr(Expr.This expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr right = optimize(expr.right);
+
+		if (isLiteral(right)) {
+			try {
+				return new Expr.Literal(interpreter.unary(expr.operator, value(right)));
+			} catch (RuntimeError error) {
+				// Negating something that is not a number is reported at runtime
+			}
+		}
+
+		if (right == expr.right) return expr;
+		return new Expr.Unary(expr.operator, right);
+	}
+
+	@Override
+	public Expr visitUnaryAssignExpr(Expr.UnaryAssign expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitVariableExpr(Expr.Variable expr) {
+		return expr;
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		List<Stmt> statements = optimize(stmt.statements, !stmt.frameless);
+		if (statements == stmt.statements) return stmt;
+
+		Stmt.Block block = new Stmt.Block(statements);
+		block.frameless = stmt.frameless;
+		return block;
+	}
+
+	@Override
+	public Stmt visitBreakStmt(Stmt.Break stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Stmt visitClassStmt(Stmt.Class stmt) {
+		List<Stmt.Function> methods = functions(stmt.methods);
+		List<Stmt.Function> staticMethods = functions(stmt.staticMethods);
+		if (methods == stmt.methods && staticMethods == stmt.staticMethods) return stmt;
+		return new Stmt.Class(stmt.name, methods, staticMethods, stmt.superclass);
+	}
+
+	private List<Stmt.Function> functions(List<Stmt.Function> functions) {
+		List<Stmt.Function> optimized = null;
+		for (int i = 0; i < functions.size(); i++) {
+			Stmt result = optimize(functions.get(i));
+			if (result != functions.get(i) && optimized == null) optimized = new ArrayList<>(functions);
+			if (optimized != null) optimized.set(i, (Stmt.Function)result);
+		}
+		return optimized == null ? functions : optimized;
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		Expr expression = optimize(stmt.expression);
+		if (expression == stmt.expression) return stmt;
+		return new Stmt.Expression(expression);
+	}
+
+	@Override
+	public Stmt visitFunctionStmt(Stmt.Function stmt) {
+		List<Expr.Assign> parameters = null;
+		for (int i = 0; i < stmt.parameters.size(); i++) {
+			Expr result = optimize(stmt.parameters.get(i));
+			if (result != stmt.parameters.get(i) && parameters == null) parameters = new ArrayList<>(stmt.parameters);
+			if (parameters != null) parameters.set(i, (Expr.Assign)result);
+		}
+		if (parameters == null) parameters = stmt.parameters;
+
+		List<Stmt> body = optimize(stmt.body, true);
+		if (parameters == stmt.parameters && body == stmt.body) return stmt;
+		return new Stmt.Function(stmt.name, parameters, body);
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Expr condition = optimize(stmt.condition);
+
+		if (isLiteral(condition) && !declares(stmt.thenBranch)
+				&& (stmt.elseBranch == null || !declares(stmt.elseBranch))) {
+			if (interpreter.isTruthy(value(condition))) return optimize(stmt.thenBranch);
+			if (stmt.elseBranch == null) return null;
+			return optimize(stmt.elseBranch);
+		}
+
+		Stmt thenBranch = statement(stmt.thenBranch);
+		Stmt elseBranch = stmt.elseBranch == null ? null : statement(stmt.elseBranch);
+		if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) return stmt;
+		return new Stmt.If(condition, thenBranch, elseBranch);
+	}
+
+	@Override
+	public Stmt visitNextStmt(Stmt.Next stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Stmt visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.value == null) return stmt;
+		Expr value = optimize(stmt.value);
+		if (value == stmt.value) return stmt;
+		return new Stmt.Return(stmt.keyword, value);
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		if (stmt.initializer == null) return stmt;
+		Expr initializer = optimize(stmt.initializer);
+		if (initializer == stmt.initializer) return stmt;
+		return new Stmt.Var(stmt.name, initializer);
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		boolean hoisting = stmt == listed;
+		Expr condition = optimize(stmt.condition);
+		if (isLiteral(condition) && !interpreter.isTruthy(value(condition)) && !declares(stmt.body)) return null;
+
+		Stmt body = statement(stmt.body);
+		if (hoisting) condition = hoist(stmt, condition);
+		if (condition == stmt.condition && body == stmt.body) return stmt;
+		return new Stmt.While(condition, body);
+	}
+
+	@Override
+	public Stmt visitForStmt(Stmt.For stmt) {
+		boolean hoisting = stmt == listed;
+		Expr condition = optimize(stmt.condition);
+		if (isLiteral(condition) && !interpreter.isTruthy(value(condition)) && !declares(stmt.body)) return null;
+
+		Stmt body = statement(stmt.body);
+		Stmt increment = stmt.increment == null ? null : statement(stmt.increment);
+		if (hoisting) condition = hoist(stmt, condition);
+		if (condition == stmt.condition && body == stmt.body && increment == stmt.increment) return stmt;
+		return new Stmt.For(condition, body, increment);
+	}
+
+	// Moves what a loop condition computes the same way every time into temporaries declared
+	// just before the loop. Only the condition is looked at, it is the one part of a loop that
+	// always runs, and in it only what is evaluated before anything else that could fail or
+	// have an effect. Whatever the hoisted code does then still happens first, exactly once
+	// where it used to happen on every test. A loop that calls anything but a pure native could
+	// change anything, so nothing is taken out of it.
+	private Expr hoist(Stmt stmt, Expr condition) {
+		Resolver.Loop loop = resolver.loop(stmt);
+		if (loop == null || loop.opaque) return condition;
+		for (String name : loop.calls) {
+			if (!isPureNative(name)) return condition;
+		}
+
+		Hoisting hoisting = new Hoisting(loop);
+		Expr result = hoisting.hoist(condition, true);
+		if (!hoisting.declarations.isEmpty()) hoisted = hoisting.declarations;
+		return result;
+	}
+
+	private boolean isPureNative(String name) {
+		if (resolver.writesGlobal(name)) return false;
+		Object value = interpreter.globals.lookup(name);
+		return value instanceof NativeFunction && Natives.PURE.contains(((NativeFunction)value).name);
+	}
+
+	private boolean isPureCall(Expr expr) {
+		if (!(expr instanceof Expr.Call)) return false;
+		Expr.Call call = (Expr.Call)expr;
+		if (!(call.callee instanceof Expr.Variable) || call.callee.depth >= 0) return false;
+
+		String name = ((Expr.Variable)call.callee).name.lexeme;
+		if (!isPureNative(name)) return false;
+		if (((NativeFunction)interpreter.globals.lookup(name)).minArity() != call.arguments.size()) return false;
+		for (Expr argument : call.arguments) {
+			if (argument instanceof Expr.Assign) return false;
+		}
+		return true;
+	}
+
+	// Evaluating it can neither fail nor do anything
+	private boolean isHarmless(Expr expr) {
+		if (expr instanceof Expr.Literal || expr instanceof Expr.This) return true;
+		if (expr instanceof Expr.Variable) return expr.depth >= 0;
+		if (isPureCall(expr)) {
+			for (Expr argument : ((Expr.Call)expr).arguments) {
+				if (!isHarmless(argument)) return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	private final class Hoisting {
+		private final Resolver.Loop loop;
+		final List<Stmt> declarations = new ArrayList<>();
+		// Nothing the condition evaluated so far could fail or have an effect
+		private boolean first = true;
+
+		Hoisting(Resolver.Loop loop) {
+			this.loop = loop;
+		}
+
+		// Follows the interpreter's order of evaluation. always is false on the right of and/or,
+		// which the first test may skip, so only what is harmless comes out of there.
+		Expr hoist(Expr expr, boolean always) {
+			if (first && isWorthHoisting(expr) && isInvariant(expr) && (always || isHarmless(expr))) {
+				Token name = new Token(TokenType.IDENTIFIER, "$" + temporaries++, null, 0, "", 0);
+				declarations.add(new Stmt.Var(name, expr));
+				return new Expr.Variable(name);
+			}
+
+			if (expr instanceof Expr.Binary) {
+				Expr.Binary binary = (Expr.Binary)expr;
+				Expr left = hoist(binary.left, always);
+				Expr right = hoist(binary.right, always);
+				TokenType type = binary.operator.type;
+				if (type != TokenType.EQUAL_EQUAL && type != TokenType.BANG_EQUAL) first = false;
+				if (left == binary.left && right == binary.right) return expr;
+				return new Expr.Binary(left, binary.operator, right);
+			}
+
+			if (expr instanceof Expr.Logical) {
+				Expr.Logical logical = (Expr.Logical)expr;
+				Expr left = hoist(logical.left, always);
+				Expr right = hoist(logical.right, false);
+				if (left == logical.left && right == logical.right) return expr;
+				return new Expr.Logical(left, logical.operator, right);
+			}
+
+			if (expr instanceof Expr.Unary) {
+				Expr.Unary unary = (Expr.Unary)expr;
+				Expr right = hoist(unary.right, always);
+				if (unary.operator.type != TokenType.BANG) first = false;
+				if (right == unary.right) return expr;
+				return new Expr.Unary(unary.operator, right);
+			}
+
+			if (expr instanceof Expr.Ternary) {
+				Expr.Ternary ternary = (Expr.Ternary)expr;
+				Expr right = hoist(ternary.right, always);
+				Expr left = hoist(ternary.left, always);
+				Expr condition = hoist(ternary.condition, always);
+				if (left == ternary.left && right == ternary.right && condition == ternary.condition) return expr;
+				return new Expr.Ternary(left, right, condition);
+			}
+
+			if (!isHarmless(expr)) first = false;
+			return expr;
+		}
+
+		private boolean isWorthHoisting(Expr expr) {
+			if (expr instanceof Expr.Call || expr instanceof Expr.Get) return true;
+			if (expr instanceof Expr.Binary) {
+				return isWorthHoisting(((Expr.Binary)expr).left) || isWorthHoisting(((Expr.Binary)expr).right);
+			}
+			if (expr instanceof Expr.Unary) return isWorthHoisting(((Expr.Unary)expr).right);
+			return false;
+		}
+
+		// Gives the same value on every test of the condition
+		private boolean isInvariant(Expr expr) {
+			if (expr instanceof Expr.Literal || expr instanceof Expr.This) return true;
+			if (expr instanceof Expr.Variable) {
+				if (expr.depth >= 0) return !loop.writes(expr.depth, expr.slot);
+				return !loop.globals.contains(((Expr.Variable)expr).name.lexeme);
+			}
+			if (expr instanceof Expr.Get) {
+				Expr.Get get = (Expr.Get)expr;
+				return !loop.fields.contains(get.name.lexeme) && isInvariant(get.object);
+			}
+			if (expr instanceof Expr.Call) {
+				if (!isPureCall(expr)) return false;
+				for (Expr argument : ((Expr.Call)expr).arguments) {
+					if (!isInvariant(argument)) return false;
+				}
+				return true;
+			}
+			if (expr instanceof Expr.Binary) {
+				return isInvariant(((Expr.Binary)expr).left) && isInvariant(((Expr.Binary)expr).right);
+			}
+			if (expr instanceof Expr.Unary) return isInvariant(((Expr.Unary)expr).right);
+			return false;
+		}
+	}
+}
@@ -9,11 +9,36 @@ import static dymond.TokenType.*;
 public class Parser {
 	private static class ParseError extends RuntimeException {}
 	
-	private final List<Token> tokens;
+	// Only read by index through type and token, so a buffer or stream never has to make a
+	// Token object for tokens the tree does not keep
+	private final TokenSource tokens;
 	private int current = 0;
 	private final boolean repl;
 	
+	// Binding power of each binary operator by TokenType ordinal, 0 for anything else.
+	// Higher binds tighter.
+	private static final int PRECEDENCE_OR = 1;
+	private static final int[] PRECEDENCE = new int[TokenType.values().length];
+	private static final boolean[] ASSIGNMENT = new boolean[TokenType.values().length];
+	private static final boolean[] PREFIX = new boolean[TokenType.values().length];
+	
+	static {
+		PRECEDENCE[OR.ordinal()] = PRECEDENCE_OR;
+		PRECEDENCE[AND.ordinal()] = 2;
+		for (TokenType type : new TokenType[] { BANG_EQUAL, EQUAL_EQUAL }) PRECEDENCE[type.ordinal()] = 3;
+		for (TokenType type : new TokenType[] { GREATER, GREATER_EQUAL, LESS, LESS_EQUAL }) PRECEDENCE[type.ordinal()] = 4;
+		for (TokenType type : new TokenType[] { MINUS, PLUS }) PRECEDENCE[type.ordinal()] = 5;
+		for (TokenType type : new TokenType[] { DIV, STAR, INTEGER_DIV, MODULO }) PRECEDENCE[type.ordinal()] = 6;
+		
+		for (TokenType type : new TokenType[] { EQUAL, PLUS_EQUAL, MINUS_EQUAL, MODULO_EQUAL, TIMES_EQUAL, DIV_EQUAL }) ASSIGNMENT[type.ordinal()] = true;
+		for (TokenType type : new TokenType[] { BANG, MINUS, PLUS_PLUS, MINUS_MINUS }) PREFIX[type.ordinal()] = true;
+	}
+	
 	public Parser(List<Token> tokens, boolean repl) {
+		this(TokenSource.of(tokens), repl);
+	}
+	
+	public Parser(TokenSource tokens, boolean repl) {
 		this.tokens = tokens;
 		this.repl = repl;
 	}
@@ -52,7 +77,7 @@ public class Parser {
 		}
 		
 		if(!repl)
-			consume(SEMICOLON, "Expect ';' after variable declaration.");
+			expect(SEMICOLON, "Expect ';' after variable declaration.");
 		else
 			match(SEMICOLON);
 		return new Stmt.Var(name,  initializer);
@@ -85,11 +110,11 @@ public class Parser {
 		
 		Expr.Variable superclass = null;
 		if (match(LEFT_ARROW)) {
-			consume(IDENTIFIER, "Expect superclass name.");
+			expect(IDENTIFIER, "Expect superclass name.");
 			superclass = new Expr.Variable(previous());
 		}
 		
-		consume(LEFT_BRACE, "Expect '{' before class body.");
+		expect(LEFT_BRACE, "Expect '{' before class body.");
 		
 		List<Stmt.Function> methods = new ArrayList<>();
 		List<Stmt.Function> staticMethods = new ArrayList<>(); 
@@ -97,14 +122,14 @@ public class Parser {
 			if (match(STATIC)) staticMethods.add(function("staticMethod"));
 			else if (match(FUNC)) methods.add(function("method"));
 			else {
-				Dymond.error(peek().line, "Expected keyword 'func' or keyword 'static'.", peek().lineText, peek().column);
+				Dymond.error(peek(), "Expected keyword 'func' or keyword 'static'.");
 				while (!check(STATIC) && !check(FUNC) && !check(RIGHT_BRACE) && !isAtEnd()) {
-					consume(peek().type, "");
+					expect(type(current), "");
 				}
 			}
 		}
 		
-		consume(RIGHT_BRACE, "Expect '}' after class body.");
+		expect(RIGHT_BRACE, "Expect '}' after class body.");
 		
 		return new Stmt.Class(name,  methods, staticMethods, superclass);
 	}
@@ -116,19 +141,19 @@ public class Parser {
 			value = expression();
 		}
 		
-		consume(SEMICOLON, "Expect ';' after return value.");
+		expect(SEMICOLON, "Expect ';' after return value.");
 		return new Stmt.Return(keyword, value);
 	}
 	
 	private Stmt breakStatement() {
 		Token keyword = previous();
-		consume(SEMICOLON, "Expect ';' after break.");
+		expect(SEMICOLON, "Expect ';' after break.");
 		return new Stmt.Break(keyword);
 	}
 	
 	private Stmt nextStatement() {
 		Token keyword = previous();
-		consume(SEMICOLON, "Expect ';' after next.");
+		expect(SEMICOLON, "Expect ';' after next.");
 		return new Stmt.Next(keyword);
 	}
 	
@@ -138,7 +163,7 @@ public class Parser {
 		if (check(IDENTIFIER))
 			name = consume(IDENTIFIER, "Expect " + kind + " name.");
 		
-		consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
+		expect(LEFT_PAREN, "Expect '(' after " + kind + " name.");
 		List<Expr.Assign> parameters = new ArrayList<>();
 		if (!check(RIGHT_PAREN)) {
 			do {
@@ -158,15 +183,15 @@ public class Parser {
 				parameters.add(param);
 			} while (match(COMMA));
 		}
-		consume(RIGHT_PAREN, "Expect ')' after parameters.");
+		expect(RIGHT_PAREN, "Expect ')' after parameters.");
 		
-		consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
+		expect(LEFT_BRACE, "Expect '{' before " + kind + " body.");
 		List<Stmt> body = block();
 		return new Stmt.Function(name,  parameters, body);
 	}
 	
 	private Stmt forStatement() {
-		consume(LEFT_PAREN, "Expect '(' after 'for'.");
+		expect(LEFT_PAREN, "Expect '(' after 'for'.");
 		
 		Stmt initializer;
 		if (match(SEMICOLON)) {
@@ -181,25 +206,22 @@ public class Parser {
 		if (!check(SEMICOLON)) {
 			condition = expression();
 		}
-		consume(SEMICOLON, "Expect ';' after loop condition.");
+		expect(SEMICOLON, "Expect ';' after loop condition.");
 		
 		Expr increment = null;
 		if (!check(RIGHT_PAREN)) {
 			increment = expression();
 		}
-		consume(RIGHT_PAREN, "Expect ')' after for clauses.");
+		expect(RIGHT_PAREN, "Expect ')' after for clauses.");
 		
 		Stmt body = statement();
 		
-		if (increment != null) {
-			body = new Stmt.Block(Arrays.asList(
-					body,
-					new Stmt.Expression(increment)
-				));		
-		}
+		// The increment runs after the body in the loop's own scope, so a 'next' can still reach it
+		Stmt step = null;
+		if (increment != null) step = new Stmt.Expression(increment);
 		
 		if (condition == null) condition = new Expr.Literal(true);
-		body = new Stmt.For(condition, body, new Stmt.Expression(increment));
+		body = new Stmt.For(condition, body, step);
 		
 		if (initializer != null) {
 			body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -209,9 +231,9 @@ public class Parser {
 	}
 	
 	private Stmt whileStatement() {
-		consume(LEFT_PAREN, "Expect '(' after 'while'.");
+		expect(LEFT_PAREN, "Expect '(' after 'while'.");
 		Expr condition = expression();
-		consume(RIGHT_PAREN, "Expect ')' after condition.");
+		expect(RIGHT_PAREN, "Expect ')' after condition.");
 		
 		Stmt body = null;
 		body = statement();
@@ -220,9 +242,9 @@ public class Parser {
 	}
 	
 	private Stmt ifStatement() {
-		consume(LEFT_PAREN, "Expect '(' after 'if'.");
+		expect(LEFT_PAREN, "Expect '(' after 'if'.");
 		Expr condition = expression();
-		consume(RIGHT_PAREN, "Expect ')' after if condition.");
+		expect(RIGHT_PAREN, "Expect ')' after if condition.");
 		
 		Stmt thenBranch = statement();
 		Stmt elseBranch = null;
@@ -240,7 +262,7 @@ public class Parser {
 			statements.add(declaration());
 		}
 		
-		consume(RIGHT_BRACE, "Expect '}' after block.");
+		expect(RIGHT_BRACE, "Expect '}' after block.");
 		return statements;
 	}
 	
@@ -248,7 +270,7 @@ public class Parser {
 		Expr expr = expression();
 		
 		if(!repl)
-			consume(SEMICOLON, "Expect ';' after value.");
+			expect(SEMICOLON, "Expect ';' after value.");
 		else
 			match(SEMICOLON);
 		return new Stmt.Expression(expr);
@@ -272,9 +294,11 @@ public class Parser {
 	// assignment -> identifier = assignment
 	//             | ternary
 	private Expr assignment() {
-		Expr expr = anonFunction();
+		/* TODO implement anonymus functions*/
+		Expr expr = ternary();
 		
-		if (match(EQUAL, PLUS_EQUAL, MINUS_EQUAL, MODULO_EQUAL, TIMES_EQUAL, DIV_EQUAL)) {
+		if (ASSIGNMENT[type(current).ordinal()]) {
+			advance();
 			Token equals = previous();
 			Expr value = assignment();
 			
@@ -292,21 +316,13 @@ public class Parser {
 		return expr;
 	}
 	
-	private Expr anonFunction() {
-		Expr expr = ternary();
-		
-		/* TODO implement anonymus functions*/
-		
-		return expr;
-	}
-	
 	private Expr ternary() {
-		Expr expr = logic_or();
+		Expr expr = binary(PRECEDENCE_OR);
 		
 		if (match(QUESTION)) {
-			Expr left = logic_or();
+			Expr left = binary(PRECEDENCE_OR);
 			
-			consume(COLON, "Expected ':' a colon.");
+			expect(COLON, "Expected ':' a colon.");
 			
 			Expr right = expression();
 			expr = new Expr.Ternary(left, right, expr);
@@ -315,85 +331,34 @@ public class Parser {
 		return expr;
 	}
 	
-	private Expr logic_or() {
-		Expr expr = logic_and();
-		
-		while (match(OR)) {
-			Token operator = previous();
-			Expr right = logic_and();
-			expr = new Expr.Logical(expr,  operator, right);
-		}
-		
-		return expr;
-	}
-	
-	private Expr logic_and() {
-		Expr expr = equality();
-		
-		while (match(AND)) {
-			Token operator = previous();
-			Expr right = equality();
-			expr = new Expr.Logical(expr,  operator, right);
-		}
-		
-		return expr;
-	}
-	
-	// equality -> comparison ( ("!=" | "==" ) comparison )* ;
-	private Expr equality() {
-		Expr expr = comparison();
-		
-		while (match(BANG_EQUAL, EQUAL_EQUAL)) {
-			Token operator = previous();
-			Expr right = comparison();
-
-			expr = new Expr.Binary(expr,  operator,  right);
-		}
-		
-		return expr;
-	}
-	
-	// comparison -> addition ( ( ">" | ">=" | "<" | "<=" ) addition )* ;
-	private Expr comparison() {
-		Expr expr = addition();
-		
-		while (match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-			Token operator = previous();
-			Expr right = addition();
-			expr = new Expr.Binary(expr,  operator, right);
-		}
-		
-		return expr;
-	}
-	
-	private Expr addition() {
-		Expr expr = multiplication();
-		
-		while (match(MINUS, PLUS)) {
-			Token operator = previous();
-			Expr right = addition();
-			expr = new Expr.Binary(expr,  operator, right);
-		}
-		
-		return expr;
-	}
-	
-	private Expr multiplication() {
+	// Every binary operator from "or" down to "*" in one loop. An operand only recurses for
+	// operators that bind tighter, so a long chain like a - b - c - d is parsed iteratively
+	// and associates to the left.
+	private Expr binary(int minPrecedence) {
 		Expr expr = unary();
 		
-		while (match(DIV, STAR, INTEGER_DIV, MODULO)) {
+		for (;;) {
+			TokenType type = type(current);
+			int precedence = PRECEDENCE[type.ordinal()];
+			if (precedence < minPrecedence) return expr;
+			
+			advance();
 			Token operator = previous();
-			Expr right = unary();
-			expr = new Expr.Binary(expr, operator, right);
+			Expr right = binary(precedence + 1);
+			
+			if (type == OR || type == AND) {
+				expr = new Expr.Logical(expr,  operator, right);
+			} else {
+				expr = new Expr.Binary(expr,  operator, right);
+			}
 		}
-		
-		return expr;
 	}
 	
-	// unary -> ( "!" | "-" ) unary
-	//       | primary ;
+	// unary -> ( "!" | "-" | "++" | "--" ) postfix
+	//       | postfix ;
 	private Expr unary() {
-		if (match(BANG, MINUS, PLUS_PLUS, MINUS_MINUS)) {
+		if (PREFIX[type(current).ordinal()]) {
+			advance();
 			Token operator = previous();
 			Expr right = postfix();
 			if (right instanceof Expr.Variable) {
@@ -410,7 +375,7 @@ public class Parser {
 	private Expr postfix() {
 		Expr expr = call();
 		
-		if (match(PLUS_PLUS, MINUS_MINUS)) {
+		if (match(PLUS_PLUS) || match(MINUS_MINUS)) {
 			Token operator = previous();
 			
 			if(expr instanceof Expr.Variable) { 
@@ -423,9 +388,15 @@ public class Parser {
 		return expr;
 	}
 	
-	// call -> primary ( "(" arguments? )" )* ;
+	// call -> primary ( "[" primary "]" )? ( "(" arguments? ")" | "." identifier )* ;
 	private Expr call() {
-		Expr expr = subscript();
+		Expr expr = primary();
+		
+		if (match(LEFT_BRACKET)) {
+			Expr sub = primary();
+			expr = new Expr.Subscript(expr, sub, previous());
+			expect(RIGHT_BRACKET, "Expect ']' after subscript.");
+		}
 		
 		while (true) {
 			if (match(LEFT_PAREN)) {
@@ -441,37 +412,25 @@ public class Parser {
 		return expr;
 	}
 	
-	private Expr subscript() {
-		Expr expr = primary();
-		
-		if (match(LEFT_BRACKET)) {
-			Expr sub = primary();
-			expr = new Expr.Subscript(expr, sub, previous());
-			consume(RIGHT_BRACKET, "Expect ']' after subscript.");
-		}
-		
-		return expr;
-	}
-	
 	// primary -> NUMBER | STRING | "False" | "True" | "Null" | "(" expression ")" ;
 	private Expr primary() {
 		if (match(FALSE)) return new Expr.Literal(false);
 		if (match(TRUE)) return new Expr.Literal(true);
 		if (match(NULL)) return new Expr.Literal(null);
 		if (match(IDENTIFIER)) return new Expr.Variable(previous());
-		if (match(NUMBER, STRING)) return new Expr.Literal(previous().literal);
+		if (match(NUMBER) || match(STRING)) return new Expr.Literal(previous().literal);
 		if (match(THIS)) return new Expr.This(previous());
 		
 		if (match(SUPER)) {
 			Token keyword = previous();
-			consume(DOT, "Expect '.' after 'super'.");
+			expect(DOT, "Expect '.' after 'super'.");
 			Token method = consume(IDENTIFIER, "Expect superclass method name.");
 			return new Expr.Super(keyword, method);
 		}
 		
 		if (match(LEFT_PAREN)) {
 			Expr expr = expression();
-			consume(RIGHT_PAREN, "Expect ')' after expression.");
+			expect(RIGHT_PAREN, "Expect ')' after expression.");
 			return new Expr.Grouping(expr);
 		}
 		
@@ -500,12 +459,21 @@ public class Parser {
 	
 	
 	private Token consume(TokenType type, String message) {
-		if (check(type)) return advance();
+		expect(type, message);
+		return previous();
+	}
+	
+	// consume for tokens the tree does not keep, which the buffer then never has to make
+	private void expect(TokenType type, String message) {
+		if (check(type)) {
+			advance();
+			return;
+		}
 		throw error(previous(), message);
 	}
 	
 	private ParseError error(Token token, String message) {
-		Dymond.error(token.line, message, token.lineText, token.column);
+		Dymond.error(token, message);
 		return new ParseError();
 	}
 	
@@ -513,9 +481,9 @@ public class Parser {
 		advance();
 		
 		while (!isAtEnd()) {
-			if (previous().type == SEMICOLON) return;
+			if (type(current - 1) == SEMICOLON) return;
 			
-			switch (peek().type) {
+			switch (type(current)) {
 				case CLASS:
 				case FUNC:
 				case FOR:
@@ -532,12 +500,10 @@ public class Parser {
 	
 	
 	
-	private boolean match(TokenType... types) {
-		for (TokenType type : types) {
-			if(check(type)) {
-				advance();
-				return true;
-			}
+	private boolean match(TokenType type) {
+		if (check(type)) {
+			advance();
+			return true;
 		}
 		
 		return false;
@@ -545,23 +511,30 @@ public class Parser {
 	
 	private boolean check(TokenType tokenType) {
 		if (isAtEnd()) return false;
-		return peek().type == tokenType;
+		return type(current) == tokenType;
 	}
 	
-	private Token advance() {
+	private void advance() {
 		if (!isAtEnd()) current++;
-		return previous();
 	}
 	
 	private boolean isAtEnd() {
-		return peek().type == EOF;
+		return type(current) == EOF;
 	}
 	
 	private Token peek() {
-		return tokens.get(current);
+		return token(current);
 	}
 	
 	private Token previous() {
-		return tokens.get(current - 1);
+		return token(current - 1);
+	}
+	
+	private TokenType type(int index) {
+		return tokens.type(index);
+	}
+	
+	private Token token(int index) {
+		return tokens.token(index);
 	}
 }
\ No newline at end of file
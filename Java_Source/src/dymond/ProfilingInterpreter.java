@@ -0,0 +1,166 @@
+package dymond;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The interpreter Dymond runs with --profile. Every statement and expression that goes through
+// execute or evaluate is counted and timed, and the counts and times are added up per source
+// line. The plain Interpreter is untouched, so without the flag nothing is measured at all.
+//
+// Self time is what a line took minus the time of the timed nodes below it, so the self times
+// add up to the whole run. Total time counts a line once while it is running, however deeply it
+// recurses. Numbers a specialized node works out without going through evaluate are timed as
+// part of the node that asked for them, and the JIT is off, since compiled code has no nodes.
+final class ProfilingInterpreter extends Interpreter {
+	private static final int REPORTED = 25;
+
+	private static final class Line {
+		final int number;
+		final String text;
+		long statements;
+		long expressions;
+		long self;
+		long total;
+		// How many nodes of this line are running right now, more than one when it recurses
+		int active;
+
+		Line(int number, String text) {
+			this.number = number;
+			this.text = text;
+		}
+	}
+
+	// Nodes with no token of their own, blocks and literals, are timed as part of their parent
+	private static final Line NONE = new Line(0, "");
+
+	private final Map<Object, Line> nodes = new IdentityHashMap<>();
+	private final Map<Integer, Line> lines = new HashMap<>();
+	// Time spent in timed nodes below the one being timed
+	private long nested;
+
+	private ProfilingInterpreter() {
+		disableTiering();
+	}
+
+	// Dymond goes through these rather than naming the class, so that without --profile it is never
+	// loaded and execute and evaluate keep a single implementation the JVM can inline
+	static Interpreter create() {
+		return new ProfilingInterpreter();
+	}
+
+	static void report(Interpreter interpreter, PrintStream out) {
+		((ProfilingInterpreter)interpreter).report(out);
+	}
+
+	@Override
+	Object execute(Stmt stmt) {
+		Line line = line(stmt);
+		if (line == NONE) return super.execute(stmt);
+
+		line.statements++;
+		long outer = enter(line);
+		long start = System.nanoTime();
+		try {
+			return super.execute(stmt);
+		} finally {
+			exit(line, start, outer);
+		}
+	}
+
+	@Override
+	public Object evaluate(Expr expr) {
+		Line line = line(expr);
+		if (line == NONE) return super.evaluate(expr);
+
+		line.expressions++;
+		long outer = enter(line);
+		long start = System.nanoTime();
+		try {
+			return super.evaluate(expr);
+		} finally {
+			exit(line, start, outer);
+		}
+	}
+
+	private long enter(Line line) {
+		long outer = nested;
+		nested = 0;
+		line.active++;
+		return outer;
+	}
+
+	private void exit(Line line, long start, long outer) {
+		long elapsed = System.nanoTime() - start;
+		line.self += elapsed - nested;
+		if (--line.active == 0) line.total += elapsed;
+		nested = outer + elapsed;
+	}
+
+	private Line line(Object node) {
+		Line line = nodes.get(node);
+		if (line != null) return line;
+
+		Token token = token(node);
+		if (token == null) {
+			line = NONE;
+		} else {
+			line = lines.get(token.line);
+			if (line == null) {
+				line = new Line(token.line, token.lineText());
+				lines.put(token.line, line);
+			}
+		}
+		nodes.put(node, line);
+		return line;
+	}
+
+	// The token a node starts with, null for one that has none to give
+	private static Token token(Object node) {
+		if (node == null) return null;
+		if (node instanceof Expr.Assign) return ((Expr.Assign)node).name;
+		if (node instanceof Expr.Binary) return token(((Expr.Binary)node).left);
+		if (node instanceof Expr.Call) return token(((Expr.Call)node).callee);
+		if (node instanceof Expr.Get) return token(((Expr.Get)node).object);
+		if (node instanceof Expr.Grouping) return token(((Expr.Grouping)node).expression);
+		if (node instanceof Expr.Logical) return token(((Expr.Logical)node).left);
+		if (node instanceof Expr.Subscript) return token(((Expr.Subscript)node).left);
+		if (node instanceof Expr.Set) return token(((Expr.Set)node).object);
+		if (node instanceof Expr.Super) return ((Expr.Super)node).keyword;
+		if (node instanceof Expr.Ternary) return token(((Expr.Ternary)node).condition);
+		if (node instanceof Expr.This) return ((Expr.This)node).keyword;
+		if (node instanceof Expr.Unary) return ((Expr.Unary)node).operator;
+		if (node instanceof Expr.UnaryAssign) return ((Expr.UnaryAssign)node).name;
+		if (node instanceof Expr.Variable) return ((Expr.Variable)node).name;
+		if (node instanceof Stmt.Break) return ((Stmt.Break)node).keyword;
+		if (node instanceof Stmt.Class) return ((Stmt.Class)node).name;
+		if (node instanceof Stmt.Expression) return token(((Stmt.Expression)node).expression);
+		if (node instanceof Stmt.Function) return ((Stmt.Function)node).name;
+		if (node instanceof Stmt.If) return token(((Stmt.If)node).condition);
+		if (node instanceof Stmt.Next) return ((Stmt.Next)node).keyword;
+		if (node instanceof Stmt.Return) return ((Stmt.Return)node).keyword;
+		if (node instanceof Stmt.Var) return ((Stmt.Var)node).name;
+		if (node instanceof Stmt.While) return token(((Stmt.While)node).condition);
+		if (node instanceof Stmt.For) return token(((Stmt.For)node).condition);
+		return null;
+	}
+
+	// The lines that took the most time of their own, hottest first
+	private void report(PrintStream out) {
+		List<Line> sorted = new ArrayList<>(lines.values());
+		sorted.sort((a, b) -> Long.compare(b.self, a.self));
+
+		long run = 0;
+		for (Line line : sorted) run += line.self;
+
+		out.printf("%n%6s %12s %12s %10s %7s %10s  %s%n", "line", "statements", "expressions", "self ms", "self %", "total ms", "source");
+		for (Line line : sorted.subList(0, Math.min(REPORTED, sorted.size()))) {
+			out.printf("%6d %12d %12d %10.2f %6.1f%% %10.2f  %s%n", line.number, line.statements, line.expressions,
+					line.self / 1e6, run == 0 ? 0 : 100.0 * line.self / run, line.total / 1e6, line.text.trim());
+		}
+		out.flush();
+	}
+}
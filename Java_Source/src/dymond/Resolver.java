@@ -1,8 +1,13 @@
 package dymond;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 import dymond.Expr.Ternary;
@@ -27,9 +32,38 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	
 	private final Interpreter interpreter;
 	private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+	private final Stack<Map<String, Integer>> slots = new Stack<>();
+	// The assignments to each local of a scope that has not been read yet, whatever is left
+	// when the scope ends was stored for nothing
+	private final Stack<Map<String, List<Expr.Assign>>> unread = new Stack<>();
+	private final Set<Expr.Assign> deadStores = Collections.newSetFromMap(new IdentityHashMap<>());
+	// Globals the program declares or assigns, a native named like one of them may not be one
+	private final Set<String> writtenGlobals = new HashSet<>();
+	private final Map<Stmt, Loop> loops = new IdentityHashMap<>();
+	private final Stack<Loop> enclosingLoops = new Stack<>();
 	private FunctionType currentFunction = FunctionType.NONE;
 	private ClassType currentClass = ClassType.NONE;
 	
+	// What running a loop can change, as far as its condition is concerned. Locals are keyed by
+	// the depth and slot they have in the condition.
+	static final class Loop {
+		private final int scope;
+		// Declares into the scope around the loop or calls something that is not a global
+		boolean opaque = false;
+		final Set<String> calls = new HashSet<>();
+		final Set<String> globals = new HashSet<>();
+		final Set<String> fields = new HashSet<>();
+		private final Set<Long> locals = new HashSet<>();
+		
+		private Loop(int scope) {
+			this.scope = scope;
+		}
+		
+		boolean writes(int depth, int slot) {
+			return locals.contains((long)depth << 32 | slot);
+		}
+	}
+	
 	public Resolver(Interpreter interpreter) {
 		this.interpreter = interpreter;
 	}
@@ -37,9 +71,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitSuperExpr(Expr.Super expr) {
 		if (currentClass == ClassType.NONE) {
-			Dymond.error(expr.keyword.line, "Cannot use 'super' outside of a class.", expr.keyword.lineText, expr.keyword.column);
+			Dymond.error(expr.keyword, "Cannot use 'super' outside of a class.");
 		} else if (currentClass != ClassType.SUBCLASS) {
-			Dymond.error(expr.keyword.line, "Cannot use 'super' in a class with no superclass.", expr.keyword.lineText, expr.keyword.column);
+			Dymond.error(expr.keyword, "Cannot use 'super' in a class with no superclass.");
 		}
 		resolveLocal(expr, expr.keyword);
 		return null;
@@ -48,7 +82,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitThisExpr(Expr.This expr) {
 		if (currentClass == ClassType.NONE) {
-			Dymond.error(expr.keyword.line, "Cannot use 'this' outside of a class.", expr.keyword.lineText, expr.keyword.column);
+			Dymond.error(expr.keyword, "Cannot use 'this' outside of a class.");
 			return null;
 		}
 		
@@ -60,6 +94,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	public Void visitSetExpr(Expr.Set expr) {
 		resolve(expr.value);
 		resolve(expr.object);
+		for (Loop loop : enclosingLoops) loop.fields.add(expr.name.lexeme);
 		return null;
 	}
 	
@@ -85,12 +120,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		
 		if (stmt.superclass != null) {
 			beginScope();
-			scopes.peek().put("super",  true);
+			defineSlot("super");
 		}
 		
-		beginScope();
-		scopes.peek().put("this", true);
-		
 		for (Stmt.Function method : stmt.methods) {
 			FunctionType declaration = FunctionType.METHOD;
 			if (method.name.lexeme.equals("init")) {
@@ -104,8 +136,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 			resolveFunction(staticMethod, declaration);
 		}
 		
-		endScope();
-		
 		if (stmt.superclass != null) endScope();
 		
 		currentClass = enclosingClass;
@@ -114,6 +144,20 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	
 	@Override
 	public Void visitBlockStmt(Stmt.Block stmt) {
+		// A block with no declarations of its own needs no frame, a loop body like that
+		// then runs without allocating anything per iteration
+		stmt.frameless = true;
+		for (Stmt statement : stmt.statements) {
+			if (statement instanceof Stmt.Var || statement instanceof Stmt.Function || statement instanceof Stmt.Class) {
+				stmt.frameless = false;
+			}
+		}
+		
+		if (stmt.frameless) {
+			resolve(stmt.statements);
+			return null;
+		}
+		
 		beginScope();
 		resolve(stmt.statements);
 		endScope();
@@ -133,23 +177,37 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitVariableExpr(Expr.Variable expr) {
 		if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme)== Boolean.FALSE ) {
-			Dymond.error(expr.name.line, "Cannot read local variable in its own initializer.", expr.name.lineText, expr.name.column);
+			Dymond.error(expr.name, "Cannot read local variable in its own initializer.");
 		}
 		
-		resolveLocal(expr, expr.name);
+		read(resolveLocal(expr, expr.name), expr.name);
 		return null;
 	}
 	
 	@Override
 	public Void visitAssignExpr(Expr.Assign expr) {
 		resolve(expr.value);
-		resolveLocal(expr, expr.name);
+		int scope = resolveLocal(expr, expr.name);
+		written(scope, expr);
+		
+		// A compound assignment reads the variable before it stores to it
+		if (expr.operator.type == TokenType.EQUAL) {
+			if (scope >= 0 && unread.get(scope).containsKey(expr.name.lexeme)) {
+				List<Expr.Assign> stores = unread.get(scope).get(expr.name.lexeme);
+				if (stores.isEmpty()) unread.get(scope).put(expr.name.lexeme, stores = new ArrayList<>());
+				stores.add(expr);
+			}
+		} else {
+			read(scope, expr.name);
+		}
 		return null;
 	}
 	
 	@Override
 	public Void visitUnaryAssignExpr(UnaryAssign expr) {
-		resolveLocal(expr, expr.name);
+		int scope = resolveLocal(expr, expr.name);
+		written(scope, expr);
+		read(scope, expr.name);
 		return null;
 	}
 	
@@ -179,12 +237,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitReturnStmt(Stmt.Return stmt) {
 		if (currentFunction == FunctionType.NONE) {
-			Dymond.error(stmt.keyword.line, "Cannot return from top-level code.", stmt.keyword.lineText, stmt.keyword.column);
+			Dymond.error(stmt.keyword, "Cannot return from top-level code.");
 		}
 		
 		if (stmt.value != null) {
 			if (currentFunction == FunctionType.INITIALIZER) {
-				Dymond.error(stmt.keyword.line, "Cannot return a value from an initializer.", stmt.keyword.lineText, stmt.keyword.column);
+				Dymond.error(stmt.keyword, "Cannot return a value from an initializer.");
 			}
 			resolve(stmt.value);
 		}
@@ -194,8 +252,10 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	
 	@Override 
 	public Void visitWhileStmt(Stmt.While stmt) {
+		beginLoop(stmt);
 		resolve(stmt.condition);
 		resolve(stmt.body);
+		enclosingLoops.pop();
 		return null;
 	}
 	
@@ -209,9 +269,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 	@Override
 	public Void visitCallExpr(Expr.Call expr) {
 		resolve(expr.callee);
+		for (Loop loop : enclosingLoops) {
+			if (expr.callee instanceof Expr.Variable && expr.callee.depth < 0) {
+				loop.calls.add(((Expr.Variable)expr.callee).name.lexeme);
+			} else {
+				loop.opaque = true;
+			}
+		}
 		
 		for (Expr argument : expr.arguments) {
 			resolve(argument);
+			// An argument passed by name is not a store, even if it looks like one
+			if (argument instanceof Expr.Assign) {
+				for (Map<String, List<Expr.Assign>> scope : unread) {
+					List<Expr.Assign> stores = scope.get(((Expr.Assign)argument).name.lexeme);
+					if (stores != null) stores.remove(argument);
+				}
+			}
 		}
 		
 		return null;
@@ -260,9 +334,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
 	@Override
 	public Void visitForStmt(For stmt) {
+		beginLoop(stmt);
 		resolve(stmt.condition);
-		resolve(stmt.increment);
 		resolve(stmt.body);
+		if (stmt.increment != null) resolve(stmt.increment);
+		enclosingLoops.pop();
 		return null;
 	}
 
@@ -279,6 +355,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		currentFunction = type;
 		
 		beginScope();
+		// Methods find "this" in the first slot of their own frame
+		if (type != FunctionType.FUNCTION) defineSlot("this");
 		for (Expr.Assign param : function.parameters) {
 			declare(param.name);
 			define(param.name);
@@ -288,23 +366,58 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		currentFunction = enclosingFunction;
 	}
 	
-	private void resolveLocal(Expr expr, Token name) {
+	// The index of the scope the name was found in, or -1 for a global
+	private int resolveLocal(Expr expr, Token name) {
 		for (int i = scopes.size() - 1; i >= 0; i--) {
 			if (scopes.get(i).containsKey(name.lexeme)) {
-				interpreter.resolve(expr, scopes.size() - 1 - i);
-				return;
+				interpreter.resolve(expr, scopes.size() - 1 - i, slots.get(i).get(name.lexeme));
+				return i;
 			}
 		}
+		return -1;
+	}
+	
+	private void read(int scope, Token name) {
+		if (scope >= 0) unread.get(scope).remove(name.lexeme);
+	}
+	
+	private void written(int scope, Expr expr) {
+		Token name = expr instanceof Expr.Assign ? ((Expr.Assign)expr).name : ((Expr.UnaryAssign)expr).name;
+		if (scope < 0) writtenGlobals.add(name.lexeme);
+		
+		for (Loop loop : enclosingLoops) {
+			if (scope < 0) {
+				loop.globals.add(name.lexeme);
+			} else if (scope < loop.scope) {
+				loop.locals.add((long)(loop.scope - 1 - scope) << 32 | expr.slot);
+			}
+		}
+	}
+	
+	private void beginLoop(Stmt stmt) {
+		Loop loop = new Loop(scopes.size());
+		loops.put(stmt, loop);
+		enclosingLoops.push(loop);
 	}
 	
 	private void declare(Token name) {
-		if (scopes.isEmpty()) return;
+		// A declaration that is the body of a loop lands in the scope around it
+		for (Loop loop : enclosingLoops) {
+			if (scopes.size() - 1 < loop.scope) loop.opaque = true;
+		}
+		
+		if (scopes.isEmpty()) {
+			writtenGlobals.add(name.lexeme);
+			return;
+		}
 		
 		Map<String, Boolean> scope = scopes.peek();
 		if (scope.containsKey(name.lexeme)) {
-			Dymond.error(name.line, "Variable with this name already declared in this scope.", name.lineText, name.column);
+			Dymond.error(name, "Variable with this name already declared in this scope.");
 		}
 		scope.put(name.lexeme,  false);
+		slots.peek().put(name.lexeme, slots.peek().size());
+		unread.peek().put(name.lexeme, Collections.emptyList());
 	}
 	
 	private void define(Token name) {
@@ -312,12 +425,37 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 		scopes.peek().put(name.lexeme, true);
 	}
 	
+	private void defineSlot(String name) {
+		scopes.peek().put(name, true);
+		slots.peek().put(name, slots.peek().size());
+	}
+	
 	private void beginScope() {
 		scopes.push(new HashMap<String, Boolean>());
+		slots.push(new HashMap<String, Integer>());
+		unread.push(new HashMap<String, List<Expr.Assign>>());
 	}
 	
 	private void endScope() {
 		scopes.pop();
+		slots.pop();
+		for (List<Expr.Assign> stores : unread.pop().values()) {
+			deadStores.addAll(stores);
+		}
+	}
+	
+	// Set by resolve, for the Optimizer
+	
+	Loop loop(Stmt stmt) {
+		return loops.get(stmt);
+	}
+	
+	boolean isDeadStore(Expr.Assign expr) {
+		return deadStores.contains(expr);
+	}
+	
+	boolean writesGlobal(String name) {
+		return writtenGlobals.contains(name);
 	}
 	
 	public void resolve(List<Stmt> statements) {
@@ -0,0 +1,107 @@
+package dymond;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+
+// The sampling profiler Dymond runs with --sample. Functions and classes push their name when
+// they are called and pop it when they return, and a thread of its own copies that stack once
+// a millisecond. The stacks are written out collapsed, "script.dy;outer;inner 42" for each
+// distinct stack and how many samples caught it, which flame graph tools take as they are.
+//
+// The pushing is done by the interpreter's thread and the reading by the sampler's, which only
+// ever looks at frames below the depth it read, so at worst a sample has a stale name in it.
+final class Sampler {
+	private static final long INTERVAL = 1_000_000;
+
+	// The sampler the running program pushes to, null when nothing is sampled
+	static Sampler active;
+
+	private final String root;
+	private volatile String[] frames = new String[64];
+	private volatile int depth;
+	private volatile boolean running = true;
+	private final Map<String, long[]> stacks = new TreeMap<>();
+	private long samples;
+	private final Thread thread;
+
+	private Sampler(String root) {
+		// Spaces and semicolons are what separate the frames and the count
+		this.root = root.replace(' ', '_').replace(';', '_');
+		this.thread = new Thread(this::sample, "dymond-sampler");
+		thread.setDaemon(true);
+	}
+
+	static Sampler start(String root) {
+		Sampler sampler = new Sampler(root);
+		active = sampler;
+		sampler.thread.start();
+		return sampler;
+	}
+
+	void push(String frame) {
+		String[] frames = this.frames;
+		int depth = this.depth;
+		if (depth == frames.length) this.frames = frames = Arrays.copyOf(frames, depth * 2);
+		frames[depth] = frame;
+		this.depth = depth + 1;
+	}
+
+	void pop() {
+		depth--;
+	}
+
+	// Stops sampling and waits for the last sample to be counted
+	void stop() {
+		active = null;
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void sample() {
+		StringBuilder stack = new StringBuilder();
+		while (running) {
+			LockSupport.parkNanos(INTERVAL);
+			if (!running) break;
+
+			// The depth first, so every frame below it was pushed before the array is read
+			int depth = this.depth;
+			String[] frames = this.frames;
+			stack.setLength(0);
+			stack.append(root);
+			for (int i = 0; i < depth && i < frames.length; i++) {
+				String frame = frames[i];
+				stack.append(';').append(frame == null ? "?" : frame);
+			}
+
+			long[] count = stacks.get(stack.toString());
+			if (count == null) stacks.put(stack.toString(), count = new long[1]);
+			count[0]++;
+			samples++;
+		}
+	}
+
+	// Only once stop has returned
+	void write(Path path) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, long[]> entry : stacks.entrySet()) {
+				out.write(entry.getKey());
+				out.write(' ');
+				out.write(Long.toString(entry.getValue()[0]));
+				out.newLine();
+			}
+		}
+		System.err.println("Wrote " + samples + " samples of " + stacks.size() + " stacks to " + path);
+	}
+}
@@ -32,24 +32,32 @@ public class Scanner {
 	    keywords.put("static", STATIC);
 	  }
 	  
-	private final String source;
+	private final Source source;
 	private final List<Token> tokens = new ArrayList<>();
+	// Set when scanning into the compact form or on demand instead of into tokens
+	private TokenBuffer buffer;
+	private TokenStream stream;
+	private final SymbolTable symbols = new SymbolTable();
 	
 	private int start = 0;
 	private int current = 0;
 	private int line = 1;
 	
-	// This will be used for error handling, it will contain each entire line
-	private String currentLine = "";
-	private int currentColumn = -1;
+	// Offsets where lines start, error messages slice their line out of the source through it
+	private final LineTable lines;
+	private int lineStart = 0;
+	private int tokensAdded = 0;
 	
 	public Scanner(String source) {
+		this(Source.of(source));
+	}
+	
+	public Scanner(Source source) {
 		this.source = source;
+		this.lines = new LineTable(source);
 	}
 	
 	public List<Token> scanTokens() {
-		currentLine = scanWholeLine();
-		
 		while (!isAtEnd()) {
 			start = current;
 			scanToken();
@@ -59,6 +67,36 @@ public class Scanner {
 		return tokens;
 	}
 	
+	public TokenBuffer scanBuffer() {
+		buffer = new TokenBuffer(source, lines, symbols);
+		while (!isAtEnd()) {
+			start = current;
+			scanToken();
+		}
+		
+		buffer.add(EOF, current, 0, line, symbols.intern(source, current, current));
+		return buffer;
+	}
+	
+	// Nothing is scanned until the Parser reads from the stream
+	public TokenStream stream() {
+		stream = new TokenStream(this);
+		return stream;
+	}
+	
+	// Scans until the stream has one more token, or EOF once the source runs out
+	void scanNext() {
+		int before = tokensAdded;
+		while (tokensAdded == before) {
+			if (isAtEnd()) {
+				stream.add(new Token(EOF, "", null, line, "", -1));
+				return;
+			}
+			start = current;
+			scanToken();
+		}
+	}
+	
 	private void scanToken() {
 		char c = advance();
 		switch (c) {
@@ -126,12 +164,7 @@ public class Scanner {
 					break;
 				} else if (match('*')) {
 					while(!isAtEnd() && peek() != '*' && peekNext() != '/') {
-						if(source.charAt(current) == '\n') {
-							line++;
-							currentLine = "";
-							currentColumn = -1;
-						}
-						advance();
+						if(advance() == '\n') newLine();
 					}
 					if(!isAtEnd())
 						advance();
@@ -147,9 +180,7 @@ public class Scanner {
 				// Ignore whitespace
 				break;
 			case '\n':
-				line++;
-				currentLine = scanWholeLine();
-				currentColumn = -1;
+				newLine();
 				break;
 			case '"': string(); break;
 			default:
@@ -158,7 +189,7 @@ public class Scanner {
 				} else if (isAlpha(c)) {
 					identifier();
 				} else {
-					Dymond.error(line,  "Unexpected character.", currentLine, currentColumn);
+					error("Unexpected character.");
 				}
 				break;
 		}
@@ -167,32 +198,27 @@ public class Scanner {
 	private void identifier() {
 		while(isAlphaNumeric(peek())) advance();
 		
-		String text = source.substring(start, current);
+		int lexeme = symbols.intern(source, start, current);
 		
-		TokenType type = keywords.get(text);
+		TokenType type = keywords.get(symbols.name(lexeme));
 		if (type == null) type = IDENTIFIER;
-		addToken(type);
+		addToken(type, lexeme, null);
 	}
 	
 	private void string() {
 		while (peek() != '"' && !isAtEnd()) {
-			if(peek() == '\n') {
-				line++;
-				currentLine = "";
-				currentColumn = -1;
-			}
-			advance();
+			if(advance() == '\n') newLine();
 		}
 		
 		if(isAtEnd()) {
-			Dymond.error(line,  "Unterminated String.", currentLine, currentColumn);
+			error("Unterminated String.");
 			return;
 		}
 		
 		advance();
 		
-		String value = source.substring(start + 1, current - 1);
-		addToken(STRING, value);
+		int value = symbols.intern(source, start + 1, current - 1);
+		addToken(STRING, value, symbols.name(value));
 	}
 	
 	private void number() {
@@ -218,7 +244,7 @@ public class Scanner {
 				}
 				
 				if(peek() == '.') {
-					Dymond.error(line, "Unexpected number literal.", currentLine, currentColumn);
+					error("Unexpected number literal.");
 				}
 			}
 		}
@@ -234,48 +260,54 @@ public class Scanner {
 			}
 			
 			if(peek() == '.') {
-				Dymond.error(line, "Unexpected number literal.", currentLine, currentColumn);
+				error("Unexpected number literal.");
 			}
 		}
 		
-		addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+		String text = source.text(start, current);
+		double value = Double.parseDouble(text);
+		if (buffer != null) {
+			buffer.add(NUMBER, start, current - start, line, buffer.addNumber(value));
+		} else {
+			add(new Token(NUMBER, text, value, line, lines, column()));
+		}
 	}
 	
 	private char advance() {
 		current++;
-		currentColumn++;
 		return source.charAt(current - 1);
 	}
 	
-	private String scanWholeLine() {
-		int myCurrent = current;
-		String myCurrentLine = "";
-		while(myCurrent < source.length()) {
-			if(source.charAt(myCurrent) == '\n') break;
-			
-			myCurrentLine += source.charAt(myCurrent);
-			myCurrent++;
-		}
-		return myCurrentLine;
+	// Called once the newline itself has been consumed
+	private void newLine() {
+		line++;
+		lineStart = current;
+		lines.add(current);
+	}
+	
+	// The column of the last character consumed, which is where errors point
+	private int column() {
+		return source.column(lineStart, current - 1);
+	}
+	
+	private void error(String message) {
+		Dymond.error(line, message, lines.lineText(line), column());
 	}
 	
 	private char peek() {
-		if(isAtEnd()) return '\0';
 		return source.charAt(current);
 	}
 	
 	private char peekNext() {
-		if(current + 1 >= source.length()) return '\0';
 		return source.charAt(current + 1);
 	}
 	
 	private char peekNextNext() {
-		if(current + 2 >= source.length()) return '\0';
 		return source.charAt(current + 2);
 	}
 	
 	private void addToken(TokenType type) {
-		addToken(type, null);
+		addToken(type, symbols.intern(source, start, current), null);
 	}
 	
 	private boolean match(char expected) {
@@ -283,14 +315,26 @@ public class Scanner {
 		if(source.charAt(current) != expected) return false;
 		
 		current++;
-		currentLine += source.charAt(current - 1);
-		currentColumn++;
 		return true;
 	}
 	
-	private void addToken(TokenType type, Object literal) {
-		String text = source.substring(start, current);
-		tokens.add(new Token(type, text, literal, line, currentLine, currentColumn));
+	// The symbol is the lexeme's, or for a string the one of its contents
+	private void addToken(TokenType type, int symbol, Object literal) {
+		if (buffer != null) {
+			buffer.add(type, start, current - start, line, symbol);
+		} else {
+			String lexeme = type == STRING ? source.text(start, current) : symbols.name(symbol);
+			add(new Token(type, lexeme, literal, line, lines, column()));
+		}
+	}
+	
+	private void add(Token token) {
+		tokensAdded++;
+		if (stream != null) {
+			stream.add(token);
+		} else {
+			tokens.add(token);
+		}
 	}
 	
 	private boolean isDigit(char c) {
@@ -308,6 +352,6 @@ public class Scanner {
 	}
 	
 	private boolean isAtEnd() {
-		return current >= source.length();
+		return !source.has(current);
 	}
 }
@@ -0,0 +1,678 @@
+package dymond;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// The resolved program of a script, kept next to it in a .dyc file so running the same script
+// again skips scanning, parsing and resolving. The file is only used when it was written for
+// exactly this source, by this build of the interpreter. It holds the Optimizer's output, which
+// both engines run, so --no-optimize neither reads nor writes it.
+//
+// The tree is stored with the depths, slots and frameless flags the Resolver gave it. Every
+// string it uses is written once up front, so tokens that share a name share its String again.
+final class ScriptCache {
+	private static final int MAGIC = 0x44594321;
+	private static final int HASH_SIZE = 32;
+
+	// A hash of every class in the build that is running, so a cache written by any other build
+	// is stale however little changed in the Parser, the Resolver, the Optimizer or the format
+	private static byte[] build;
+
+	private final Path cachePath;
+	private final Source source;
+	private final byte[] hash;
+
+	ScriptCache(Path path) throws IOException {
+		String name = path.getFileName().toString();
+		this.cachePath = path.resolveSibling(name.endsWith(".dy") ? name + "c" : name + ".dyc");
+		this.source = Source.map(path);
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(build());
+			source.digest(digest);
+			this.hash = digest.digest();
+		} catch (NoSuchAlgorithmException error) {
+			throw new IllegalStateException(error);
+		}
+	}
+
+	// The jar the interpreter was loaded from, or every class file under the directory it was
+	// compiled to. Loaded some other way there is no telling which build this is, and a random
+	// hash means nothing stored is ever trusted.
+	private static synchronized byte[] build() throws IOException, NoSuchAlgorithmException {
+		if (build != null) return build;
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		Path location = null;
+		try {
+			CodeSource code = ScriptCache.class.getProtectionDomain().getCodeSource();
+			if (code != null) location = Paths.get(code.getLocation().toURI());
+		} catch (URISyntaxException | IllegalArgumentException error) {
+			// Not a file, handled below
+		}
+
+		if (location != null && Files.isRegularFile(location)) {
+			try (FileChannel channel = FileChannel.open(location, StandardOpenOption.READ)) {
+				digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			}
+		} else if (location != null && Files.isDirectory(location)) {
+			List<Path> classes;
+			try (Stream<Path> files = Files.walk(location.resolve("dymond"))) {
+				classes = files.filter(file -> file.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+			}
+			for (Path file : classes) {
+				digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+				digest.update(Files.readAllBytes(file));
+			}
+		} else {
+			digest.update(UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+		}
+		build = digest.digest();
+		return build;
+	}
+
+	Source source() {
+		return source;
+	}
+
+	// The cached program, or null when there is none that fits the script
+	List<Stmt> load() {
+		ByteBuffer in;
+		try {
+			in = ByteBuffer.wrap(Files.readAllBytes(cachePath));
+		} catch (IOException error) {
+			return null;
+		}
+
+		try {
+			if (in.getInt() != MAGIC) return null;
+			byte[] stored = new byte[HASH_SIZE];
+			in.get(stored);
+			if (!Arrays.equals(stored, hash)) return null;
+
+			return new Reader(in, LineTable.unscanned(source)).statements();
+		} catch (RuntimeException error) {
+			// Cut short or otherwise damaged, it is written again after this run
+			return null;
+		}
+	}
+
+	// Written to a temporary file first, so a script started while another run is storing it
+	// never reads half a program
+	void store(List<Stmt> statements) {
+		Writer writer = new Writer();
+		writer.statements(statements);
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.write(hash);
+			out.write(writer.strings());
+			writer.body.writeTo(out);
+			out.flush();
+
+			Path temporary = cachePath.resolveSibling(cachePath.getFileName() + "." + ProcessHandle.current().pid() + ".tmp");
+			try {
+				Files.write(temporary, bytes.toByteArray());
+				Files.move(temporary, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temporary);
+			}
+		} catch (IOException error) {
+			// A directory we cannot write to only means the next run starts from the source again
+		}
+	}
+
+	// Tags, in the order of the visitor interfaces. 0 is a missing node.
+	private static final int ASSIGN = 1, BINARY = 2, CALL = 3, GET = 4, GROUPING = 5, LITERAL = 6,
+			LOGICAL = 7, SUBSCRIPT = 8, SET = 9, SUPER = 10, TERNARY = 11, THIS = 12, UNARY = 13,
+			UNARY_ASSIGN = 14, VARIABLE = 15;
+	private static final int BLOCK = 1, BREAK = 2, CLASS = 3, EXPRESSION = 4, FUNCTION = 5, IF = 6,
+			NEXT = 7, RETURN = 8, VAR = 9, WHILE = 10, FOR = 11;
+
+	// Values, for literals in tokens and in Expr.Literal
+	private static final int NULL = 0, NUMBER = 1, STRING = 2, TRUE = 3, FALSE = 4;
+
+	private static final class Writer implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+		final List<String> strings = new ArrayList<>();
+		private final Map<String, Integer> indices = new HashMap<>();
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(body);
+
+		// The strings the body refers to, in a buffer of their own to go ahead of it
+		byte[] strings() {
+			ByteArrayOutputStream table = new ByteArrayOutputStream();
+			DataOutputStream tableOut = new DataOutputStream(table);
+			integer(tableOut, strings.size());
+			try {
+				for (String string : strings) {
+					byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+					integer(tableOut, utf8.length);
+					tableOut.write(utf8);
+				}
+			} catch (IOException error) {
+				throw new UncheckedIOException(error);
+			}
+			return table.toByteArray();
+		}
+
+		void statements(List<? extends Stmt> statements) {
+			integer(statements.size());
+			for (Stmt statement : statements) stmt(statement);
+		}
+
+		private void stmt(Stmt stmt) {
+			if (stmt == null) {
+				tag(0);
+			} else {
+				stmt.accept(this);
+			}
+		}
+
+		private void exprs(List<? extends Expr> exprs) {
+			integer(exprs.size());
+			for (Expr expr : exprs) expr(expr);
+		}
+
+		// Every node carries what the Resolver gave it, which is nothing for most of them
+		private void expr(Expr expr) {
+			if (expr == null) {
+				tag(0);
+				return;
+			}
+			expr.accept(this);
+			integer(expr.depth);
+			integer(expr.slot);
+		}
+
+		private void token(Token token) {
+			if (token == null) {
+				tag(0);
+				return;
+			}
+			tag(token.type.ordinal() + 1);
+			string(token.lexeme);
+			value(token.literal);
+			integer(token.line);
+			integer(token.column);
+		}
+
+		private void value(Object value) {
+			if (value == null) {
+				tag(NULL);
+			} else if (value instanceof Double) {
+				tag(NUMBER);
+				try {
+					out.writeDouble((double)value);
+				} catch (IOException error) {
+					throw new UncheckedIOException(error);
+				}
+			} else if (value instanceof String) {
+				tag(STRING);
+				string((String)value);
+			} else {
+				tag((boolean)value ? TRUE : FALSE);
+			}
+		}
+
+		private void string(String string) {
+			Integer index = indices.get(string);
+			if (index == null) {
+				index = strings.size();
+				strings.add(string);
+				indices.put(string, index);
+			}
+			integer(index);
+		}
+
+		private void tag(int tag) {
+			try {
+				out.writeByte(tag);
+			} catch (IOException error) {
+				throw new UncheckedIOException(error);
+			}
+		}
+
+		private void integer(int value) {
+			integer(out, value);
+		}
+
+		// Seven bits to a byte, most of what goes in here is small. Nothing is below -1.
+		private static void integer(DataOutputStream out, int value) {
+			int bits = value + 1;
+			try {
+				while ((bits & ~0x7f) != 0) {
+					out.writeByte((bits & 0x7f) | 0x80);
+					bits >>>= 7;
+				}
+				out.writeByte(bits);
+			} catch (IOException error) {
+				throw new UncheckedIOException(error);
+			}
+		}
+
+		@Override
+		public Void visitAssignExpr(Expr.Assign expr) {
+			tag(ASSIGN);
+			token(expr.name);
+			expr(expr.value);
+			token(expr.operator);
+			return null;
+		}
+
+		@Override
+		public Void visitBinaryExpr(Expr.Binary expr) {
+			tag(BINARY);
+			expr(expr.left);
+			token(expr.operator);
+			expr(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitCallExpr(Expr.Call expr) {
+			tag(CALL);
+			expr(expr.callee);
+			token(expr.paren);
+			exprs(expr.arguments);
+			return null;
+		}
+
+		@Override
+		public Void visitGetExpr(Expr.Get expr) {
+			tag(GET);
+			expr(expr.object);
+			token(expr.name);
+			return null;
+		}
+
+		@Override
+		public Void visitGroupingExpr(Expr.Grouping expr) {
+			tag(GROUPING);
+			expr(expr.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitLiteralExpr(Expr.Literal expr) {
+			tag(LITERAL);
+			value(expr.value);
+			return null;
+		}
+
+		@Override
+		public Void visitLogicalExpr(Expr.Logical expr) {
+			tag(LOGICAL);
+			expr(expr.left);
+			token(expr.operator);
+			expr(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitSubscriptExpr(Expr.Subscript expr) {
+			tag(SUBSCRIPT);
+			expr(expr.left);
+			expr(expr.subNum);
+			token(expr.operator);
+			return null;
+		}
+
+		@Override
+		public Void visitSetExpr(Expr.Set expr) {
+			tag(SET);
+			expr(expr.object);
+			token(expr.name);
+			expr(expr.value);
+			token(expr.equals);
+			return null;
+		}
+
+		@Override
+		public Void visitSuperExpr(Expr.Super expr) {
+			tag(SUPER);
+			token(expr.keyword);
+			token(expr.method);
+			return null;
+		}
+
+		@Override
+		public Void visitTernaryExpr(Expr.Ternary expr) {
+			tag(TERNARY);
+			expr(expr.left);
+			expr(expr.right);
+			expr(expr.condition);
+			return null;
+		}
+
+		@Override
+		public Void visitThisExpr(Expr.This expr) {
+			tag(THIS);
+			token(expr.keyword);
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryExpr(Expr.Unary expr) {
+			tag(UNARY);
+			token(expr.operator);
+			expr(expr.right);
+			return null;
+		}
+
+		@Override
+		public Void visitUnaryAssignExpr(Expr.UnaryAssign expr) {
+			tag(UNARY_ASSIGN);
+			token(expr.name);
+			token(expr.operator);
+			return null;
+		}
+
+		@Override
+		public Void visitVariableExpr(Expr.Variable expr) {
+			tag(VARIABLE);
+			token(expr.name);
+			return null;
+		}
+
+		@Override
+		public Void visitBlockStmt(Stmt.Block stmt) {
+			tag(BLOCK);
+			tag(stmt.frameless ? 1 : 0);
+			statements(stmt.statements);
+			return null;
+		}
+
+		@Override
+		public Void visitBreakStmt(Stmt.Break stmt) {
+			tag(BREAK);
+			token(stmt.keyword);
+			return null;
+		}
+
+		@Override
+		public Void visitClassStmt(Stmt.Class stmt) {
+			tag(CLASS);
+			token(stmt.name);
+			statements(stmt.methods);
+			statements(stmt.staticMethods);
+			expr(stmt.superclass);
+			return null;
+		}
+
+		@Override
+		public Void visitExpressionStmt(Stmt.Expression stmt) {
+			tag(EXPRESSION);
+			expr(stmt.expression);
+			return null;
+		}
+
+		@Override
+		public Void visitFunctionStmt(Stmt.Function stmt) {
+			tag(FUNCTION);
+			token(stmt.name);
+			exprs(stmt.parameters);
+			statements(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitIfStmt(Stmt.If stmt) {
+			tag(IF);
+			expr(stmt.condition);
+			stmt(stmt.thenBranch);
+			stmt(stmt.elseBranch);
+			return null;
+		}
+
+		@Override
+		public Void visitNextStmt(Stmt.Next stmt) {
+			tag(NEXT);
+			token(stmt.keyword);
+			return null;
+		}
+
+		@Override
+		public Void visitReturnStmt(Stmt.Return stmt) {
+			tag(RETURN);
+			token(stmt.keyword);
+			expr(stmt.value);
+			return null;
+		}
+
+		@Override
+		public Void visitVarStmt(Stmt.Var stmt) {
+			tag(VAR);
+			token(stmt.name);
+			expr(stmt.initializer);
+			return null;
+		}
+
+		@Override
+		public Void visitWhileStmt(Stmt.While stmt) {
+			tag(WHILE);
+			expr(stmt.condition);
+			stmt(stmt.body);
+			return null;
+		}
+
+		@Override
+		public Void visitForStmt(Stmt.For stmt) {
+			tag(FOR);
+			expr(stmt.condition);
+			stmt(stmt.body);
+			stmt(stmt.increment);
+			return null;
+		}
+	}
+
+	private static final class Reader {
+		private static final TokenType[] TYPES = TokenType.values();
+
+		private final ByteBuffer in;
+		private final LineTable lines;
+		private final String[] strings;
+
+		Reader(ByteBuffer in, LineTable lines) {
+			this.in = in;
+			this.lines = lines;
+			this.strings = new String[integer()];
+			for (int i = 0; i < strings.length; i++) {
+				byte[] utf8 = new byte[integer()];
+				in.get(utf8);
+				strings[i] = new String(utf8, StandardCharsets.UTF_8);
+			}
+		}
+
+		List<Stmt> statements() {
+			int size = integer();
+			List<Stmt> statements = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) statements.add(stmt());
+			return statements;
+		}
+
+		@SuppressWarnings("unchecked")
+		private <T> List<T> list(List<?> nodes) {
+			return (List<T>)nodes;
+		}
+
+		private List<Expr> exprs() {
+			int size = integer();
+			List<Expr> exprs = new ArrayList<>(size);
+			for (int i = 0; i < size; i++) exprs.add(expr());
+			return exprs;
+		}
+
+		private Stmt stmt() {
+			switch (in.get()) {
+				case 0: return null;
+				case BLOCK: {
+					boolean frameless = in.get() == 1;
+					Stmt block = new Stmt.Block(statements());
+					block.frameless = frameless;
+					return block;
+				}
+				case BREAK: return new Stmt.Break(token());
+				case CLASS: {
+					Token name = token();
+					List<Stmt.Function> methods = list(statements());
+					List<Stmt.Function> staticMethods = list(statements());
+					return new Stmt.Class(name, methods, staticMethods, (Expr.Variable)expr());
+				}
+				case EXPRESSION: return new Stmt.Expression(expr());
+				case FUNCTION: {
+					Token name = token();
+					List<Expr.Assign> parameters = list(exprs());
+					return new Stmt.Function(name, parameters, statements());
+				}
+				case IF: {
+					Expr condition = expr();
+					Stmt thenBranch = stmt();
+					return new Stmt.If(condition, thenBranch, stmt());
+				}
+				case NEXT: return new Stmt.Next(token());
+				case RETURN: {
+					Token keyword = token();
+					return new Stmt.Return(keyword, expr());
+				}
+				case VAR: {
+					Token name = token();
+					return new Stmt.Var(name, expr());
+				}
+				case WHILE: {
+					Expr condition = expr();
+					return new Stmt.While(condition, stmt());
+				}
+				case FOR: {
+					Expr condition = expr();
+					Stmt body = stmt();
+					return new Stmt.For(condition, body, stmt());
+				}
+			}
+			throw new IllegalArgumentException("Unknown statement.");
+		}
+
+		private Expr expr() {
+			Expr expr = node();
+			if (expr == null) return null;
+			expr.depth = integer();
+			expr.slot = integer();
+			return expr;
+		}
+
+		private Expr node() {
+			switch (in.get()) {
+				case 0: return null;
+				case ASSIGN: {
+					Token name = token();
+					Expr value = expr();
+					return new Expr.Assign(name, value, token());
+				}
+				case BINARY: {
+					Expr left = expr();
+					Token operator = token();
+					return new Expr.Binary(left, operator, expr());
+				}
+				case CALL: {
+					Expr callee = expr();
+					Token paren = token();
+					return new Expr.Call(callee, paren, exprs());
+				}
+				case GET: {
+					Expr object = expr();
+					return new Expr.Get(object, token());
+				}
+				case GROUPING: return new Expr.Grouping(expr());
+				case LITERAL: return new Expr.Literal(value());
+				case LOGICAL: {
+					Expr left = expr();
+					Token operator = token();
+					return new Expr.Logical(left, operator, expr());
+				}
+				case SUBSCRIPT: {
+					Expr left = expr();
+					Expr subNum = expr();
+					return new Expr.Subscript(left, subNum, token());
+				}
+				case SET: {
+					Expr object = expr();
+					Token name = token();
+					Expr value = expr();
+					return new Expr.Set(object, name, value, token());
+				}
+				case SUPER: {
+					Token keyword = token();
+					return new Expr.Super(keyword, token());
+				}
+				case TERNARY: {
+					Expr left = expr();
+					Expr right = expr();
+					return new Expr.Ternary(left, right, expr());
+				}
+				case THIS: return new Expr.This(token());
+				case UNARY: {
+					Token operator = token();
+					return new Expr.Unary(operator, expr());
+				}
+				case UNARY_ASSIGN: {
+					Token name = token();
+					return new Expr.UnaryAssign(name, token());
+				}
+				case VARIABLE: return new Expr.Variable(token());
+			}
+			throw new IllegalArgumentException("Unknown expression.");
+		}
+
+		private int integer() {
+			int bits = 0;
+			for (int shift = 0; ; shift += 7) {
+				byte next = in.get();
+				bits |= (next & 0x7f) << shift;
+				if (next >= 0) return bits - 1;
+			}
+		}
+
+		private Token token() {
+			int type = in.get();
+			if (type == 0) return null;
+			String lexeme = strings[integer()];
+			Object literal = value();
+			int line = integer();
+			return new Token(TYPES[type - 1], lexeme, literal, line, lines, integer());
+		}
+
+		private Object value() {
+			switch (in.get()) {
+				case NULL: return null;
+				case NUMBER: return in.getDouble();
+				case STRING: return strings[integer()];
+				case TRUE: return true;
+				case FALSE: return false;
+			}
+			throw new IllegalArgumentException("Unknown value.");
+		}
+	}
+}
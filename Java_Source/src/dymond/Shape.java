@@ -0,0 +1,43 @@
+package dymond;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The layout of an instance's fields: which index of its values array each name lives at.
+// Adding a field moves an instance to a child shape, and the same sequence of additions
+// always ends on the same shape, so instances that are initialised alike share one.
+final class Shape {
+	private final Map<String, Integer> indices;
+	final int size;
+	private Map<String, Shape> transitions;
+	
+	Shape() {
+		this.indices = new HashMap<>();
+		this.size = 0;
+	}
+	
+	private Shape(Shape parent, String name) {
+		this.indices = new HashMap<>(parent.indices);
+		this.indices.put(name, parent.size);
+		this.size = parent.size + 1;
+	}
+	
+	int indexOf(String name) {
+		Integer index = indices.get(name);
+		return index == null ? -1 : index;
+	}
+	
+	Shape with(String name) {
+		if (transitions == null) transitions = new HashMap<>();
+		Shape next = transitions.get(name);
+		if (next == null) {
+			next = new Shape(this, name);
+			transitions.put(name, next);
+		}
+		return next;
+	}
+	
+	Map<String, Integer> indices() {
+		return indices;
+	}
+}
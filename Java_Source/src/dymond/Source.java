@@ -0,0 +1,197 @@
+package dymond;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+// The text a Scanner reads. It is either a String already in memory, characters pulled from a
+// Reader as scanning reaches them, or a memory-mapped file the Scanner reads byte by byte.
+public abstract class Source {
+	// Whether there is a character at index, reading more input if that is what it takes
+	abstract boolean has(int index);
+
+	// The character at index, or '\0' past the end
+	abstract char charAt(int index);
+
+	abstract String text(int start, int end);
+
+	int lineEnd(int start) {
+		int end = start;
+		while (has(end) && charAt(end) != '\n') end++;
+		return end;
+	}
+
+	// How many characters of the line starting at lineStart come before index, where a caret
+	// under lineText has to go
+	int column(int lineStart, int index) {
+		return index - lineStart;
+	}
+
+	public static Source of(String text) {
+		return new StringSource(text);
+	}
+
+	public static Source of(Reader reader) {
+		return new ReaderSource(reader);
+	}
+
+	// The mapping stays alive as long as tokens that point into it, which is what lets errors
+	// quote a line long after scanning without the file being held on the heap
+	public static Source map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	// Feeds the source to digest as UTF-8, for ScriptCache
+	void digest(MessageDigest digest) {
+		int end = 0;
+		while (has(end)) end++;
+		digest.update(text(0, end).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static final class StringSource extends Source {
+		private final String text;
+
+		StringSource(String text) {
+			this.text = text;
+		}
+
+		@Override
+		boolean has(int index) {
+			return index < text.length();
+		}
+
+		@Override
+		char charAt(int index) {
+			if (index >= text.length()) return '\0';
+			return text.charAt(index);
+		}
+
+		@Override
+		String text(int start, int end) {
+			return text.substring(start, end);
+		}
+
+		@Override
+		int lineEnd(int start) {
+			int end = text.indexOf('\n', start);
+			return end < 0 ? text.length() : end;
+		}
+	}
+
+	// Keeps what it has read, error messages may still need any line of it
+	private static final class ReaderSource extends Source {
+		private static final int CHUNK = 8192;
+
+		private final Reader reader;
+		private char[] chars = new char[CHUNK];
+		private int length = 0;
+		private boolean finished = false;
+
+		ReaderSource(Reader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		boolean has(int index) {
+			while (index >= length && !finished) fill();
+			return index < length;
+		}
+
+		@Override
+		char charAt(int index) {
+			if (!has(index)) return '\0';
+			return chars[index];
+		}
+
+		@Override
+		String text(int start, int end) {
+			return new String(chars, start, end - start);
+		}
+
+		private void fill() {
+			if (length == chars.length) chars = Arrays.copyOf(chars, length * 2);
+			try {
+				int read = reader.read(chars, length, chars.length - length);
+				if (read < 0) {
+					finished = true;
+					reader.close();
+				} else {
+					length += read;
+				}
+			} catch (IOException error) {
+				throw new UncheckedIOException(error);
+			}
+		}
+	}
+
+	// Every character the language gives meaning to is ASCII, so the file is scanned a byte at
+	// a time and only the text of lexemes and string literals is decoded as UTF-8. Indexes are
+	// byte offsets, which is why columns are counted separately.
+	private static final class MappedSource extends Source {
+		private final ByteBuffer bytes;
+		// Tokens ask for columns in order along a line, so counting carries on from the last one
+		private int countedLine = -1;
+		private int counted;
+		private int column;
+
+		MappedSource(MappedByteBuffer bytes) {
+			this.bytes = bytes;
+		}
+
+		@Override
+		boolean has(int index) {
+			return index < bytes.limit();
+		}
+
+		@Override
+		char charAt(int index) {
+			if (index >= bytes.limit()) return '\0';
+			return (char)(bytes.get(index) & 0xff);
+		}
+
+		@Override
+		String text(int start, int end) {
+			byte[] text = new byte[end - start];
+			bytes.get(start, text);
+			return new String(text, StandardCharsets.UTF_8);
+		}
+
+		// Counts the chars the bytes decode to, one for each byte that starts a character and
+		// two for one that starts a four byte character, which decodes to a surrogate pair
+		@Override
+		int column(int lineStart, int index) {
+			while (index > lineStart && index < bytes.limit() && isContinuation(bytes.get(index))) index--;
+			if (lineStart != countedLine || index < counted) {
+				countedLine = lineStart;
+				counted = lineStart;
+				column = 0;
+			}
+			for (; counted < index; counted++) {
+				byte b = bytes.get(counted);
+				if (!isContinuation(b)) column++;
+				if ((b & 0xf8) == 0xf0) column++;
+			}
+			return column;
+		}
+
+		private static boolean isContinuation(byte b) {
+			return (b & 0xc0) == 0x80;
+		}
+		
+		// The file's bytes already are its UTF-8
+		@Override
+		void digest(MessageDigest digest) {
+			digest.update(bytes.duplicate());
+		}
+	}
+}
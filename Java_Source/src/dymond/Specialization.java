@@ -0,0 +1,109 @@
+package dymond;
+
+// The states an Expr node can rewrite itself into. A node starts UNINITIALIZED, picks a
+// specialization from the operands it sees the first time it runs, and falls back to
+// GENERIC for good as soon as a guard fails so it never flips back and forth.
+final class Specialization {
+	static final int UNINITIALIZED = 0;
+	static final int GENERIC = 1;
+
+	// Operators whose operands have always been numbers. Everything from ADD_DOUBLES to
+	// MODULO_ASSIGN_DOUBLES produces a double the Interpreter can keep unboxed.
+	static final int ADD_DOUBLES = 2;
+	static final int SUBTRACT_DOUBLES = 3;
+	static final int MULTIPLY_DOUBLES = 4;
+	static final int DIVIDE_DOUBLES = 5;
+	static final int MODULO_DOUBLES = 6;
+	static final int NEGATE_DOUBLE = 7;
+	static final int INCREMENT_DOUBLE = 8;
+	static final int DECREMENT_DOUBLE = 9;
+	static final int ASSIGN_DOUBLE = 10;
+	static final int ADD_ASSIGN_DOUBLES = 11;
+	static final int SUBTRACT_ASSIGN_DOUBLES = 12;
+	static final int MULTIPLY_ASSIGN_DOUBLES = 13;
+	static final int MODULO_ASSIGN_DOUBLES = 14;
+	
+	static final int LESS_DOUBLES = 15;
+	static final int LESS_EQUAL_DOUBLES = 16;
+	static final int GREATER_DOUBLES = 17;
+	static final int GREATER_EQUAL_DOUBLES = 18;
+	static final int EQUAL_DOUBLES = 19;
+	static final int NOT_EQUAL_DOUBLES = 20;
+
+	// '+' whose operands have always been strings
+	static final int CONCAT_STRINGS = 21;
+
+	// Local reads whose distance is known, so no walk up the enclosing chain is needed
+	static final int LOCAL_FRAME = 22;
+	static final int LOCAL_ENCLOSING = 23;
+	static final int LOCAL_AT = 24;
+	static final int GLOBAL = 25;
+
+	private Specialization() {}
+
+	static int binary(Token operator, Object left, Object right) {
+		if (left instanceof Double && right instanceof Double) {
+			switch (operator.type) {
+				case PLUS: return ADD_DOUBLES;
+				case MINUS: return SUBTRACT_DOUBLES;
+				case STAR: return MULTIPLY_DOUBLES;
+				case DIV: return DIVIDE_DOUBLES;
+				case MODULO: return MODULO_DOUBLES;
+				case LESS: return LESS_DOUBLES;
+				case LESS_EQUAL: return LESS_EQUAL_DOUBLES;
+				case GREATER: return GREATER_DOUBLES;
+				case GREATER_EQUAL: return GREATER_EQUAL_DOUBLES;
+				case EQUAL_EQUAL: return EQUAL_DOUBLES;
+				case BANG_EQUAL: return NOT_EQUAL_DOUBLES;
+				default: return GENERIC;
+			}
+		}
+
+		if (left instanceof String && right instanceof String && operator.type == TokenType.PLUS) {
+			return CONCAT_STRINGS;
+		}
+
+		return GENERIC;
+	}
+
+	static boolean producesDouble(int state) {
+		return state >= ADD_DOUBLES && state <= MODULO_ASSIGN_DOUBLES;
+	}
+
+	static boolean comparesDoubles(int state) {
+		return state >= LESS_DOUBLES && state <= NOT_EQUAL_DOUBLES;
+	}
+
+	static int assign(Expr.Assign expr, Object left, Object right) {
+		if (expr.depth < 0 || !(right instanceof Double)) return GENERIC;
+		if (expr.operator.type == TokenType.EQUAL) return ASSIGN_DOUBLE;
+		if (!(left instanceof Double)) return GENERIC;
+
+		switch (expr.operator.type) {
+			case PLUS_EQUAL: return ADD_ASSIGN_DOUBLES;
+			case MINUS_EQUAL: return SUBTRACT_ASSIGN_DOUBLES;
+			case TIMES_EQUAL: return MULTIPLY_ASSIGN_DOUBLES;
+			case MODULO_EQUAL: return MODULO_ASSIGN_DOUBLES;
+			default: return GENERIC;
+		}
+	}
+
+	static int unary(Token operator, Object right) {
+		if (operator.type == TokenType.MINUS && right instanceof Double) return NEGATE_DOUBLE;
+		return GENERIC;
+	}
+
+	static int unaryAssign(Expr.UnaryAssign expr, Object value) {
+		if (expr.depth < 0 || !(value instanceof Double)) return GENERIC;
+		if (expr.operator.type == TokenType.PLUS_PLUS) return INCREMENT_DOUBLE;
+		if (expr.operator.type == TokenType.MINUS_MINUS) return DECREMENT_DOUBLE;
+		return GENERIC;
+	}
+
+	static int variable(Expr expr) {
+		if (expr.depth == 0) return LOCAL_FRAME;
+		if (expr.depth == 1) return LOCAL_ENCLOSING;
+		if (expr.depth > 1) return LOCAL_AT;
+		return GLOBAL;
+	}
+}
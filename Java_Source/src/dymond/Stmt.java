@@ -16,7 +16,10 @@ public abstract class Stmt{
 		R visitForStmt(For stmt);
 	}
 
-	abstract <R> R accept(Visitor<R> visitor);
+	public abstract <R> R accept(Visitor<R> visitor);
+
+	// Set by the Resolver on blocks that declare nothing, they run in the enclosing frame
+	boolean frameless = false;
 
 	public static class Block extends Stmt{
 		public Block(List<Stmt> statements) {
@@ -0,0 +1,80 @@
+package dymond;
+
+import java.util.Arrays;
+
+// Interns lexemes straight out of the source, so a name that appears many times is one
+// String and looking it up again allocates nothing.
+final class SymbolTable {
+	private String[] names = new String[256];
+	private int count = 0;
+	// Open addressing over ids into names, -1 marks an empty bucket
+	private int[] buckets = newBuckets(512);
+	
+	private static int[] newBuckets(int size) {
+		int[] buckets = new int[size];
+		Arrays.fill(buckets, -1);
+		return buckets;
+	}
+	
+	int intern(Source source, int start, int end) {
+		int length = end - start;
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			char c = source.charAt(i);
+			// A mapped source hands out bytes, which only match the String for ASCII
+			if (c >= 0x80) return intern(source.text(start, end));
+			hash = 31 * hash + c;
+		}
+		
+		int mask = buckets.length - 1;
+		for (int bucket = hash & mask; ; bucket = (bucket + 1) & mask) {
+			int id = buckets[bucket];
+			if (id < 0) {
+				return add(source.text(start, end), bucket);
+			}
+			String name = names[id];
+			if (name.length() == length && name.hashCode() == hash && matches(name, source, start)) {
+				return id;
+			}
+		}
+	}
+	
+	// Text that is not all ASCII is rare enough to decode before looking it up
+	private int intern(String text) {
+		int mask = buckets.length - 1;
+		for (int bucket = text.hashCode() & mask; ; bucket = (bucket + 1) & mask) {
+			int id = buckets[bucket];
+			if (id < 0) return add(text, bucket);
+			if (names[id].equals(text)) return id;
+		}
+	}
+	
+	private static boolean matches(String name, Source source, int start) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != source.charAt(start + i)) return false;
+		}
+		return true;
+	}
+	
+	String name(int id) {
+		return names[id];
+	}
+	
+	private int add(String name, int bucket) {
+		if (count == names.length) names = Arrays.copyOf(names, count * 2);
+		names[count] = name;
+		buckets[bucket] = count;
+		
+		// Kept at most half full
+		if (++count * 2 > buckets.length) {
+			buckets = newBuckets(buckets.length * 2);
+			int mask = buckets.length - 1;
+			for (int id = 0; id < count; id++) {
+				int slot = names[id].hashCode() & mask;
+				while (buckets[slot] >= 0) slot = (slot + 1) & mask;
+				buckets[slot] = id;
+			}
+		}
+		return count - 1;
+	}
+}
@@ -6,13 +6,26 @@ public class Token {
 	public final Object literal;
 	public final int line;
 	public final int column;
-	public final String lineText;
+	// Scanned tokens find their line through lines, tokens made any other way carry the text
+	private final LineTable lines;
+	private final String lineText;
+	
+	public Token(TokenType type, String lexeme, Object literal, int line, LineTable lines, int column) {
+		this.type = type;
+		this.lexeme = lexeme;
+		this.literal = literal;
+		this.line = line;
+		this.lines = lines;
+		this.lineText = null;
+		this.column = column;
+	}
 	
 	public Token(TokenType type, String lexeme, Object literal, int line, String lineText, int column) {
 		this.type = type;
 		this.lexeme = lexeme;
 		this.literal = literal;
 		this.line = line;
+		this.lines = null;
 		this.lineText = lineText;
 		this.column = column;
 	}
@@ -23,9 +36,16 @@ public class Token {
 		this.literal = literal;
 		this.line = line;
 		this.column = -1;
+		this.lines = null;
 		this.lineText = "";
 	}
 	
+	// The whole source line the token is on, for error messages
+	public String lineText() {
+		if (lines != null) return lines.lineText(line);
+		return lineText;
+	}
+	
 	public String toString() {
 		return type + " " + lexeme + " " + literal;
 	}
@@ -0,0 +1,87 @@
+package dymond;
+
+import java.util.Arrays;
+
+// Scanned tokens kept as parallel arrays instead of one Token object each. Names are ids into
+// a SymbolTable and number literals sit unboxed in numbers, the Parser only makes a Token for
+// the ones it keeps in the tree or reports an error at.
+public final class TokenBuffer implements TokenSource {
+	private static final TokenType[] TYPES = TokenType.values();
+	
+	private final Source source;
+	private final LineTable lines;
+	private final SymbolTable symbols;
+	private int count = 0;
+	private byte[] types = new byte[1024];
+	private int[] starts = new int[1024];
+	private int[] lengths = new int[1024];
+	private int[] lineNumbers = new int[1024];
+	// The index of a NUMBER's value in numbers, the symbol of a STRING's contents, and the
+	// symbol of the lexeme for everything else
+	private int[] values = new int[1024];
+	private double[] numbers = new double[256];
+	private int numberCount = 0;
+	
+	TokenBuffer(Source source, LineTable lines, SymbolTable symbols) {
+		this.source = source;
+		this.lines = lines;
+		this.symbols = symbols;
+	}
+	
+	void add(TokenType type, int start, int length, int line, int value) {
+		if (count == types.length) {
+			int size = count * 2;
+			types = Arrays.copyOf(types, size);
+			starts = Arrays.copyOf(starts, size);
+			lengths = Arrays.copyOf(lengths, size);
+			lineNumbers = Arrays.copyOf(lineNumbers, size);
+			values = Arrays.copyOf(values, size);
+		}
+		types[count] = (byte)type.ordinal();
+		starts[count] = start;
+		lengths[count] = length;
+		lineNumbers[count] = line;
+		values[count] = value;
+		count++;
+	}
+	
+	int addNumber(double value) {
+		if (numberCount == numbers.length) numbers = Arrays.copyOf(numbers, numberCount * 2);
+		numbers[numberCount] = value;
+		return numberCount++;
+	}
+	
+	public int size() {
+		return count;
+	}
+	
+	@Override
+	public TokenType type(int index) {
+		return TYPES[types[index]];
+	}
+	
+	@Override
+	public Token token(int index) {
+		TokenType type = type(index);
+		int line = lineNumbers[index];
+		if (type == TokenType.EOF) return new Token(type, "", null, line, "", -1);
+		
+		int start = starts[index];
+		int end = start + lengths[index];
+		String lexeme;
+		Object literal = null;
+		if (type == TokenType.NUMBER) {
+			lexeme = source.text(start, end);
+			literal = numbers[values[index]];
+		} else if (type == TokenType.STRING) {
+			lexeme = source.text(start, end);
+			literal = symbols.name(values[index]);
+		} else {
+			lexeme = symbols.name(values[index]);
+		}
+		
+		// Errors point at the token's last character, on the line the token ends on
+		int column = source.column(lines.start(line), end - 1);
+		return new Token(type, lexeme, literal, line, lines, column);
+	}
+}
@@ -0,0 +1,23 @@
+package dymond;
+
+import java.util.List;
+
+// Tokens by index, the way the Parser reads them
+public interface TokenSource {
+	TokenType type(int index);
+	Token token(int index);
+	
+	static TokenSource of(List<Token> tokens) {
+		return new TokenSource() {
+			@Override
+			public TokenType type(int index) {
+				return tokens.get(index).type;
+			}
+			
+			@Override
+			public Token token(int index) {
+				return tokens.get(index);
+			}
+		};
+	}
+}
@@ -0,0 +1,31 @@
+package dymond;
+
+// Tokens scanned only when the Parser asks for them. The Parser never looks further back than
+// the previous token, so only the last few are kept and scanning overlaps parsing.
+public final class TokenStream implements TokenSource {
+	private static final int WINDOW = 4;
+	
+	private final Scanner scanner;
+	private final Token[] window = new Token[WINDOW];
+	private int count = 0;
+	
+	TokenStream(Scanner scanner) {
+		this.scanner = scanner;
+	}
+	
+	void add(Token token) {
+		window[count % WINDOW] = token;
+		count++;
+	}
+	
+	@Override
+	public TokenType type(int index) {
+		return token(index).type;
+	}
+	
+	@Override
+	public Token token(int index) {
+		while (count <= index) scanner.scanNext();
+		return window[index % WINDOW];
+	}
+}
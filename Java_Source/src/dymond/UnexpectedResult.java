@@ -0,0 +1,13 @@
+package dymond;
+
+// Thrown by the unboxed evaluation paths when a value turns out not to be a number.
+// It carries the value that was produced so the caller can carry on with the boxed path.
+public class UnexpectedResult extends RuntimeException {
+	final Object value;
+	
+	public UnexpectedResult(Object value) {
+		super(null, null, false, false);
+		DymondRuntime.controlFlowException();
+		this.value = value;
+	}
+}
@@ -0,0 +1,161 @@
+package dymond.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of a class file writer to emit the classes the tiered compiler needs.
+// Classes are written as version 49 so the verifier infers types itself and no
+// StackMapTable has to be computed.
+public class ClassFile {
+	public static final int ACC_PUBLIC = 0x0001;
+	public static final int ACC_STATIC = 0x0008;
+	public static final int ACC_FINAL = 0x0010;
+	public static final int ACC_SUPER = 0x0020;
+
+	private static final int VERSION = 49;
+
+	private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+	private final DataOutputStream poolOut = new DataOutputStream(pool);
+	private final Map<String, Integer> entries = new HashMap<>();
+	private int poolCount = 1;
+
+	private final int thisClass;
+	private final int superClass;
+	private final int[] interfaces;
+	private final List<byte[]> fields = new ArrayList<>();
+	private final List<Code> methods = new ArrayList<>();
+
+	public ClassFile(String name, String superName, String... interfaceNames) {
+		thisClass = classRef(name);
+		superClass = classRef(superName);
+		interfaces = new int[interfaceNames.length];
+		for (int i = 0; i < interfaceNames.length; i++) {
+			interfaces[i] = classRef(interfaceNames[i]);
+		}
+	}
+
+	public int utf8(String value) {
+		return entry("U" + value, 1, out -> out.writeUTF(value));
+	}
+
+	public int classRef(String name) {
+		int nameIndex = utf8(name);
+		return entry("C" + name, 7, out -> out.writeShort(nameIndex));
+	}
+
+	public int string(String value) {
+		int valueIndex = utf8(value);
+		return entry("S" + value, 8, out -> out.writeShort(valueIndex));
+	}
+
+	public int integer(int value) {
+		return entry("I" + value, 3, out -> out.writeInt(value));
+	}
+
+	// Doubles take two entries of the pool, the second one unused
+	public int doubleConstant(double value) {
+		int index = entry("D" + Double.doubleToRawLongBits(value), 6, out -> out.writeDouble(value));
+		if (index == poolCount - 1) poolCount++;
+		return index;
+	}
+
+	public int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(9, owner, name, descriptor);
+	}
+
+	public int methodRef(String owner, String name, String descriptor) {
+		return memberRef(10, owner, name, descriptor);
+	}
+
+	public int interfaceMethodRef(String owner, String name, String descriptor) {
+		return memberRef(11, owner, name, descriptor);
+	}
+
+	public void field(int access, String name, String descriptor) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(descriptor));
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		fields.add(bytes.toByteArray());
+	}
+
+	public Code method(int access, String name, String descriptor) {
+		Code code = new Code(this, access, utf8(name), utf8(descriptor), descriptor, (access & ACC_STATIC) != 0);
+		methods.add(code);
+		return code;
+	}
+
+	public byte[] toByteArray() {
+		int codeAttribute = utf8("Code");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			out.write(pool.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(interfaces.length);
+			for (int index : interfaces) out.writeShort(index);
+
+			out.writeShort(fields.size());
+			for (byte[] field : fields) out.write(field);
+
+			out.writeShort(methods.size());
+			for (Code method : methods) method.write(out, codeAttribute);
+
+			out.writeShort(0);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		int classIndex = classRef(owner);
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		int nameAndType = entry("N" + name + ":" + descriptor, 12, out -> {
+			out.writeShort(nameIndex);
+			out.writeShort(descriptorIndex);
+		});
+		return entry(tag + owner + "." + name + ":" + descriptor, tag, out -> {
+			out.writeShort(classIndex);
+			out.writeShort(nameAndType);
+		});
+	}
+
+	private interface EntryWriter {
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private int entry(String key, int tag, EntryWriter writer) {
+		Integer existing = entries.get(key);
+		if (existing != null) return existing;
+
+		try {
+			poolOut.writeByte(tag);
+			writer.write(poolOut);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		if (poolCount > 0xffff) throw new IllegalStateException("Constant pool overflow.");
+		entries.put(key, poolCount);
+		return poolCount++;
+	}
+}
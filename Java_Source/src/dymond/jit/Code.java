@@ -0,0 +1,294 @@
+package dymond.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// The body of a single method. Tracks the operand stack depth as instructions are
+// added so max_stack and max_locals never have to be worked out by hand.
+public class Code {
+	public static final int IFEQ = 0x99;
+	public static final int IFNE = 0x9a;
+	public static final int IFLT = 0x9b;
+	public static final int IFGE = 0x9c;
+	public static final int IFGT = 0x9d;
+	public static final int IFLE = 0x9e;
+	public static final int IFNULL = 0xc6;
+	public static final int IFNONNULL = 0xc7;
+	public static final int GOTO = 0xa7;
+
+	public static class Label {
+		private int position = -1;
+		private int stack = -1;
+		private final List<Integer> fixups = new ArrayList<>();
+	}
+
+	private final ClassFile classFile;
+	private final int access;
+	private final int name;
+	private final int descriptor;
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final List<Label> labels = new ArrayList<>();
+	private final List<Object[]> handlers = new ArrayList<>();
+	private int stack = 0;
+	private int maxStack = 0;
+	private int maxLocals;
+	private byte[] code;
+
+	Code(ClassFile classFile, int access, int name, int descriptor, String signature, boolean isStatic) {
+		this.classFile = classFile;
+		this.access = access;
+		this.name = name;
+		this.descriptor = descriptor;
+		this.maxLocals = argumentSlots(signature) + (isStatic ? 0 : 1);
+	}
+
+	public int newLocal() {
+		return maxLocals++;
+	}
+
+	// A double takes two local slots
+	public int newDoubleLocal() {
+		int local = maxLocals;
+		maxLocals += 2;
+		return local;
+	}
+
+	// What the instructions so far leave on the operand stack, in slots
+	public int depth() {
+		return Math.max(stack, 0);
+	}
+
+	public void aload(int local) { local(0x19, 0x2a, local, 1); }
+	public void astore(int local) { local(0x3a, 0x4b, local, -1); }
+	public void dload(int local) { local(0x18, 0x26, local, 2); }
+	public void dstore(int local) { local(0x39, 0x47, local, -2); }
+
+	public void dconst(double value) {
+		if (Double.doubleToRawLongBits(value) == 0) {
+			op(0x0e, 2);
+		} else if (value == 1) {
+			op(0x0f, 2);
+		} else {
+			op(0x14, 2);
+			u2(classFile.doubleConstant(value));
+		}
+	}
+
+	public void iconst(int value) {
+		if (value >= -1 && value <= 5) {
+			op(0x03 + value, 1);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			op(0x10, 1, value);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			op(0x11, 1);
+			u2(value);
+		} else {
+			ldc(classFile.integer(value));
+		}
+	}
+
+	public void ldcString(String value) {
+		ldc(classFile.string(value));
+	}
+
+	public void ldcClass(String type) {
+		ldc(classFile.classRef(type));
+	}
+
+	public void aconstNull() { op(0x01, 1); }
+	public void pop() { op(0x57, -1); }
+	public void dup() { op(0x59, 1); }
+	public void swap() { op(0x5f, 0); }
+	public void aaload() { op(0x32, -1); }
+	public void aastore() { op(0x53, -3); }
+	public void dadd() { op(0x63, -2); }
+	public void dsub() { op(0x67, -2); }
+	public void dmul() { op(0x6b, -2); }
+	public void drem() { op(0x73, -2); }
+	public void dneg() { op(0x77, 0); }
+	// Both leave -1, 0 or 1, and tell NaN apart by which of -1 and 1 it gives
+	public void dcmpl() { op(0x97, -3); }
+	public void dcmpg() { op(0x98, -3); }
+	public void lcmp() { op(0x94, -3); }
+	public void areturn() { op(0xb0, -1); stack = -1; }
+	public void returnVoid() { op(0xb1, 0); }
+	public void athrow() { op(0xbf, -1); stack = -1; }
+
+	public void newObject(String type) {
+		op(0xbb, 1);
+		u2(classFile.classRef(type));
+	}
+
+	public void anewarray(String type) {
+		op(0xbd, 0);
+		u2(classFile.classRef(type));
+	}
+
+	public void checkcast(String type) {
+		op(0xc0, 0);
+		u2(classFile.classRef(type));
+	}
+
+	public void getstatic(String owner, String name, String descriptor) {
+		op(0xb2, 1);
+		u2(classFile.fieldRef(owner, name, descriptor));
+	}
+
+	public void putstatic(String owner, String name, String descriptor) {
+		op(0xb3, -1);
+		u2(classFile.fieldRef(owner, name, descriptor));
+	}
+
+	public void getfield(String owner, String name, String descriptor) {
+		op(0xb4, 0);
+		u2(classFile.fieldRef(owner, name, descriptor));
+	}
+
+	public void invokestatic(String owner, String name, String descriptor) {
+		op(0xb8, returnSlots(descriptor) - argumentSlots(descriptor));
+		u2(classFile.methodRef(owner, name, descriptor));
+	}
+
+	public void invokevirtual(String owner, String name, String descriptor) {
+		op(0xb6, returnSlots(descriptor) - argumentSlots(descriptor) - 1);
+		u2(classFile.methodRef(owner, name, descriptor));
+	}
+
+	public void invokespecial(String owner, String name, String descriptor) {
+		op(0xb7, returnSlots(descriptor) - argumentSlots(descriptor) - 1);
+		u2(classFile.methodRef(owner, name, descriptor));
+	}
+
+	public void jump(int opcode, Label label) {
+		op(opcode, opcode == GOTO ? 0 : -1);
+		if (label.stack == -1) label.stack = stack;
+		label.fixups.add(bytes.size() - 1);
+		u2(0);
+		if (opcode == GOTO) stack = -1;
+	}
+
+	// Starts a handler for exceptions of the given type thrown between start and end.
+	// The handler is entered with only the exception on the stack.
+	public void handler(Label start, Label end, String type) {
+		Label handler = newLabel();
+		handler.stack = 1;
+		stack = -1;
+		mark(handler);
+		handlers.add(new Object[] { start, end, handler, classFile.classRef(type) });
+	}
+
+	public void mark(Label label) {
+		label.position = bytes.size();
+		if (stack == -1) stack = label.stack;
+		else if (label.stack == -1) label.stack = stack;
+		if (stack == -1) stack = 0;
+	}
+
+	void write(DataOutputStream out, int codeAttribute) throws IOException {
+		finish();
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1);
+
+		out.writeShort(codeAttribute);
+		out.writeInt(12 + code.length + 8 * handlers.size());
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(handlers.size());
+		for (Object[] handler : handlers) {
+			out.writeShort(((Label)handler[0]).position);
+			out.writeShort(((Label)handler[1]).position);
+			out.writeShort(((Label)handler[2]).position);
+			out.writeShort((Integer)handler[3]);
+		}
+		out.writeShort(0);
+	}
+
+	private void finish() {
+		if (code != null) return;
+		code = bytes.toByteArray();
+		// Patch every branch now that all labels have a position
+		for (Label label : labels) {
+			for (int at : label.fixups) {
+				int offset = label.position - at;
+				if (offset > Short.MAX_VALUE || offset < Short.MIN_VALUE) {
+					throw new IllegalStateException("Branch offset out of range.");
+				}
+				code[at + 1] = (byte)(offset >> 8);
+				code[at + 2] = (byte)offset;
+			}
+		}
+		if (code.length > 0xffff) throw new IllegalStateException("Method too large.");
+	}
+
+	public Label newLabel() {
+		Label label = new Label();
+		labels.add(label);
+		return label;
+	}
+
+	private void ldc(int index) {
+		if (index <= 0xff) {
+			op(0x12, 1, index);
+		} else {
+			op(0x13, 1);
+			u2(index);
+		}
+	}
+
+	private void op(int opcode, int stackChange) {
+		bytes.write(opcode);
+		if (stack == -1) stack = 0;
+		stack += stackChange;
+		if (stack > maxStack) maxStack = stack;
+	}
+
+	// The short forms for locals 0 to 3, then the one byte index, then wide
+	private void local(int opcode, int shortOpcode, int local, int stackChange) {
+		if (local <= 3) {
+			op(shortOpcode + local, stackChange);
+		} else if (local <= 0xff) {
+			op(opcode, stackChange, local);
+		} else {
+			bytes.write(0xc4);
+			op(opcode, stackChange);
+			u2(local);
+		}
+	}
+
+	private void op(int opcode, int stackChange, int operand) {
+		op(opcode, stackChange);
+		bytes.write(operand);
+	}
+
+	private void u2(int value) {
+		bytes.write((value >> 8) & 0xff);
+		bytes.write(value & 0xff);
+	}
+
+	private static int returnSlots(String descriptor) {
+		char type = descriptor.charAt(descriptor.indexOf(')') + 1);
+		if (type == 'V') return 0;
+		if (type == 'J' || type == 'D') return 2;
+		return 1;
+	}
+
+	private static int argumentSlots(String descriptor) {
+		int slots = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			char type = descriptor.charAt(i);
+			while (descriptor.charAt(i) == '[') i++;
+			if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+			slots += (type == 'J' || type == 'D') ? 2 : 1;
+			i++;
+		}
+		return slots;
+	}
+}
@@ -0,0 +1,70 @@
+package dymond.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import dymond.Token;
+
+// The Chunk is a dynamic array of bytes. Every byte remembers the token it was
+// compiled from so runtime errors can point at the same place the tree-walker does.
+public class Chunk {
+	byte[] code = new byte[64];
+	Token[] tokens = new Token[64];
+	int count = 0;
+	Object[] constants = new Object[16];
+	int constantCount = 0;
+	private final Map<Object, Integer> constantIndex = new HashMap<>();
+	// The body of each loop, innermost first, five ints apiece: where it starts and ends, where a
+	// break and a next go (-1 for a while loop, which a next passes through) and how many locals
+	// are live in it. Only read when a called function unwinds a break or next into its caller.
+	int[] loops = new int[0];
+	
+	void addLoop(int bodyStart, int bodyEnd, int breakTarget, int nextTarget, int locals) {
+		int at = loops.length;
+		loops = Arrays.copyOf(loops, at + 5);
+		loops[at] = bodyStart;
+		loops[at + 1] = bodyEnd;
+		loops[at + 2] = breakTarget;
+		loops[at + 3] = nextTarget;
+		loops[at + 4] = locals;
+	}
+	
+	// The innermost loop whose body holds the call that returns to ip, or -1
+	int loopAround(int ip, boolean isBreak) {
+		for (int at = 0; at < loops.length; at += 5) {
+			if (ip > loops[at] && ip <= loops[at + 1] && (isBreak || loops[at + 3] >= 0)) return at;
+		}
+		return -1;
+	}
+	
+	void write(byte b, Token token) {
+		if (count == code.length) {
+			code = Arrays.copyOf(code, count * 2);
+			tokens = Arrays.copyOf(tokens, count * 2);
+		}
+		
+		code[count] = b;
+		tokens[count] = token;
+		count++;
+	}
+	
+	int addConstant(Object value) {
+		// Strings and numbers are reused so a hot loop does not grow the constant table
+		if (value instanceof String || value instanceof Double) {
+			Integer index = constantIndex.get(value);
+			if (index != null) return index;
+			constantIndex.put(value, constantCount);
+		}
+		
+		if (constantCount == constants.length) {
+			constants = Arrays.copyOf(constants, constantCount * 2);
+		}
+		constants[constantCount] = value;
+		return constantCount++;
+	}
+	
+	int getShort(int offset) {
+		return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+	}
+}
@@ -0,0 +1,738 @@
+package dymond.vm;
+
+import static dymond.vm.OpCode.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import dymond.Dymond;
+import dymond.Expr;
+import dymond.Stmt;
+import dymond.Token;
+import dymond.TokenType;
+
+// Compiles the resolved Stmt/Expr trees into chunks for the VM. Locals live in
+// stack slots and closures capture them through upvalues, so the compiler keeps
+// its own scope bookkeeping instead of using the Resolver's depths.
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+	private enum FunctionType {
+		SCRIPT,
+		FUNCTION,
+		INITIALIZER,
+		METHOD
+	}
+
+	private static class Local {
+		final String name;
+		final int depth;
+		boolean isCaptured = false;
+
+		Local(String name, int depth) {
+			this.name = name;
+			this.depth = depth;
+		}
+	}
+
+	private static class Upvalue {
+		final int index;
+		final boolean isLocal;
+
+		Upvalue(int index, boolean isLocal) {
+			this.index = index;
+			this.isLocal = isLocal;
+		}
+	}
+
+	private static class Loop {
+		final Loop enclosing;
+		final boolean isFor;
+		final int scopeDepth;
+		// Locals live in the body, which is where the stack is cut back to when a called function
+		// unwinds a break or next into it
+		final int locals;
+		final int bodyStart;
+		final List<Integer> breaks = new ArrayList<>();
+		final List<Integer> nexts = new ArrayList<>();
+
+		Loop(Loop enclosing, boolean isFor, int scopeDepth, int locals, int bodyStart) {
+			this.enclosing = enclosing;
+			this.isFor = isFor;
+			this.scopeDepth = scopeDepth;
+			this.locals = locals;
+			this.bodyStart = bodyStart;
+		}
+	}
+
+	private static class FunctionState {
+		final FunctionState enclosing;
+		final ObjFunction function;
+		final FunctionType type;
+		final List<Local> locals = new ArrayList<>();
+		final List<Upvalue> upvalues = new ArrayList<>();
+		int scopeDepth = 0;
+		Loop loop = null;
+
+		FunctionState(FunctionState enclosing, ObjFunction function, FunctionType type) {
+			this.enclosing = enclosing;
+			this.function = function;
+			this.type = type;
+		}
+	}
+
+	private static final int MAX_LOCALS = 256;
+
+	private final boolean repl;
+	private FunctionState current;
+	private Token token;
+	// Default argument values are evaluated against globals, like the tree-walker does
+	private boolean globalOnly = false;
+
+	public Compiler(boolean repl) {
+		this.repl = repl;
+	}
+
+	public ObjFunction compile(List<Stmt> statements) {
+		current = new FunctionState(null, new ObjFunction(null), FunctionType.SCRIPT);
+		current.locals.add(new Local("", 0));
+
+		for (Stmt statement : statements) {
+			compile(statement);
+		}
+
+		emitReturn();
+		return current.function;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		beginScope();
+		for (Stmt statement : stmt.statements) {
+			compile(statement);
+		}
+		endScope();
+		return null;
+	}
+
+	// Outside any loop of its own function a break or next leaves the function and carries on in
+	// a loop around the call, as it does in the Interpreter, or is an error when there is none
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		token = stmt.keyword;
+		Loop loop = current.loop;
+		if (loop == null) {
+			emit(OP_UNWIND);
+			emit((byte)0);
+			return null;
+		}
+
+		discardLocals(loop.scopeDepth);
+		loop.breaks.add(emitJump(OP_JUMP));
+		return null;
+	}
+
+	@Override
+	public Void visitNextStmt(Stmt.Next stmt) {
+		token = stmt.keyword;
+		Loop loop = current.loop;
+		while (loop != null && !loop.isFor) loop = loop.enclosing;
+		if (loop == null) {
+			emit(OP_UNWIND);
+			emit((byte)1);
+			return null;
+		}
+
+		discardLocals(loop.scopeDepth);
+		loop.nexts.add(emitJump(OP_JUMP));
+		return null;
+	}
+
+	@Override
+	public Void visitClassStmt(Stmt.Class stmt) {
+		token = stmt.name;
+		int name = makeConstant(stmt.name.lexeme);
+		emit(OP_CLASS);
+		emitShort(name);
+		declareVariable(stmt.name.lexeme);
+
+		if (stmt.superclass != null) {
+			visitVariableExpr(stmt.superclass);
+			beginScope();
+			addLocal("super");
+
+			namedVariable(stmt.name.lexeme, false);
+			token = stmt.superclass.name;
+			emit(OP_INHERIT);
+		}
+
+		namedVariable(stmt.name.lexeme, false);
+		for (Stmt.Function method : stmt.methods) {
+			FunctionType type = FunctionType.METHOD;
+			if (method.name.lexeme.equals("init")) type = FunctionType.INITIALIZER;
+			function(method, type);
+			emit(OP_METHOD);
+			emitShort(makeConstant(method.name.lexeme));
+		}
+
+		for (Stmt.Function staticMethod : stmt.staticMethods) {
+			function(staticMethod, FunctionType.METHOD);
+			emit(OP_STATIC_METHOD);
+			emitShort(makeConstant(staticMethod.name.lexeme));
+		}
+		emit(OP_POP);
+
+		if (stmt.superclass != null) endScope();
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		compile(stmt.expression);
+		emit(repl ? OP_PRINT : OP_POP);
+		return null;
+	}
+
+	@Override
+	public Void visitFunctionStmt(Stmt.Function stmt) {
+		token = stmt.name;
+		if (current.scopeDepth > 0) {
+			// Mark the local before compiling the body so the function can call itself
+			addLocal(stmt.name.lexeme);
+			function(stmt, FunctionType.FUNCTION);
+			return null;
+		}
+
+		function(stmt, FunctionType.FUNCTION);
+		emit(OP_DEFINE_GLOBAL);
+		emitShort(makeConstant(stmt.name.lexeme));
+
+		// Top-level functions also give their parameters global bindings
+		for (Expr.Assign param : stmt.parameters) {
+			if (param.operator != null) {
+				globalOnly = true;
+				compile(param.value);
+				globalOnly = false;
+			} else {
+				emit(OP_NULL);
+			}
+			emit(OP_DEFINE_GLOBAL);
+			emitShort(makeConstant(param.name.lexeme));
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		compile(stmt.condition);
+		int thenJump = emitJump(OP_JUMP_IF_FALSE);
+		emit(OP_POP);
+		compile(stmt.thenBranch);
+
+		int elseJump = emitJump(OP_JUMP);
+		patchJump(thenJump);
+		emit(OP_POP);
+		if (stmt.elseBranch != null) compile(stmt.elseBranch);
+		patchJump(elseJump);
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		token = stmt.keyword;
+		if (stmt.value != null) {
+			compile(stmt.value);
+		} else {
+			emit(OP_NULL);
+		}
+		emit(OP_RETURN);
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		token = stmt.name;
+		if (stmt.initializer != null) {
+			compile(stmt.initializer);
+		} else {
+			emit(OP_NULL);
+		}
+
+		token = stmt.name;
+		declareVariable(stmt.name.lexeme);
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		int loopStart = currentChunk().count;
+		compile(stmt.condition);
+		int exitJump = emitJump(OP_JUMP_IF_FALSE);
+		emit(OP_POP);
+
+		current.loop = new Loop(current.loop, false, current.scopeDepth, current.locals.size(), currentChunk().count);
+		compile(stmt.body);
+		Loop loop = current.loop;
+		current.loop = loop.enclosing;
+		int bodyEnd = currentChunk().count;
+
+		emitLoop(loopStart);
+		patchJump(exitJump);
+		emit(OP_POP);
+		for (int jump : loop.breaks) patchJump(jump);
+		currentChunk().addLoop(loop.bodyStart, bodyEnd, currentChunk().count, -1, loop.locals);
+		return null;
+	}
+
+	@Override
+	public Void visitForStmt(Stmt.For stmt) {
+		int loopStart = currentChunk().count;
+		compile(stmt.condition);
+		int exitJump = emitJump(OP_JUMP_IF_FALSE);
+		emit(OP_POP);
+
+		current.loop = new Loop(current.loop, true, current.scopeDepth, current.locals.size(), currentChunk().count);
+		compile(stmt.body);
+		Loop loop = current.loop;
+		current.loop = loop.enclosing;
+		int bodyEnd = currentChunk().count;
+
+		for (int jump : loop.nexts) patchJump(jump);
+		if (stmt.increment != null) compile(stmt.increment);
+
+		emitLoop(loopStart);
+		patchJump(exitJump);
+		emit(OP_POP);
+		for (int jump : loop.breaks) patchJump(jump);
+		currentChunk().addLoop(loop.bodyStart, bodyEnd, currentChunk().count, bodyEnd, loop.locals);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		if (expr.operator.type == TokenType.EQUAL) {
+			compile(expr.value);
+		} else {
+			namedVariable(expr.name.lexeme, false);
+			token = expr.name;
+			emit(OP_CHECK_DEFINED);
+			emitShort(makeConstant(expr.name.lexeme));
+
+			compile(expr.value);
+			token = expr.operator;
+			emit(OP_COMPOUND);
+			emit((byte)expr.operator.type.ordinal());
+		}
+
+		token = expr.name;
+		namedVariable(expr.name.lexeme, true);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.left);
+		compile(expr.right);
+
+		token = expr.operator;
+		switch (expr.operator.type) {
+			case MINUS: emit(OP_SUBTRACT); break;
+			case DIV: emit(OP_DIVIDE); break;
+			case STAR: emit(OP_MULTIPLY); break;
+			case INTEGER_DIV: emit(OP_INT_DIVIDE); break;
+			case GREATER: emit(OP_GREATER); break;
+			case GREATER_EQUAL: emit(OP_GREATER_EQUAL); break;
+			case LESS: emit(OP_LESS); break;
+			case LESS_EQUAL: emit(OP_LESS_EQUAL); break;
+			case BANG_EQUAL: emit(OP_NOT_EQUAL); break;
+			case EQUAL_EQUAL: emit(OP_EQUAL); break;
+			case MODULO: emit(OP_MODULO); break;
+			case PLUS: emit(OP_ADD); break;
+			default:
+				emit(OP_POP);
+				emit(OP_POP);
+				emit(OP_NULL);
+				break;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		compile(expr.callee);
+
+		boolean hasNames = false;
+		String[] names = new String[expr.arguments.size()];
+		for (int i = 0; i < expr.arguments.size(); i++) {
+			Expr argument = expr.arguments.get(i);
+			if (argument instanceof Expr.Assign) {
+				names[i] = ((Expr.Assign)argument).name.lexeme;
+				hasNames = true;
+			}
+			compile(argument);
+		}
+
+		token = expr.paren;
+		if (hasNames) {
+			emit(OP_CALL_NAMED);
+			emit((byte)names.length);
+			emitShort(makeConstant(names));
+		} else {
+			emit(OP_CALL);
+			emit((byte)names.length);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitGetExpr(Expr.Get expr) {
+		compile(expr.object);
+		token = expr.name;
+		emit(OP_GET_PROPERTY);
+		emitShort(makeConstant(expr.name.lexeme));
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.expression);
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.value == null) {
+			emit(OP_NULL);
+		} else if (expr.value.equals(true)) {
+			emit(OP_TRUE);
+		} else if (expr.value.equals(false)) {
+			emit(OP_FALSE);
+		} else {
+			emit(OP_CONSTANT);
+			emitShort(makeConstant(expr.value));
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		compile(expr.left);
+
+		if (expr.operator.type == TokenType.OR) {
+			int elseJump = emitJump(OP_JUMP_IF_FALSE);
+			int endJump = emitJump(OP_JUMP);
+			patchJump(elseJump);
+			emit(OP_POP);
+			compile(expr.right);
+			patchJump(endJump);
+		} else {
+			int endJump = emitJump(OP_JUMP_IF_FALSE);
+			emit(OP_POP);
+			compile(expr.right);
+			patchJump(endJump);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitSubscriptExpr(Expr.Subscript expr) {
+		compile(expr.left);
+		compile(expr.subNum);
+		token = expr.operator;
+		emit(OP_SUBSCRIPT);
+		return null;
+	}
+
+	@Override
+	public Void visitSetExpr(Expr.Set expr) {
+		compile(expr.object);
+		compile(expr.value);
+		token = expr.name;
+		emit(OP_SET_PROPERTY);
+		emitShort(makeConstant(expr.name.lexeme));
+		// The operator byte carries its own token for operand errors
+		token = expr.equals;
+		emit((byte)expr.equals.type.ordinal());
+		return null;
+	}
+
+	@Override
+	public Void visitSuperExpr(Expr.Super expr) {
+		token = expr.keyword;
+		namedVariable("this", false);
+		namedVariable("super", false);
+		token = expr.method;
+		emit(OP_GET_SUPER);
+		emitShort(makeConstant(expr.method.lexeme));
+		return null;
+	}
+
+	@Override
+	public Void visitTernaryExpr(Expr.Ternary expr) {
+		// The tree-walker evaluates every operand before picking one
+		compile(expr.right);
+		compile(expr.left);
+		compile(expr.condition);
+		emit(OP_TERNARY);
+		return null;
+	}
+
+	@Override
+	public Void visitThisExpr(Expr.This expr) {
+		token = expr.keyword;
+		namedVariable("this", false);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.right);
+		token = expr.operator;
+		switch (expr.operator.type) {
+			case MINUS: emit(OP_NEGATE); break;
+			case BANG: emit(OP_NOT); break;
+			default:
+				emit(OP_POP);
+				emit(OP_NULL);
+				break;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryAssignExpr(Expr.UnaryAssign expr) {
+		token = expr.name;
+		namedVariable(expr.name.lexeme, false);
+		token = expr.operator;
+		if (expr.operator.type == TokenType.PLUS_PLUS) emit(OP_INCREMENT);
+		else if (expr.operator.type == TokenType.MINUS_MINUS) emit(OP_DECREMENT);
+
+		token = expr.name;
+		namedVariable(expr.name.lexeme, true);
+		return null;
+	}
+
+	@Override
+	public Void visitVariableExpr(Expr.Variable expr) {
+		token = expr.name;
+		namedVariable(expr.name.lexeme, false);
+		return null;
+	}
+
+	private void function(Stmt.Function stmt, FunctionType type) {
+		FunctionState state = new FunctionState(current, new ObjFunction(stmt.name.lexeme), type);
+		current = state;
+		state.locals.add(new Local(type == FunctionType.FUNCTION ? "" : "this", 0));
+		beginScope();
+
+		ObjFunction function = state.function;
+		function.arity = stmt.parameters.size();
+		function.parameters = new String[function.arity];
+		function.hasDefault = new boolean[function.arity];
+		for (int i = 0; i < function.arity; i++) {
+			Expr.Assign param = stmt.parameters.get(i);
+			function.parameters[i] = param.name.lexeme;
+			function.hasDefault[i] = param.operator != null;
+			if (param.operator == null) function.minArity++;
+
+			token = param.name;
+			addLocal(param.name.lexeme);
+		}
+
+		// Parameters the caller left out hold VM.UNSET until their default is evaluated
+		for (int i = 0; i < function.arity; i++) {
+			Expr.Assign param = stmt.parameters.get(i);
+			if (param.operator == null) continue;
+
+			token = param.name;
+			emit(OP_DEFAULT);
+			emit((byte)(i + 1));
+			int skip = emitShort(0xffff);
+			globalOnly = true;
+			compile(param.value);
+			globalOnly = false;
+			emit(OP_SET_LOCAL);
+			emit((byte)(i + 1));
+			emit(OP_POP);
+			patchJump(skip);
+		}
+
+		for (Stmt statement : stmt.body) {
+			compile(statement);
+		}
+		emitReturn();
+
+		current = state.enclosing;
+		function.upvalueCount = state.upvalues.size();
+		emit(OP_CLOSURE);
+		emitShort(makeConstant(function));
+		for (Upvalue upvalue : state.upvalues) {
+			emit((byte)(upvalue.isLocal ? 1 : 0));
+			emit((byte)upvalue.index);
+		}
+	}
+
+	private void declareVariable(String name) {
+		if (current.scopeDepth == 0) {
+			emit(OP_DEFINE_GLOBAL);
+			emitShort(makeConstant(name));
+			return;
+		}
+
+		// The value on top of the stack becomes the local's slot
+		addLocal(name);
+	}
+
+	private void namedVariable(String name, boolean assign) {
+		int arg = globalOnly ? -1 : resolveLocal(current, name);
+		if (arg != -1) {
+			emit(assign ? OP_SET_LOCAL : OP_GET_LOCAL);
+			emit((byte)arg);
+			return;
+		}
+
+		arg = globalOnly ? -1 : resolveUpvalue(current, name);
+		if (arg != -1) {
+			emit(assign ? OP_SET_UPVALUE : OP_GET_UPVALUE);
+			emit((byte)arg);
+			return;
+		}
+
+		emit(assign ? OP_SET_GLOBAL : OP_GET_GLOBAL);
+		emitShort(makeConstant(name));
+	}
+
+	private int resolveLocal(FunctionState state, String name) {
+		for (int i = state.locals.size() - 1; i >= 0; i--) {
+			if (state.locals.get(i).name.equals(name)) return i;
+		}
+		return -1;
+	}
+
+	private int resolveUpvalue(FunctionState state, String name) {
+		if (state.enclosing == null) return -1;
+
+		int local = resolveLocal(state.enclosing, name);
+		if (local != -1) {
+			state.enclosing.locals.get(local).isCaptured = true;
+			return addUpvalue(state, local, true);
+		}
+
+		int upvalue = resolveUpvalue(state.enclosing, name);
+		if (upvalue != -1) {
+			return addUpvalue(state, upvalue, false);
+		}
+
+		return -1;
+	}
+
+	private int addUpvalue(FunctionState state, int index, boolean isLocal) {
+		for (int i = 0; i < state.upvalues.size(); i++) {
+			Upvalue upvalue = state.upvalues.get(i);
+			if (upvalue.index == index && upvalue.isLocal == isLocal) return i;
+		}
+
+		if (state.upvalues.size() == MAX_LOCALS) {
+			error("Too many closure variables in function.");
+			return 0;
+		}
+
+		state.upvalues.add(new Upvalue(index, isLocal));
+		return state.upvalues.size() - 1;
+	}
+
+	private void addLocal(String name) {
+		if (current.locals.size() == MAX_LOCALS) {
+			error("Too many local variables in function.");
+			return;
+		}
+		current.locals.add(new Local(name, current.scopeDepth));
+	}
+
+	private void beginScope() {
+		current.scopeDepth++;
+	}
+
+	private void endScope() {
+		current.scopeDepth--;
+
+		List<Local> locals = current.locals;
+		while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+			emit(locals.get(locals.size() - 1).isCaptured ? OP_CLOSE_UPVALUE : OP_POP);
+			locals.remove(locals.size() - 1);
+		}
+	}
+
+	// Pops the locals a break or next jumps out of, without forgetting them at compile time
+	private void discardLocals(int depth) {
+		List<Local> locals = current.locals;
+		for (int i = locals.size() - 1; i >= 0 && locals.get(i).depth > depth; i--) {
+			emit(locals.get(i).isCaptured ? OP_CLOSE_UPVALUE : OP_POP);
+		}
+	}
+
+	private void emitReturn() {
+		if (current.type == FunctionType.INITIALIZER) {
+			emit(OP_GET_LOCAL);
+			emit((byte)0);
+		} else {
+			emit(OP_NULL);
+		}
+		emit(OP_RETURN);
+	}
+
+	private int emitJump(byte instruction) {
+		emit(instruction);
+		return emitShort(0xffff);
+	}
+
+	private void patchJump(int offset) {
+		int jump = currentChunk().count - offset - 2;
+		if (jump > 0xffff) {
+			error("Too much code to jump over.");
+		}
+
+		currentChunk().code[offset] = (byte)((jump >> 8) & 0xff);
+		currentChunk().code[offset + 1] = (byte)(jump & 0xff);
+	}
+
+	private void emitLoop(int loopStart) {
+		emit(OP_LOOP);
+		int offset = currentChunk().count - loopStart + 2;
+		if (offset > 0xffff) error("Loop body too large.");
+		emitShort(offset);
+	}
+
+	private int makeConstant(Object value) {
+		int constant = currentChunk().addConstant(value);
+		if (constant > 0xffff) {
+			error("Too many constants in one chunk.");
+			return 0;
+		}
+		return constant;
+	}
+
+	private void emit(byte b) {
+		currentChunk().write(b, token);
+	}
+
+	private int emitShort(int value) {
+		emit((byte)((value >> 8) & 0xff));
+		emit((byte)(value & 0xff));
+		return currentChunk().count - 2;
+	}
+
+	private Chunk currentChunk() {
+		return current.function.chunk;
+	}
+
+	private void error(String message) {
+		Dymond.error(token, message);
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+}
@@ -0,0 +1,37 @@
+package dymond.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ObjClass extends ObjInstance {
+	final String name;
+	final Map<String, ObjClosure> methods = new HashMap<>();
+	final Map<String, ObjClosure> staticMethods = new HashMap<>();
+	ObjClass superclass;
+	
+	ObjClass(String name) {
+		super();
+		this.name = name;
+	}
+	
+	ObjClosure findMethod(String name) {
+		for (ObjClass klass = this; klass != null; klass = klass.superclass) {
+			ObjClosure method = klass.methods.get(name);
+			if (method != null) return method;
+		}
+		return null;
+	}
+	
+	ObjClosure findStaticMethod(String name) {
+		for (ObjClass klass = this; klass != null; klass = klass.superclass) {
+			ObjClosure method = klass.staticMethods.get(name);
+			if (method != null) return method;
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		return name;
+	}
+}
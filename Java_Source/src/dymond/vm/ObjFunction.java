@@ -0,0 +1,30 @@
+package dymond.vm;
+
+// A compiled function body. Parameters occupy slots 1..arity of its frame,
+// slot 0 holds the callee (or 'this' for methods).
+public class ObjFunction {
+	final String name;
+	final Chunk chunk = new Chunk();
+	int arity = 0;
+	int minArity = 0;
+	int upvalueCount = 0;
+	String[] parameters = new String[0];
+	boolean[] hasDefault = new boolean[0];
+	
+	ObjFunction(String name) {
+		this.name = name;
+	}
+	
+	int parameterIndex(String name) {
+		for (int i = 0; i < parameters.length; i++) {
+			if (parameters[i].equals(name)) return i;
+		}
+		return -1;
+	}
+	
+	@Override
+	public String toString() {
+		if (name == null) return "<script>";
+		return "<fn " + name + ">";
+	}
+}
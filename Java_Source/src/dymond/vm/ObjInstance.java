@@ -0,0 +1,68 @@
+package dymond.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import dymond.RuntimeError;
+import dymond.Token;
+
+public class ObjInstance {
+	ObjClass klass;
+	private final boolean isStatic;
+	final Map<String, Object> fields = new HashMap<>();
+	
+	ObjInstance(ObjClass klass) {
+		this.klass = klass;
+		isStatic = false;
+	}
+	
+	ObjInstance() {
+		this.klass = (ObjClass) this;
+		isStatic = true;
+	}
+	
+	@Override
+	public String toString() {
+		return klass.name + " instance";
+	}
+	
+	Object get(Token name) {
+		Object field = fields.get(name.lexeme);
+		if (field != null || fields.containsKey(name.lexeme)) {
+			return field;
+		}
+		
+		ObjClosure staticMethod = klass.findStaticMethod(name.lexeme);
+		ObjClosure regMethod = klass.findMethod(name.lexeme);
+		
+		if(!isStatic) {
+			if (regMethod != null) return new ObjBoundMethod(this, regMethod);
+			
+			if(staticMethod != null) throw new RuntimeError(name, "Cannot call static method '" + name.lexeme + "' non-statically. You must call it from the class itself.");
+			
+			throw new RuntimeError(name, "Undefined method '" + name.lexeme + "'.");
+		} else {
+			if (staticMethod != null) return new ObjBoundMethod(this, staticMethod);
+			
+			if (regMethod != null) throw new RuntimeError(name, "Cannot call non-static method '" + name.lexeme + "' statically. You must create an instance and call it from the instance.");
+			
+			throw new RuntimeError(name, "Undefined static method '" + name.lexeme + "'.");
+		}
+	}
+	
+	Object get(Token name, boolean check) {
+		Object field = fields.get(name.lexeme);
+		if (field != null || fields.containsKey(name.lexeme)) {
+			return field;
+		}
+		
+		ObjClosure method = klass.findMethod(name.lexeme);
+		if (method != null) return new ObjBoundMethod(this, method);
+		
+		return null;
+	}
+	
+	void set(Token name, Object value) {
+		fields.put(name.lexeme, value);
+	}
+}
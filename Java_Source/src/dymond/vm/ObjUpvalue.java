@@ -0,0 +1,14 @@
+package dymond.vm;
+
+// While open an upvalue points at a slot of the VM stack, once the slot goes
+// out of scope the value is moved into 'closed'.
+public class ObjUpvalue {
+	int slot;
+	Object closed;
+	boolean isOpen = true;
+	ObjUpvalue next;
+	
+	ObjUpvalue(int slot) {
+		this.slot = slot;
+	}
+}
@@ -0,0 +1,62 @@
+package dymond.vm;
+
+// Mirrors the OpCode enum in C_Source/src/chunk.h, extended with everything
+// the Java tree-walker supports (closures, classes, named arguments...)
+public final class OpCode {
+	public static final byte OP_CONSTANT = 0;
+	public static final byte OP_NULL = 1;
+	public static final byte OP_TRUE = 2;
+	public static final byte OP_FALSE = 3;
+	public static final byte OP_POP = 4;
+	public static final byte OP_EQUAL = 5;
+	public static final byte OP_NOT_EQUAL = 6;
+	public static final byte OP_GREATER = 7;
+	public static final byte OP_GREATER_EQUAL = 8;
+	public static final byte OP_LESS = 9;
+	public static final byte OP_LESS_EQUAL = 10;
+	public static final byte OP_ADD = 11;
+	public static final byte OP_SUBTRACT = 12;
+	public static final byte OP_MULTIPLY = 13;
+	public static final byte OP_DIVIDE = 14;
+	public static final byte OP_NOT = 15;
+	public static final byte OP_NEGATE = 16;
+	public static final byte OP_INT_DIVIDE = 17;
+	public static final byte OP_MODULO = 18;
+	public static final byte OP_PRINT = 19;
+	public static final byte OP_DEFINE_GLOBAL = 20;
+	public static final byte OP_GET_GLOBAL = 21;
+	public static final byte OP_SET_GLOBAL = 22;
+	public static final byte OP_GET_LOCAL = 23;
+	public static final byte OP_SET_LOCAL = 24;
+	public static final byte OP_RETURN = 25;
+	
+	public static final byte OP_GET_UPVALUE = 26;
+	public static final byte OP_SET_UPVALUE = 27;
+	public static final byte OP_CLOSE_UPVALUE = 28;
+	public static final byte OP_CLOSURE = 29;
+	public static final byte OP_CALL = 30;
+	public static final byte OP_CALL_NAMED = 31;
+	public static final byte OP_DEFAULT = 32;
+	
+	public static final byte OP_JUMP = 33;
+	public static final byte OP_JUMP_IF_FALSE = 34;
+	public static final byte OP_LOOP = 35;
+	
+	public static final byte OP_CLASS = 36;
+	public static final byte OP_INHERIT = 37;
+	public static final byte OP_METHOD = 38;
+	public static final byte OP_STATIC_METHOD = 39;
+	public static final byte OP_GET_PROPERTY = 40;
+	public static final byte OP_SET_PROPERTY = 41;
+	public static final byte OP_GET_SUPER = 42;
+	
+	public static final byte OP_CHECK_DEFINED = 43;
+	public static final byte OP_COMPOUND = 44;
+	public static final byte OP_INCREMENT = 45;
+	public static final byte OP_DECREMENT = 46;
+	public static final byte OP_SUBSCRIPT = 47;
+	public static final byte OP_TERNARY = 48;
+	public static final byte OP_UNWIND = 49;
+	
+	private OpCode() {}
+}
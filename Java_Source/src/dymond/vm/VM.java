@@ -0,0 +1,699 @@
+package dymond.vm;
+
+import static dymond.vm.OpCode.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import dymond.Console;
+import dymond.Dymond;
+import dymond.DymondRuntime;
+import dymond.NativeFunction;
+import dymond.Natives;
+import dymond.RuntimeError;
+import dymond.Stmt;
+import dymond.Token;
+import dymond.TokenType;
+
+// A stack based virtual machine that runs the chunks produced by the Compiler.
+// Its behaviour matches the tree-walking Interpreter, so the two engines can be
+// compared on the same scripts.
+public class VM {
+	// Marks a parameter the caller left out, its default value has not run yet
+	static final Object UNSET = new Object();
+
+	private static final int FRAMES_MAX = 1 << 16;
+	private static final TokenType[] tokenTypes = TokenType.values();
+
+	private static class CallFrame {
+		ObjClosure closure;
+		int ip;
+		int base;
+		boolean isConstructor;
+	}
+
+	private Object[] stack = new Object[1024];
+	private int sp = 0;
+	private CallFrame[] frames = new CallFrame[64];
+	private int frameCount = 0;
+	private ObjUpvalue openUpvalues = null;
+	private final Map<String, Object> globals = new HashMap<>();
+	// The runtime MXBean as the script started, so every call it counts is also counted leaving
+	private DymondRuntime runtime;
+
+	public VM() {
+		defineNativeFunctions();
+	}
+
+	public void interpret(List<Stmt> statements, boolean repl) {
+		ObjFunction script = new Compiler(repl).compile(statements);
+		if (Dymond.hadError) return;
+
+		runtime = DymondRuntime.active();
+		ObjClosure closure = new ObjClosure(script);
+		push(closure);
+		callClosure(closure, 0, null, null);
+
+		try {
+			run();
+		} catch (RuntimeError error) {
+			Dymond.runtimeError(error);
+		} finally {
+			// An error leaves the calls it happened in
+			if (runtime != null && frameCount > 1) runtime.returned(frameCount - 1);
+			Arrays.fill(stack, 0, sp, null);
+			sp = 0;
+			frameCount = 0;
+			openUpvalues = null;
+		}
+	}
+
+	private void run() {
+		CallFrame frame = frames[frameCount - 1];
+		Chunk chunk = frame.closure.function.chunk;
+		byte[] code = chunk.code;
+		int ip = frame.ip;
+		int base = frame.base;
+
+		for (;;) {
+			int start = ip;
+			switch (code[ip++]) {
+				case OP_CONSTANT:
+					push(chunk.constants[readShort(code, ip)]);
+					ip += 2;
+					break;
+				case OP_NULL: push(null); break;
+				case OP_TRUE: push(true); break;
+				case OP_FALSE: push(false); break;
+				case OP_POP: stack[--sp] = null; break;
+				case OP_GET_LOCAL:
+					push(stack[base + (code[ip++] & 0xff)]);
+					break;
+				case OP_SET_LOCAL:
+					stack[base + (code[ip++] & 0xff)] = stack[sp - 1];
+					break;
+				case OP_GET_GLOBAL: {
+					String name = (String)chunk.constants[readShort(code, ip)];
+					ip += 2;
+					Object value = globals.get(name);
+					if (value == null && !globals.containsKey(name)) {
+						throw new RuntimeError(chunk.tokens[start], "Undefined variable '" + name + "'.");
+					}
+					push(value);
+					break;
+				}
+				case OP_DEFINE_GLOBAL: {
+					String name = (String)chunk.constants[readShort(code, ip)];
+					ip += 2;
+					globals.put(name, pop());
+					break;
+				}
+				case OP_SET_GLOBAL: {
+					String name = (String)chunk.constants[readShort(code, ip)];
+					ip += 2;
+					if (!globals.containsKey(name)) {
+						throw new RuntimeError(chunk.tokens[start], "Undefined variable '" + name + "'.");
+					}
+					globals.put(name, stack[sp - 1]);
+					break;
+				}
+				case OP_GET_UPVALUE: {
+					ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+					push(upvalue.isOpen ? stack[upvalue.slot] : upvalue.closed);
+					break;
+				}
+				case OP_SET_UPVALUE: {
+					ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+					if (upvalue.isOpen) stack[upvalue.slot] = stack[sp - 1];
+					else upvalue.closed = stack[sp - 1];
+					break;
+				}
+				case OP_CLOSE_UPVALUE:
+					closeUpvalues(sp - 1);
+					stack[--sp] = null;
+					break;
+				case OP_CHECK_DEFINED:
+					if (stack[sp - 1] == null) {
+						String name = (String)chunk.constants[readShort(code, ip)];
+						throw new RuntimeError(chunk.tokens[start], "Undefined variable '" + name + "'.");
+					}
+					ip += 2;
+					break;
+				case OP_EQUAL: {
+					Object right = pop();
+					stack[sp - 1] = isEqual(stack[sp - 1], right);
+					break;
+				}
+				case OP_NOT_EQUAL: {
+					Object right = pop();
+					stack[sp - 1] = !isEqual(stack[sp - 1], right);
+					break;
+				}
+				case OP_GREATER: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					if (left instanceof Double && right instanceof Double) stack[sp - 1] = (double)left > (double)right;
+					else stack[sp - 1] = compareStrings(chunk.tokens[start], left, right) > 0;
+					break;
+				}
+				case OP_GREATER_EQUAL: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					if (left instanceof Double && right instanceof Double) stack[sp - 1] = (double)left >= (double)right;
+					else stack[sp - 1] = compareStrings(chunk.tokens[start], left, right) >= 0;
+					break;
+				}
+				case OP_LESS: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					if (left instanceof Double && right instanceof Double) stack[sp - 1] = (double)left < (double)right;
+					else stack[sp - 1] = compareStrings(chunk.tokens[start], left, right) < 0;
+					break;
+				}
+				case OP_LESS_EQUAL: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					if (left instanceof Double && right instanceof Double) stack[sp - 1] = (double)left <= (double)right;
+					else stack[sp - 1] = compareStrings(chunk.tokens[start], left, right) <= 0;
+					break;
+				}
+				case OP_ADD: {
+					Object right = pop();
+					stack[sp - 1] = add(chunk.tokens[start], stack[sp - 1], right);
+					break;
+				}
+				case OP_SUBTRACT: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk.tokens[start], left, right);
+					stack[sp - 1] = (double)left - (double)right;
+					break;
+				}
+				case OP_MULTIPLY: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk.tokens[start], left, right);
+					stack[sp - 1] = (double)left * (double)right;
+					break;
+				}
+				case OP_DIVIDE: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk.tokens[start], left, right);
+					if ((double)right == 0) {
+						throw new RuntimeError(chunk.tokens[start], "Division by zero error.");
+					}
+					stack[sp - 1] = (double)left / (double)right;
+					break;
+				}
+				case OP_INT_DIVIDE: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk.tokens[start], left, right);
+					stack[sp - 1] = (double)( (int)( (double)left ) / (int)( (double)right ) );
+					break;
+				}
+				case OP_MODULO: {
+					Object right = pop();
+					Object left = stack[sp - 1];
+					checkNumberOperands(chunk.tokens[start], left, right);
+					stack[sp - 1] = (double)left % (double)right;
+					break;
+				}
+				case OP_NOT:
+					stack[sp - 1] = !isTruthy(stack[sp - 1]);
+					break;
+				case OP_NEGATE:
+					checkNumberOperand(chunk.tokens[start], stack[sp - 1]);
+					stack[sp - 1] = -(double)stack[sp - 1];
+					break;
+				case OP_INCREMENT:
+					checkNumberOperand(chunk.tokens[start], stack[sp - 1]);
+					stack[sp - 1] = (double)stack[sp - 1] + 1;
+					break;
+				case OP_DECREMENT:
+					checkNumberOperand(chunk.tokens[start], stack[sp - 1]);
+					stack[sp - 1] = (double)stack[sp - 1] - 1;
+					break;
+				case OP_COMPOUND: {
+					TokenType operator = tokenTypes[code[ip++]];
+					Object right = pop();
+					stack[sp - 1] = compound(chunk.tokens[start], operator, stack[sp - 1], right);
+					break;
+				}
+				case OP_SUBSCRIPT: {
+					Object right = pop();
+					stack[sp - 1] = subscript(chunk.tokens[start], stack[sp - 1], right);
+					break;
+				}
+				case OP_TERNARY: {
+					Object condition = pop();
+					Object left = pop();
+					if (!isTruthy(condition)) left = stack[sp - 1];
+					stack[sp - 1] = left;
+					break;
+				}
+				case OP_PRINT:
+					Console.println(stringify(pop()));
+					break;
+				case OP_JUMP:
+					ip += readShort(code, ip) + 2;
+					break;
+				case OP_JUMP_IF_FALSE:
+					if (isTruthy(stack[sp - 1])) ip += 2;
+					else ip += readShort(code, ip) + 2;
+					break;
+				case OP_LOOP:
+					ip -= readShort(code, ip) - 2;
+					break;
+				case OP_DEFAULT: {
+					int slot = code[ip++] & 0xff;
+					if (stack[base + slot] != UNSET) ip += readShort(code, ip);
+					ip += 2;
+					break;
+				}
+				case OP_CALL:
+				case OP_CALL_NAMED: {
+					int argCount = code[ip++] & 0xff;
+					String[] names = null;
+					if (code[start] == OP_CALL_NAMED) {
+						names = (String[])chunk.constants[readShort(code, ip)];
+						ip += 2;
+					}
+
+					frame.ip = ip;
+					callValue(stack[sp - argCount - 1], argCount, names, chunk.tokens[start]);
+					frame = frames[frameCount - 1];
+					chunk = frame.closure.function.chunk;
+					code = chunk.code;
+					ip = frame.ip;
+					base = frame.base;
+					break;
+				}
+				case OP_CLOSURE: {
+					ObjFunction function = (ObjFunction)chunk.constants[readShort(code, ip)];
+					ip += 2;
+					ObjClosure closure = new ObjClosure(function);
+					for (int i = 0; i < closure.upvalues.length; i++) {
+						boolean isLocal = code[ip++] == 1;
+						int index = code[ip++] & 0xff;
+						if (isLocal) {
+							closure.upvalues[i] = captureUpvalue(base + index);
+						} else {
+							closure.upvalues[i] = frame.closure.upvalues[index];
+						}
+					}
+					push(closure);
+					break;
+				}
+				case OP_RETURN: {
+					Object result = pop();
+					closeUpvalues(base);
+					if (frame.isConstructor) result = stack[base];
+
+					frameCount--;
+					Arrays.fill(stack, base, sp, null);
+					sp = base;
+					if (frameCount == 0) return;
+					if (runtime != null) runtime.returned(1);
+
+					push(result);
+					frame = frames[frameCount - 1];
+					chunk = frame.closure.function.chunk;
+					code = chunk.code;
+					ip = frame.ip;
+					base = frame.base;
+					break;
+				}
+				case OP_CLASS:
+					push(new ObjClass((String)chunk.constants[readShort(code, ip)]));
+					ip += 2;
+					break;
+				case OP_INHERIT: {
+					Object superclass = stack[sp - 2];
+					if (!(superclass instanceof ObjClass)) {
+						throw new RuntimeError(chunk.tokens[start], "Superclass must be a class.");
+					}
+					((ObjClass)stack[sp - 1]).superclass = (ObjClass)superclass;
+					stack[--sp] = null;
+					break;
+				}
+				case OP_METHOD:
+				case OP_STATIC_METHOD: {
+					String name = (String)chunk.constants[readShort(code, ip)];
+					ip += 2;
+					ObjClosure method = (ObjClosure)pop();
+					ObjClass klass = (ObjClass)stack[sp - 1];
+					if (code[start] == OP_METHOD) klass.methods.put(name, method);
+					else klass.staticMethods.put(name, method);
+					break;
+				}
+				case OP_GET_PROPERTY: {
+					Object object = stack[sp - 1];
+					ip += 2;
+					if (!(object instanceof ObjInstance)) {
+						throw new RuntimeError(chunk.tokens[start], "Only instances have properties.");
+					}
+					stack[sp - 1] = ((ObjInstance)object).get(chunk.tokens[start]);
+					break;
+				}
+				case OP_SET_PROPERTY: {
+					Token name = chunk.tokens[start];
+					TokenType operator = tokenTypes[code[ip + 2]];
+					Token equals = chunk.tokens[ip + 2];
+					ip += 3;
+
+					Object right = pop();
+					Object object = stack[sp - 1];
+					if (!(object instanceof ObjInstance)) {
+						throw new RuntimeError(name, "Only instances have fields.");
+					}
+
+					ObjInstance instance = (ObjInstance)object;
+					Object value = right;
+					if (operator != TokenType.EQUAL) {
+						Object left = instance.get(name, true);
+						if (left == null) {
+							throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+						}
+						value = compound(equals, operator, left, right);
+					}
+
+					instance.set(name, value);
+					stack[sp - 1] = value;
+					break;
+				}
+				case OP_GET_SUPER: {
+					String name = (String)chunk.constants[readShort(code, ip)];
+					ip += 2;
+					ObjClass superclass = (ObjClass)pop();
+					Object receiver = stack[sp - 1];
+
+					ObjClosure method = superclass.findMethod(name);
+					ObjClosure staticMethod = superclass.findStaticMethod(name);
+					if (method == null && staticMethod == null) {
+						throw new RuntimeError(chunk.tokens[start], "Undefined property '" + name + "'.");
+					}
+
+					stack[sp - 1] = new ObjBoundMethod(receiver, staticMethod == null ? method : staticMethod);
+					break;
+				}
+				case OP_UNWIND: {
+					// Leaves frames until one was called from the body of a loop that takes it
+					boolean isBreak = code[ip++] == 0;
+					Token keyword = chunk.tokens[start];
+					int loop;
+					do {
+						closeUpvalues(base);
+						frameCount--;
+						Arrays.fill(stack, base, sp, null);
+						sp = base;
+						if (frameCount == 0) {
+							if (isBreak) throw new RuntimeError(keyword, "Break statement must be inside a loop.");
+							throw new RuntimeError(keyword, "Next statement must be inside a for-loop.");
+						}
+						if (runtime != null) runtime.returned(1);
+
+						frame = frames[frameCount - 1];
+						chunk = frame.closure.function.chunk;
+						code = chunk.code;
+						base = frame.base;
+						loop = chunk.loopAround(frame.ip, isBreak);
+					} while (loop < 0);
+
+					int top = base + chunk.loops[loop + 4];
+					closeUpvalues(top);
+					Arrays.fill(stack, top, sp, null);
+					sp = top;
+					ip = chunk.loops[loop + (isBreak ? 2 : 3)];
+					break;
+				}
+			}
+		}
+	}
+
+	private void callValue(Object callee, int argCount, String[] names, Token paren) {
+		if (callee instanceof ObjClosure) {
+			ObjClosure closure = (ObjClosure)callee;
+			checkArity(paren, argCount, closure.function.minArity, closure.function.arity);
+			callClosure(closure, argCount, names, paren);
+		} else if (callee instanceof ObjBoundMethod) {
+			ObjBoundMethod bound = (ObjBoundMethod)callee;
+			checkArity(paren, argCount, bound.method.function.minArity, bound.method.function.arity);
+			stack[sp - argCount - 1] = bound.receiver;
+			callClosure(bound.method, argCount, names, paren);
+		} else if (callee instanceof ObjClass) {
+			ObjClass klass = (ObjClass)callee;
+			ObjClosure initializer = klass.methods.get("init");
+			if (initializer == null) {
+				checkArity(paren, argCount, 0, 0);
+				stack[sp - 1] = new ObjInstance(klass);
+				DymondRuntime.instance();
+				return;
+			}
+
+			checkArity(paren, argCount, initializer.function.minArity, initializer.function.arity);
+			stack[sp - argCount - 1] = new ObjInstance(klass);
+			DymondRuntime.instance();
+			callClosure(initializer, argCount, names, paren);
+			frames[frameCount - 1].isConstructor = true;
+		} else if (callee instanceof NativeFunction) {
+			NativeFunction function = (NativeFunction)callee;
+			checkArity(paren, argCount, function.minArity(), function.maxArity());
+			Object[] args = Arrays.copyOfRange(stack, sp - argCount, sp);
+			Object result = function.callN(args, paren);
+			Arrays.fill(stack, sp - argCount - 1, sp, null);
+			sp -= argCount + 1;
+			push(result);
+		} else {
+			throw new RuntimeError(paren, "Can only call functions and classes.");
+		}
+	}
+
+	private void checkArity(Token paren, int argCount, int minArity, int maxArity) {
+		if (argCount < minArity || argCount > maxArity) {
+			if(minArity != maxArity)
+				throw new RuntimeError(paren, "Expected between " + minArity + " and " + maxArity + " arguments, but got " + argCount + " argument(s).");
+			throw new RuntimeError(paren, "Expected " + minArity + " argument(s), but got " + argCount + " argument(s).");
+		}
+	}
+
+	private void callClosure(ObjClosure closure, int argCount, String[] names, Token paren) {
+		ObjFunction function = closure.function;
+		int base = sp - argCount - 1;
+		if (names != null || argCount != function.arity) {
+			placeArguments(function, base, argCount, names, paren);
+		}
+
+		if (frameCount == FRAMES_MAX) {
+			throw new RuntimeError(paren, "Stack overflow.");
+		}
+		if (frameCount == frames.length) {
+			frames = Arrays.copyOf(frames, frameCount * 2);
+		}
+		// A frame never holds more than 256 locals plus its temporaries
+		if (sp + 512 > stack.length) {
+			stack = Arrays.copyOf(stack, stack.length * 2);
+		}
+
+		CallFrame frame = frames[frameCount];
+		if (frame == null) {
+			frame = new CallFrame();
+			frames[frameCount] = frame;
+		}
+		frameCount++;
+		if (runtime != null && frameCount > 1) runtime.call(frameCount - 1);
+		frame.closure = closure;
+		frame.ip = 0;
+		frame.base = base;
+		frame.isConstructor = false;
+	}
+
+	// Moves named and positional arguments into parameter order. Named arguments
+	// win, the rest are filled left to right and anything missing falls back to
+	// its default value.
+	private void placeArguments(ObjFunction function, int base, int argCount, String[] names, Token paren) {
+		Object[] args = Arrays.copyOfRange(stack, base + 1, base + 1 + argCount);
+		Arrays.fill(stack, base + 1, sp, null);
+
+		int named = 0;
+		if (names != null) {
+			for (int i = 0; i < argCount; i++) {
+				if (names[i] == null) continue;
+				int index = function.parameterIndex(names[i]);
+				if (index >= 0) {
+					stack[base + 1 + index] = args[i];
+					named |= 1 << index;
+				}
+			}
+		}
+
+		int next = 0;
+		for (int i = 0; i < function.arity; i++) {
+			if ((named & (1 << i)) != 0) continue;
+
+			while (next < argCount && names != null && names[next] != null) next++;
+			if (next < argCount) {
+				stack[base + 1 + i] = args[next++];
+			} else if (function.hasDefault[i]) {
+				stack[base + 1 + i] = UNSET;
+			} else {
+				stack[base + 1 + i] = null;
+				Dymond.runtimeError(new RuntimeError(paren, "Missing required arguments."));
+			}
+		}
+
+		sp = base + 1 + function.arity;
+	}
+
+	private ObjUpvalue captureUpvalue(int slot) {
+		ObjUpvalue previous = null;
+		ObjUpvalue upvalue = openUpvalues;
+		while (upvalue != null && upvalue.slot > slot) {
+			previous = upvalue;
+			upvalue = upvalue.next;
+		}
+
+		if (upvalue != null && upvalue.slot == slot) return upvalue;
+
+		ObjUpvalue created = new ObjUpvalue(slot);
+		created.next = upvalue;
+		if (previous == null) openUpvalues = created;
+		else previous.next = created;
+		return created;
+	}
+
+	private void closeUpvalues(int last) {
+		while (openUpvalues != null && openUpvalues.slot >= last) {
+			ObjUpvalue upvalue = openUpvalues;
+			upvalue.closed = stack[upvalue.slot];
+			upvalue.isOpen = false;
+			openUpvalues = upvalue.next;
+		}
+	}
+
+	private static int readShort(byte[] code, int offset) {
+		return ((code[offset] & 0xff) << 8) | (code[offset + 1] & 0xff);
+	}
+
+	private void push(Object value) {
+		stack[sp++] = value;
+	}
+
+	private Object pop() {
+		Object value = stack[--sp];
+		stack[sp] = null;
+		return value;
+	}
+
+	private Object add(Token operator, Object left, Object right) {
+		if (left instanceof Double && right instanceof Double) return (double)left + (double)right;
+		if (left instanceof String && right instanceof String) return (String)left + (String)right;
+		if(left instanceof Double && right instanceof String || left instanceof String && right instanceof Double) {
+			return stringify(left) + stringify(right);
+		}
+
+		throw new RuntimeError(operator, "Operands may be comprised of numbers and strings only.");
+	}
+
+	private int compareStrings(Token operator, Object left, Object right) {
+		if (left instanceof String && right instanceof String) {
+			return ( ((String)left).toLowerCase() ).compareTo( ((String)right).toLowerCase() );
+		}
+
+		throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+	}
+
+	private Object compound(Token operator, TokenType type, Object left, Object right) {
+		Object finalValue = null;
+
+		switch(type) {
+			case PLUS_EQUAL:
+				if (left instanceof String && right instanceof String) finalValue = (String)left + (String)right;
+				else if (left instanceof Double && right instanceof Double) finalValue = (Double)left + (Double)right;
+				else if(left instanceof Double && right instanceof String || left instanceof String && right instanceof Double) {
+					finalValue = stringify(left) + stringify(right);
+				} else throw new RuntimeError(operator, "Operands may be comprised of numbers and strings only.");
+				break;
+			case MINUS_EQUAL:
+				if (left instanceof Double && right instanceof Double) finalValue = (Double)left - (Double)right;
+				else throw new RuntimeError(operator, "Operands must be two numbers.");
+				break;
+			case MODULO_EQUAL:
+				if (left instanceof Double && right instanceof Double) finalValue = (Double)left % (Double)right;
+				else throw new RuntimeError(operator, "Operands must be two numbers.");
+				break;
+			case TIMES_EQUAL:
+				if (left instanceof Double && right instanceof Double) finalValue = (Double)left * (Double)right;
+				else throw new RuntimeError(operator, "Operands must be two numbers.");
+				break;
+			default:
+				break;
+		}
+
+		if(finalValue == null && right != null) {
+			finalValue = right;
+		}
+		return finalValue;
+	}
+
+	private Object subscript(Token operator, Object left, Object right) {
+		if(left instanceof String && right instanceof Double) {
+			int num = ((Double)right).intValue();
+			String str = (String)left;
+			if (num > str.length()) {
+				throw new RuntimeError(operator, "Subscript out of bounds.");
+			}
+
+			return String.valueOf(str.charAt(num));
+		}
+
+		throw new RuntimeError(operator, "Subscripting is only allowed for Strings.");
+	}
+
+	private void checkNumberOperands(Token operator, Object left, Object right) {
+		if (left instanceof Double && right instanceof Double) return;
+		throw new RuntimeError(operator, "Operand must be a number.");
+	}
+
+	private void checkNumberOperand(Token operator, Object operand) {
+		if (operand instanceof Double) return;
+		throw new RuntimeError(operator, "Operand must be a number.");
+	}
+
+	private boolean isEqual(Object a, Object b) {
+		if (a == null && b == null) return true;
+		if (a == null) return false;
+		if (b == null) return false;
+
+		return a.equals(b);
+	}
+
+	private boolean isTruthy(Object object) {
+		if (object == null) return false;
+		if (object instanceof Boolean) return (boolean)object;
+		return true;
+	}
+
+	private String stringify(Object object) {
+		if (object == null) return "Null";
+
+		if (object instanceof Double) {
+			String text = object.toString();
+			if (text.endsWith(".0")) {
+				text = text.substring(0, text.length() - 2);
+			}
+			return text;
+		}
+
+		return object.toString();
+	}
+
+	private void defineNativeFunctions() {
+		for (NativeFunction function : Natives.TABLE) {
+			globals.put(function.name, function);
+		}
+	}
+}
@@ -77,8 +77,24 @@ public class GenerateAst {
 		writer.println("	}");
 		writer.println();
 		
-		writer.println("	abstract <R> R accept(Visitor<R> visitor);");
+		writer.println("	public abstract <R> R accept(Visitor<R> visitor);");
 		
+		if (baseName.equals("Expr")) {
+			writer.println();
+			writer.println("	// Set by the Resolver for local variables: frames to walk up and the slot within that frame");
+			writer.println("	int depth = -1;");
+			writer.println("	int slot = -1;");
+			writer.println("	// Which Specialization the Interpreter has rewritten this node to, UNINITIALIZED until it first runs");
+			writer.println("	int state = Specialization.UNINITIALIZED;");
+			writer.println("	// Field and method lookups cached by the Interpreter on Get, Set and Super, created on first use");
+			writer.println("	InlineCache cache;");
+		}
+		
+		if (baseName.equals("Stmt")) {
+			writer.println();
+			writer.println("	// Set by the Resolver on blocks that declare nothing, they run in the enclosing frame");
+			writer.println("	boolean frameless = false;");
+		}
 	}
 	
 	private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {